@@ -0,0 +1,247 @@
+package com.pasdam.opensearch.bench;
+
+import java.util.Random;
+
+/**
+ * Generates the documents used by the benchmarks. The documents are built from a fixed
+ * seed, so the corpora are the same on every run, and they mimic the responses of real
+ * engines: namespaced OpenSearch elements, entities and CDATA sections in the texts,
+ * non ASCII characters, optional elements that the parsers must skip.
+ * @author Paco
+ * @version 1.0
+ */
+public final class Fixtures {
+
+	private static final String[] WORDS = {
+		"search", "engine", "open", "result", "caf\u00e9", "na\u00efve", "query", "index",
+		"document", "r\u00e9sum\u00e9", "page", "link", "&amp;", "feed", "atom", "\u6587\u5b57",
+		"description", "suggestion", "template", "parameter"
+	};
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Generates an RSS 2.0 response
+	 * @param items - the number of items
+	 * @return the xml document
+	 */
+	public static String rss(int items) {
+		Random random = new Random(items);
+		StringBuilder xml = new StringBuilder(items * 600 + 512);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<rss version=\"2.0\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\" xmlns:atom=\"http://www.w3.org/2005/Atom\">\n")
+				.append("<channel>\n<title>Example search: bench</title>\n<link>http://example.com/search?q=bench</link>\n")
+				.append("<description>Search results for \"bench\"</description>\n")
+				.append("<opensearch:totalResults>").append(items * 100).append("</opensearch:totalResults>\n")
+				.append("<opensearch:startIndex>1</opensearch:startIndex>\n")
+				.append("<opensearch:itemsPerPage>").append(items).append("</opensearch:itemsPerPage>\n")
+				.append("<atom:link rel=\"search\" type=\"application/opensearchdescription+xml\" href=\"http://example.com/opensearchdescription.xml\"/>\n")
+				.append("<opensearch:Query role=\"request\" searchTerms=\"bench\" startPage=\"1\" />\n");
+		for (int i = 0; i < items; i++) {
+			xml.append("<item>\n<title>").append(words(random, 6)).append("</title>\n")
+					.append("<link>http://example.com/results/").append(i).append("?ref=bench&amp;lang=en</link>\n")
+					.append("<description><![CDATA[<b>").append(words(random, 8)).append("</b> ").append(words(random, 30)).append("]]></description>\n")
+					.append("<guid isPermaLink=\"false\">result-").append(i).append("</guid>\n")
+					.append("<pubDate>Tue, 10 Jun 2003 04:00:00 GMT</pubDate>\n")
+					.append("<author>author").append(i % 17).append("@example.com</author>\n")
+					.append("<category>").append(words(random, 1)).append("</category>\n")
+					.append("<enclosure url=\"http://example.com/media/").append(i).append(".mp3\" length=\"12216320\" type=\"audio/mpeg\"/>\n")
+					.append("</item>\n");
+		}
+		return xml.append("</channel>\n</rss>\n").toString();
+	}
+
+	/**
+	 * Generates an Atom 1.0 response
+	 * @param entries - the number of entries
+	 * @return the xml document
+	 */
+	public static String atom(int entries) {
+		Random random = new Random(entries + 1);
+		StringBuilder xml = new StringBuilder(entries * 700 + 512);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\">\n")
+				.append("<title>Example search: bench</title>\n<link href=\"http://example.com/search?q=bench\"/>\n")
+				.append("<updated>2003-12-13T18:30:02Z</updated>\n<id>urn:uuid:60a76c80-d399-11d9-b93C-0003939e0af6</id>\n")
+				.append("<opensearch:totalResults>").append(entries * 100).append("</opensearch:totalResults>\n")
+				.append("<opensearch:startIndex>1</opensearch:startIndex>\n")
+				.append("<opensearch:itemsPerPage>").append(entries).append("</opensearch:itemsPerPage>\n")
+				.append("<opensearch:Query role=\"request\" searchTerms=\"bench\" startPage=\"1\" />\n");
+		for (int i = 0; i < entries; i++) {
+			xml.append("<entry>\n<title>").append(words(random, 6)).append("</title>\n")
+					.append("<link rel=\"self\" href=\"http://example.com/api/").append(i).append("\"/>\n")
+					.append("<link href=\"http://example.com/results/").append(i).append("?ref=bench&amp;lang=en\"/>\n")
+					.append("<link rel=\"enclosure\" type=\"audio/mpeg\" href=\"http://example.com/media/").append(i).append(".mp3\"/>\n")
+					.append("<id>urn:uuid:1225c695-cfb8-4ebb-aaaa-").append(i).append("</id>\n")
+					.append("<updated>2003-12-13T18:30:02Z</updated>\n")
+					.append("<published>2003-12-13T08:29:29-04:00</published>\n")
+					.append("<author><name>Author ").append(i % 17).append("</name><email>author@example.com</email></author>\n")
+					.append("<content type=\"text\">").append(words(random, 40)).append("</content>\n")
+					.append("</entry>\n");
+		}
+		return xml.append("</feed>\n").toString();
+	}
+
+	/**
+	 * Generates an OpenSearch description document
+	 * @param urls - the number of Url elements
+	 * @param parameters - the number of Parameter children of each Url element
+	 * @return the xml document
+	 */
+	public static String description(int urls, int parameters) {
+		StringBuilder xml = new StringBuilder(urls * (200 + parameters * 90) + 1024);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<OpenSearchDescription xmlns=\"http://a9.com/-/spec/opensearch/1.1/\" xmlns:parameters=\"http://a9.com/-/spec/opensearch/extensions/parameters/1.0/\">\n")
+				.append("<ShortName>Bench</ShortName>\n<Description>Benchmark search engine</Description>\n")
+				.append("<Tags>example web bench</Tags>\n<Contact>admin@example.com</Contact>\n")
+				.append("<LongName>Benchmark search engine, with many urls</LongName>\n")
+				.append("<Image height=\"16\" width=\"16\" type=\"image/vnd.microsoft.icon\">http://example.com/favicon.ico</Image>\n")
+				.append("<Image height=\"64\" width=\"64\" type=\"image/png\">http://example.com/websearch.png</Image>\n")
+				.append("<Query role=\"example\" searchTerms=\"cat\" />\n")
+				.append("<Developer>Example.com Development Team</Developer>\n")
+				.append("<Attribution>Search data Copyright 2005, Example.com, Inc., All Rights Reserved</Attribution>\n")
+				.append("<SyndicationRight>open</SyndicationRight>\n<AdultContent>false</AdultContent>\n")
+				.append("<Language>en-us</Language>\n<Language>it-it</Language>\n")
+				.append("<OutputEncoding>UTF-8</OutputEncoding>\n<InputEncoding>UTF-8</InputEncoding>\n");
+		String[] types = {"application/rss+xml", "application/atom+xml", "text/html", "application/x-suggestions+json"};
+		for (int i = 0; i < urls; i++) {
+			xml.append("<Url type=\"").append(types[i % types.length]).append("\" rel=\"").append(i % types.length == 3 ? "suggestions" : "results")
+					.append("\" indexOffset=\"1\" pageOffset=\"1\" parameters:method=\"GET\" template=\"http://example.com/")
+					.append(i).append("/search?q={searchTerms}&amp;pw={startPage?}&amp;count={count?}&amp;lang={language?}&amp;format=").append(i % types.length).append("\">\n");
+			for (int j = 0; j < parameters; j++) {
+				xml.append("<parameters:Parameter name=\"p").append(j).append("\" value=\"")
+						.append(j % 3 == 0 ? "{startIndex?}" : j % 3 == 1 ? "{inputEncoding}" : "constant" + j)
+						.append("\" minimum=\"0\" maximum=\"1\"/>\n");
+			}
+			xml.append("</Url>\n");
+		}
+		return xml.append("</OpenSearchDescription>\n").toString();
+	}
+
+	/**
+	 * Generates a JSON suggestions response, with completions, descriptions and urls
+	 * @param suggestions - the number of suggestions
+	 * @return the JSON response
+	 */
+	public static String suggestions(int suggestions) {
+		Random random = new Random(suggestions + 2);
+		StringBuilder completions = new StringBuilder(suggestions * 40);
+		StringBuilder descriptions = new StringBuilder(suggestions * 80);
+		StringBuilder urls = new StringBuilder(suggestions * 60);
+		for (int i = 0; i < suggestions; i++) {
+			if (i > 0) {
+				completions.append(", ");
+				descriptions.append(", ");
+				urls.append(", ");
+			}
+			completions.append('"').append("bench ").append(words(random, 3).replace("&amp;", "\\\"and\\\"")).append('"');
+			descriptions.append('"').append(i).append(" results \\u2013 ").append(words(random, 6).replace("&amp;", "&")).append('"');
+			urls.append("\"http:\\/\\/example.com\\/search?q=bench+").append(i).append('"');
+		}
+		return "[\"bench\", [" + completions + "], [" + descriptions + "], [" + urls + "]]";
+	}
+
+	/**
+	 * Generates a page of an RSS 2.0 response to a query
+	 * @param terms - the search terms, they are escaped
+	 * @param startIndex - the index of the first result
+	 * @param count - the number of items of the page
+	 * @param totalResults - the number of results of the search
+	 * @return the xml document
+	 */
+	public static String rssPage(String terms, int startIndex, int count, int totalResults) {
+		Random random = new Random(startIndex);
+		String escaped = escape(terms);
+		int items = Math.max(0, Math.min(count, totalResults - startIndex + 1));
+		StringBuilder xml = new StringBuilder(items * 400 + 512);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<rss version=\"2.0\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\">\n<channel>\n")
+				.append("<title>Stub search: ").append(escaped).append("</title>\n")
+				.append("<opensearch:totalResults>").append(totalResults).append("</opensearch:totalResults>\n")
+				.append("<opensearch:startIndex>").append(startIndex).append("</opensearch:startIndex>\n")
+				.append("<opensearch:itemsPerPage>").append(count).append("</opensearch:itemsPerPage>\n")
+				.append("<opensearch:Query role=\"request\" searchTerms=\"").append(escaped).append("\" startIndex=\"").append(startIndex).append("\" />\n");
+		for (int i = startIndex; i < startIndex + items; i++) {
+			xml.append("<item>\n<title>").append(escaped).append(' ').append(words(random, 5)).append("</title>\n")
+					.append("<link>http://stub.example.com/results/").append(i).append("</link>\n")
+					.append("<description>").append(words(random, 25)).append("</description>\n")
+					.append("<pubDate>Tue, 10 Jun 2003 04:00:00 GMT</pubDate>\n")
+					.append("</item>\n");
+		}
+		return xml.append("</channel>\n</rss>\n").toString();
+	}
+
+	/**
+	 * Generates a page of an Atom 1.0 response to a query
+	 * @param terms - the search terms, they are escaped
+	 * @param startIndex - the index of the first result
+	 * @param count - the number of entries of the page
+	 * @param totalResults - the number of results of the search
+	 * @return the xml document
+	 */
+	public static String atomPage(String terms, int startIndex, int count, int totalResults) {
+		Random random = new Random(startIndex);
+		String escaped = escape(terms);
+		int entries = Math.max(0, Math.min(count, totalResults - startIndex + 1));
+		StringBuilder xml = new StringBuilder(entries * 500 + 512);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\">\n")
+				.append("<title>Stub search: ").append(escaped).append("</title>\n")
+				.append("<opensearch:totalResults>").append(totalResults).append("</opensearch:totalResults>\n")
+				.append("<opensearch:startIndex>").append(startIndex).append("</opensearch:startIndex>\n")
+				.append("<opensearch:itemsPerPage>").append(count).append("</opensearch:itemsPerPage>\n");
+		for (int i = startIndex; i < startIndex + entries; i++) {
+			xml.append("<entry>\n<title>").append(escaped).append(' ').append(words(random, 5)).append("</title>\n")
+					.append("<link href=\"http://stub.example.com/results/").append(i).append("\"/>\n")
+					.append("<updated>2003-12-13T18:30:02Z</updated>\n")
+					.append("<content type=\"text\">").append(words(random, 25)).append("</content>\n")
+					.append("</entry>\n");
+		}
+		return xml.append("</feed>\n").toString();
+	}
+
+	/**
+	 * Generates a JSON suggestions response for a prefix
+	 * @param prefix - the prefix to complete, it is escaped
+	 * @param count - the number of completions
+	 * @return the JSON response
+	 */
+	public static String suggestions(String prefix, int count) {
+		Random random = new Random(prefix.hashCode());
+		String escaped = prefix.replace("\\", "\\\\").replace("\"", "\\\"");
+		StringBuilder json = new StringBuilder(count * 40 + 32);
+		json.append("[\"").append(escaped).append("\", [");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(", ");
+			}
+			json.append('"').append(escaped).append(' ').append(words(random, 2).replace("&amp;", "and")).append('"');
+		}
+		return json.append("]]").toString();
+	}
+
+	/**
+	 * @param text - the text to escape
+	 * @return the text, with the xml special characters replaced by entities
+	 */
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/**
+	 * @param random - the source of the words
+	 * @param count - the number of words
+	 * @return the words, separated by spaces
+	 */
+	private static String words(Random random, int count) {
+		StringBuilder text = new StringBuilder(count * 8);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				text.append(' ');
+			}
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return text.toString();
+	}
+}
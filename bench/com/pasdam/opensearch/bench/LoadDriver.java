@@ -0,0 +1,378 @@
+package com.pasdam.opensearch.bench;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import com.pasdam.opensearch.client.AsyncSearchClient;
+import com.pasdam.opensearch.client.AsyncSuggestionsClient;
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.TemplateParameter;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.response.SearchResponse;
+
+/**
+ * Closed-loop load generator: a fixed number of threads execute an operation back to
+ * back for a given time, and the latency of every execution is recorded. The report
+ * contains throughput, median, 99th and 99.9th percentile latency and the number of
+ * failed operations (an exception or a null result).<br/>
+ * The main method runs the clients against a {@link StubSearchServer}, with the faults
+ * chosen on the command line, from the root of the project:
+ * <pre>
+ * mvn -B package
+ * java -cp bench/target/benchmarks.jar com.pasdam.opensearch.bench.LoadDriver [-c concurrency] [-w warmupMs] [-d durationMs]
+ *     [-l fixed:ms|uniform:min:max|lognormal:median:sigma|bimodal:fast:slow:fraction]
+ *     [-e errorRate] [-s chunkBytes:delayMs] [-n count] [filter...]
+ * </pre>
+ * Only the scenarios whose name contains one of the filters are run.
+ * @author Paco
+ * @version 1.0
+ */
+public class LoadDriver {
+
+	/**
+	 * An operation to execute
+	 */
+	public interface Operation {
+
+		/**
+		 * Executes the operation once
+		 * @return the result of the operation, null if it failed
+		 * @throws Exception if the operation fails
+		 */
+		Object run() throws Exception;
+	}
+
+	private final int concurrency;
+
+	private final long warmupMillis;
+
+	private final long durationMillis;
+
+	/**
+	 * Constructor
+	 * @param concurrency - the number of threads executing the operation
+	 * @param warmupMillis - the time the operation is executed before measuring
+	 * @param durationMillis - the duration of the measurement
+	 */
+	public LoadDriver(int concurrency, long warmupMillis, long durationMillis) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+		}
+		this.concurrency = concurrency;
+		this.warmupMillis = warmupMillis;
+		this.durationMillis = durationMillis;
+	}
+
+	/**
+	 * Executes an operation concurrently and measures it
+	 * @param name - the name of the scenario
+	 * @param operation - the operation, it must be thread safe
+	 * @return the result of the measurement
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public Result run(String name, Operation operation) throws InterruptedException {
+		if (this.warmupMillis > 0) {
+			execute(operation, this.warmupMillis);
+		}
+		long start = System.nanoTime();
+		Worker[] workers = execute(operation, this.durationMillis);
+		long elapsed = System.nanoTime() - start;
+
+		int count = 0;
+		long failures = 0;
+		for (Worker worker : workers) {
+			count += worker.count;
+			failures += worker.failures;
+		}
+		long[] latencies = new long[count];
+		int offset = 0;
+		for (Worker worker : workers) {
+			System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+			offset += worker.count;
+		}
+		Arrays.sort(latencies);
+		return new Result(name, count, failures, elapsed,
+				percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999));
+	}
+
+	/**
+	 * Executes an operation on all the threads, until the time is over
+	 * @param operation - the operation
+	 * @param millis - the duration
+	 * @return the workers, containing the recorded latencies
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	private Worker[] execute(Operation operation, long millis) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(this.concurrency);
+		long deadline = System.nanoTime() + millis * 1_000_000L;
+		Worker[] workers = new Worker[this.concurrency];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(operation, deadline, done);
+			Thread thread = new Thread(workers[i], "load-driver-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		return workers;
+	}
+
+	/**
+	 * @param sorted - the sorted latencies
+	 * @param percentile - the percentile, between 0 and 1
+	 * @return the latency of the percentile (nearest rank), 0 if there are no latencies
+	 */
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/**
+	 * A thread of the load: it executes the operation until the deadline
+	 */
+	private static class Worker implements Runnable {
+
+		private final Operation operation;
+
+		private final long deadline;
+
+		private final CountDownLatch done;
+
+		private long[] latencies = new long[1024];
+
+		private int count;
+
+		private long failures;
+
+		Worker(Operation operation, long deadline, CountDownLatch done) {
+			this.operation = operation;
+			this.deadline = deadline;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long start;
+				while ((start = System.nanoTime()) < this.deadline) {
+					Object result;
+					try {
+						result = this.operation.run();
+					} catch (Exception e) {
+						result = null;
+					}
+					long latency = System.nanoTime() - start;
+					if (result == null) {
+						this.failures++;
+					}
+					if (this.count == this.latencies.length) {
+						this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+					}
+					this.latencies[this.count++] = latency;
+				}
+			} finally {
+				this.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * The result of a load test
+	 */
+	public static class Result {
+
+		private final String name;
+
+		private final long operations;
+
+		private final long failures;
+
+		private final long elapsedNanos;
+
+		private final long p50Nanos;
+
+		private final long p99Nanos;
+
+		private final long p999Nanos;
+
+		Result(String name, long operations, long failures, long elapsedNanos, long p50Nanos, long p99Nanos, long p999Nanos) {
+			this.name = name;
+			this.operations = operations;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+			this.p50Nanos = p50Nanos;
+			this.p99Nanos = p99Nanos;
+			this.p999Nanos = p999Nanos;
+		}
+
+		/**
+		 * @return the name of the scenario
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the number of operations per second, including the failed ones
+		 */
+		public double getThroughput() {
+			return this.operations * 1e9 / this.elapsedNanos;
+		}
+
+		/**
+		 * @return the number of failed operations
+		 */
+		public long getFailures() {
+			return this.failures;
+		}
+
+		/**
+		 * @return the median latency, in nanoseconds
+		 */
+		public long getP50Nanos() {
+			return this.p50Nanos;
+		}
+
+		/**
+		 * @return the 99th percentile of the latency, in nanoseconds
+		 */
+		public long getP99Nanos() {
+			return this.p99Nanos;
+		}
+
+		/**
+		 * @return the 99.9th percentile of the latency, in nanoseconds
+		 */
+		public long getP999Nanos() {
+			return this.p999Nanos;
+		}
+
+		/**
+		 * @return the header of the table printed by {@link #toString()}
+		 */
+		public static String header() {
+			return String.format(Locale.ROOT, "%-24s %10s %12s %12s %12s %10s %10s",
+					"Scenario", "ops/s", "p50 (ms)", "p99 (ms)", "p99.9 (ms)", "ops", "failures");
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-24s %10.1f %12.3f %12.3f %12.3f %10d %10d",
+					this.name, getThroughput(), this.p50Nanos / 1e6, this.p99Nanos / 1e6,
+					this.p999Nanos / 1e6, this.operations, this.failures);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int concurrency = 8;
+		long warmup = 1000;
+		long duration = 5000;
+		int count = StubSearchServer.DEFAULT_COUNT;
+		StubSearchServer.Latency latency = StubSearchServer.Latency.NONE;
+		double errorRate = 0;
+		int dripChunk = 0;
+		long dripDelay = 0;
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			boolean hasValue = i + 1 < args.length;
+			if (args[i].equals("-c") && hasValue) {
+				concurrency = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-w") && hasValue) {
+				warmup = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-d") && hasValue) {
+				duration = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-n") && hasValue) {
+				count = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-l") && hasValue) {
+				latency = parseLatency(args[++i]);
+			} else if (args[i].equals("-e") && hasValue) {
+				errorRate = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-s") && hasValue) {
+				String[] drip = args[++i].split(":");
+				dripChunk = Integer.parseInt(drip[0]);
+				dripDelay = drip.length > 1 ? Long.parseLong(drip[1]) : 0;
+			} else {
+				filters.add(args[i]);
+			}
+		}
+
+		StubSearchServer server = new StubSearchServer(0);
+		server.start();
+		try {
+			final URL descriptionUrl = server.getDescriptionUri().toURL();
+			OpenSearchDescription description = OpenSearchDescription.parse(descriptionUrl);
+			final Url rss = description.getUrl(UrlRole.RESULTS, OpenSearchDescription.TYPE_RSS);
+			final Url atom = description.getUrl(UrlRole.RESULTS, OpenSearchDescription.TYPE_ATOM);
+			final QueryBinding binding = QueryBinding.searchTerms("open search load").with(TemplateParameter.COUNT, count);
+			final AsyncSearchClient searchClient = new AsyncSearchClient();
+			final AsyncSuggestionsClient suggestionsClient = new AsyncSuggestionsClient(description.getUrl(UrlRole.SUGGESTIONS, null));
+
+			// the faults are injected after the setup, which must succeed
+			server.setLatency(latency);
+			server.setErrorRate(errorRate);
+			server.setSlowDrip(dripChunk, dripDelay);
+
+			LoadDriver driver = new LoadDriver(concurrency, warmup, duration);
+			System.out.println(Result.header());
+			run(driver, filters, "description.fetch", () -> OpenSearchDescription.parse(descriptionUrl));
+			run(driver, filters, "search.rss.blocking", () -> SearchResponse.parse(new URL(rss.getUrl(binding))));
+			run(driver, filters, "search.rss.async", () -> searchClient.search(rss, binding).join());
+			run(driver, filters, "search.atom.async", () -> searchClient.search(atom, binding).join());
+			run(driver, filters, "suggestions.async", () -> suggestionsClient.getSuggestions("open sea", 10).join());
+			System.out.println("Server: " + server.getRequestCount() + " requests, " + server.getFailureCount() + " failures");
+		} finally {
+			server.stop();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs a scenario and prints its result, if it is selected by the filters
+	 * @param driver - the load generator
+	 * @param filters - the filters, if empty all the scenarios are run
+	 * @param name - the name of the scenario
+	 * @param operation - the operation to execute
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	private static void run(LoadDriver driver, List<String> filters, String name, Operation operation) throws InterruptedException {
+		if (!filters.isEmpty()) {
+			boolean selected = false;
+			for (String filter : filters) {
+				selected |= name.contains(filter);
+			}
+			if (!selected) {
+				return;
+			}
+		}
+		System.out.println(driver.run(name, operation));
+	}
+
+	/**
+	 * @param spec - the distribution, in the form name:arguments (see the usage)
+	 * @return the parsed distribution
+	 * @throws IllegalArgumentException if the distribution is unknown
+	 */
+	private static StubSearchServer.Latency parseLatency(String spec) {
+		String[] values = spec.split(":");
+		switch (values[0].toLowerCase(Locale.ROOT)) {
+		case "fixed":
+			return StubSearchServer.Latency.fixed(Long.parseLong(values[1]));
+		case "uniform":
+			return StubSearchServer.Latency.uniform(Long.parseLong(values[1]), Long.parseLong(values[2]));
+		case "lognormal":
+			return StubSearchServer.Latency.logNormal(Double.parseDouble(values[1]), Double.parseDouble(values[2]));
+		case "bimodal":
+			return StubSearchServer.Latency.bimodal(Long.parseLong(values[1]), Long.parseLong(values[2]), Double.parseDouble(values[3]));
+		default:
+			throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.pasdam.opensearch.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.TemplateParameter;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.response.ResultField;
+import com.pasdam.opensearch.response.SearchResponse;
+import com.pasdam.opensearch.response.SuggestionsResponse;
+
+/**
+ * JMH benchmarks of the parse and expand hot paths: template expansion, suggestions, search
+ * responses (RSS and Atom, small and huge pages) and description documents. The documents
+ * are generated by {@link Fixtures} once per trial.<br/>
+ * The benchmarks are packaged with the library and JMH by the bench module, from the root
+ * of the project:
+ * <pre>
+ * mvn -B package
+ * java -jar bench/target/benchmarks.jar ParseBenchmarks -prof gc
+ * </pre>
+ * Each benchmark samples the duration of the operations, so JMH reports the average time
+ * and its percentiles (p0.50, p0.99, ...). The gc profiler ({@code -prof gc}) adds the
+ * bytes allocated per operation ({@code gc.alloc.rate.norm}), the allocation rate and the
+ * number of collections; it should always be enabled when a change is meant to reduce the
+ * garbage of a parser. A regular expression selects the benchmarks to run, i.e.
+ * {@code ParseBenchmarks.responseParse} for the search responses only, and the usual JMH
+ * options override the iterations ({@code -wi}, {@code -i}, {@code -f}, see {@code -h}).
+ * @author Paco
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmarks {
+
+	private byte[] rssSmall;
+	private byte[] rssHuge;
+	private byte[] atomSmall;
+	private byte[] atomHuge;
+	private byte[] descriptionSmall;
+	private byte[] descriptionLarge;
+	private String suggestionsShort;
+	private String suggestionsLong;
+	private byte[] suggestionsLongBytes;
+
+	private Url url;
+	private QueryBinding binding;
+	private EnumSet<ResultField> linkOnly;
+
+	@Setup
+	public void setUp() {
+		this.rssSmall = bytes(Fixtures.rss(10));
+		this.rssHuge = bytes(Fixtures.rss(5000));
+		this.atomSmall = bytes(Fixtures.atom(10));
+		this.atomHuge = bytes(Fixtures.atom(5000));
+		this.descriptionSmall = bytes(Fixtures.description(3, 0));
+		this.descriptionLarge = bytes(Fixtures.description(60, 12));
+		this.suggestionsShort = Fixtures.suggestions(10);
+		this.suggestionsLong = Fixtures.suggestions(2000);
+		this.suggestionsLongBytes = bytes(this.suggestionsLong);
+
+		OpenSearchDescription description = OpenSearchDescription.parse(new ByteArrayInputStream(this.descriptionLarge));
+		this.url = description.getResultsUrl();
+		this.binding = QueryBinding.searchTerms("open search benchmark")
+				.with(TemplateParameter.COUNT, 20)
+				.with(TemplateParameter.START_PAGE, 3)
+				.with(TemplateParameter.LANGUAGE, "en-us");
+		this.linkOnly = EnumSet.of(ResultField.LINK);
+
+		// a benchmark that measures a failure is meaningless
+		check("suggestions.short", SuggestionsResponse.parseJsonResponse(this.suggestionsShort));
+		check("suggestions.long", SuggestionsResponse.parseJsonResponse(this.suggestionsLong));
+		check("response.rss", SearchResponse.parse(new ByteArrayInputStream(this.rssHuge)));
+		check("response.atom", SearchResponse.parse(new ByteArrayInputStream(this.atomHuge)));
+		check("response.page", SearchResponse.parseResultPage(new ByteArrayInputStream(this.rssHuge)));
+		check("description.small", OpenSearchDescription.parse(new ByteArrayInputStream(this.descriptionSmall)));
+	}
+
+	@Benchmark
+	public void urlGetUrl(Blackhole blackhole) {
+		blackhole.consume(this.url.getUrl(this.binding));
+	}
+
+	@Benchmark
+	public void urlCompile(Blackhole blackhole) {
+		blackhole.consume(this.url.compile());
+	}
+
+	@Benchmark
+	public void suggestionsParseShort(Blackhole blackhole) {
+		blackhole.consume(SuggestionsResponse.parseJsonResponse(this.suggestionsShort));
+	}
+
+	@Benchmark
+	public void suggestionsParseLong(Blackhole blackhole) {
+		blackhole.consume(SuggestionsResponse.parseJsonResponse(this.suggestionsLong));
+	}
+
+	@Benchmark
+	public void suggestionsParseLongBuffer(Blackhole blackhole) throws ParseException {
+		blackhole.consume(SuggestionsResponse.parseJsonResponse(ByteBuffer.wrap(this.suggestionsLongBytes)));
+	}
+
+	@Benchmark
+	public void responseParseRssSmall(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parse(new ByteArrayInputStream(this.rssSmall)));
+	}
+
+	@Benchmark
+	public void responseParseRssHuge(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parse(new ByteArrayInputStream(this.rssHuge)));
+	}
+
+	@Benchmark
+	public void responseParseAtomSmall(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parse(new ByteArrayInputStream(this.atomSmall)));
+	}
+
+	@Benchmark
+	public void responseParseAtomHuge(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parse(new ByteArrayInputStream(this.atomHuge)));
+	}
+
+	@Benchmark
+	public void responsePageRssHuge(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parseResultPage(new ByteArrayInputStream(this.rssHuge)));
+	}
+
+	@Benchmark
+	public void responsePageRssHugeLinkOnly(Blackhole blackhole) {
+		blackhole.consume(SearchResponse.parseResultPage(new ByteArrayInputStream(this.rssHuge), this.linkOnly));
+	}
+
+	@Benchmark
+	public void descriptionParseSmall(Blackhole blackhole) {
+		blackhole.consume(OpenSearchDescription.parse(new ByteArrayInputStream(this.descriptionSmall)));
+	}
+
+	@Benchmark
+	public void descriptionParseLarge(Blackhole blackhole) {
+		blackhole.consume(OpenSearchDescription.parse(new ByteArrayInputStream(this.descriptionLarge)));
+	}
+
+	/**
+	 * Checks that an operation succeeded
+	 * @param name - the name of the operation
+	 * @param result - the result of the operation
+	 * @throws IllegalStateException if the operation failed
+	 */
+	private static void check(String name, Object result) {
+		if (result == null) {
+			throw new IllegalStateException(name + ": the operation returned null");
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+}
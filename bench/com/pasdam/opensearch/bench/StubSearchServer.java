@@ -0,0 +1,419 @@
+package com.pasdam.opensearch.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pasdam.opensearch.xml.XmlStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stub search engine, embedded in the process and built on the HTTP server of the JDK, to
+ * test and benchmark the clients without depending on the network or on a real engine.
+ * It serves:
+ * <ul>
+ * <li>{@value #PATH_DESCRIPTION}: a description document whose urls point to this server
+ * (or the document set by {@link #setDescription(String)});</li>
+ * <li>{@value #PATH_RSS} and {@value #PATH_ATOM}: pages of results, honoring the
+ * parameters q, count and start (see {@link Fixtures#rssPage(String, int, int, int)});</li>
+ * <li>{@value #PATH_SUGGEST}: JSON suggestions for the parameter q, honoring count.</li>
+ * </ul>
+ * Faults can be injected to reproduce the behavior of a real engine under load: a
+ * {@link Latency} distribution delays the responses, a fraction of the requests fails
+ * with status 503, and the bodies can be written in small chunks with a pause between
+ * them (slow drip). The settings can be changed while the server is running.<br/>
+ * The requests are served by a pool of daemon threads, so a delayed response doesn't
+ * block the others and a running server doesn't prevent the JVM from exiting.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class StubSearchServer {
+
+	/**
+	 * Path of the description document
+	 */
+	public static final String PATH_DESCRIPTION = "/description.xml";
+
+	/**
+	 * Path of the RSS results
+	 */
+	public static final String PATH_RSS = "/rss";
+
+	/**
+	 * Path of the Atom results
+	 */
+	public static final String PATH_ATOM = "/atom";
+
+	/**
+	 * Path of the JSON suggestions
+	 */
+	public static final String PATH_SUGGEST = "/suggest";
+
+	/**
+	 * Number of results per page, when the request doesn't specify it
+	 */
+	public static final int DEFAULT_COUNT = 10;
+
+	/**
+	 * Number of results of each search, by default
+	 */
+	public static final int DEFAULT_TOTAL_RESULTS = 1000;
+
+	/**
+	 * Maximum number of results per page; larger requests are truncated, like real engines do
+	 */
+	public static final int MAX_COUNT = 5000;
+
+	/**
+	 * A distribution of the delay added to the responses
+	 */
+	public interface Latency {
+
+		/**
+		 * No delay
+		 */
+		Latency NONE = () -> 0;
+
+		/**
+		 * @return the next delay, in milliseconds
+		 */
+		long nextMillis();
+
+		/**
+		 * @param millis - the delay
+		 * @return a distribution that always returns the same delay
+		 */
+		static Latency fixed(final long millis) {
+			return () -> millis;
+		}
+
+		/**
+		 * @param minMillis - the minimum delay
+		 * @param maxMillis - the maximum delay
+		 * @return a distribution uniform between the two values, included
+		 */
+		static Latency uniform(final long minMillis, final long maxMillis) {
+			if (minMillis > maxMillis) {
+				throw new IllegalArgumentException("Invalid range: " + minMillis + "-" + maxMillis);
+			}
+			return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+		}
+
+		/**
+		 * A log-normal distribution, whose long right tail is typical of the latencies of
+		 * the services
+		 * @param medianMillis - the median delay
+		 * @param sigma - the standard deviation of the logarithm of the delay; with 0.5 the
+		 * 99th percentile is about 3.2 times the median, with 1 about 10 times
+		 * @return the distribution
+		 */
+		static Latency logNormal(final double medianMillis, final double sigma) {
+			final double mu = Math.log(medianMillis);
+			return () -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+		}
+
+		/**
+		 * @param fastMillis - the usual delay
+		 * @param slowMillis - the delay of the slow responses
+		 * @param slowFraction - the fraction of slow responses, between 0 and 1
+		 * @return a distribution that returns one of the two delays
+		 */
+		static Latency bimodal(final long fastMillis, final long slowMillis, final double slowFraction) {
+			return () -> ThreadLocalRandom.current().nextDouble() < slowFraction ? slowMillis : fastMillis;
+		}
+	}
+
+	static {
+		// without TCP_NODELAY, Nagle's algorithm and the delayed acks of the clients add
+		// about 40ms to each response; the property is read when the first server is created
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private volatile String description;
+
+	private volatile int totalResults = DEFAULT_TOTAL_RESULTS;
+
+	private volatile Latency latency = Latency.NONE;
+
+	private volatile double errorRate;
+
+	private volatile int dripChunkBytes;
+
+	private volatile long dripDelayMillis;
+
+	/**
+	 * Creates a server listening on the loopback address; it must be started with
+	 * {@link #start()}
+	 * @param port - the port, 0 to use an ephemeral one
+	 * @throws IOException if the server cannot be bound
+	 */
+	public StubSearchServer(int port) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "stub-search-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.setExecutor(this.executor);
+		this.server.createContext(PATH_DESCRIPTION, new StubHandler() {
+
+			@Override
+			protected String body(String terms, int startIndex, int count) {
+				String description = StubSearchServer.this.description;
+				return description != null ? description : defaultDescription();
+			}
+		});
+		this.server.createContext(PATH_RSS, new StubHandler() {
+
+			@Override
+			protected String body(String terms, int startIndex, int count) {
+				return Fixtures.rssPage(terms, startIndex, count, StubSearchServer.this.totalResults);
+			}
+		});
+		this.server.createContext(PATH_ATOM, new StubHandler() {
+
+			@Override
+			protected String body(String terms, int startIndex, int count) {
+				return Fixtures.atomPage(terms, startIndex, count, StubSearchServer.this.totalResults);
+			}
+		});
+		this.server.createContext(PATH_SUGGEST, new StubHandler() {
+
+			@Override
+			protected String body(String terms, int startIndex, int count) {
+				return Fixtures.suggestions(terms, count);
+			}
+		});
+	}
+
+	/**
+	 * Starts the server
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server, closing the pending exchanges
+	 */
+	public void stop() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * @return the base uri of the server, without the trailing slash
+	 */
+	public URI getBaseUri() {
+		InetSocketAddress address = this.server.getAddress();
+		return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort());
+	}
+
+	/**
+	 * @return the uri of the description document
+	 */
+	public URI getDescriptionUri() {
+		return URI.create(getBaseUri() + PATH_DESCRIPTION);
+	}
+
+	/**
+	 * Sets the description document served by {@value #PATH_DESCRIPTION}
+	 * @param description - the xml document, null to serve the default one, whose urls
+	 * point to this server
+	 */
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * @param totalResults - the number of results of each search
+	 */
+	public void setTotalResults(int totalResults) {
+		this.totalResults = Math.max(0, totalResults);
+	}
+
+	/**
+	 * @param latency - the distribution of the delay added before each response, null to
+	 * respond without delay
+	 */
+	public void setLatency(Latency latency) {
+		this.latency = latency != null ? latency : Latency.NONE;
+	}
+
+	/**
+	 * @param errorRate - the fraction of requests that fail with status 503, between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		if (errorRate < 0 || errorRate > 1) {
+			throw new IllegalArgumentException("Invalid error rate: " + errorRate);
+		}
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Configures the slow drip of the bodies
+	 * @param chunkBytes - the size of each chunk of the body, 0 to write the body at once
+	 * @param delayMillis - the pause after each chunk
+	 */
+	public void setSlowDrip(int chunkBytes, long delayMillis) {
+		this.dripChunkBytes = Math.max(0, chunkBytes);
+		this.dripDelayMillis = Math.max(0, delayMillis);
+	}
+
+	/**
+	 * @return the number of requests received
+	 */
+	public long getRequestCount() {
+		return this.requests.get();
+	}
+
+	/**
+	 * @return the number of requests that failed, because of an injected error or of an
+	 * exception of the server
+	 */
+	public long getFailureCount() {
+		return this.failures.get();
+	}
+
+	/**
+	 * @return the default description document, whose urls point to this server
+	 */
+	private String defaultDescription() {
+		String base = getBaseUri().toString();
+		String parameters = "?q={searchTerms}&amp;count={count?}&amp;start={startIndex?}";
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<OpenSearchDescription xmlns=\"http://a9.com/-/spec/opensearch/1.1/\">\n"
+				+ "<ShortName>Stub</ShortName>\n"
+				+ "<Description>Stub search engine</Description>\n"
+				+ "<Url type=\"application/rss+xml\" template=\"" + base + PATH_RSS + parameters + "\"/>\n"
+				+ "<Url type=\"application/atom+xml\" template=\"" + base + PATH_ATOM + parameters + "\"/>\n"
+				+ "<Url type=\"application/x-suggestions+json\" rel=\"suggestions\" template=\"" + base + PATH_SUGGEST + "?q={searchTerms}&amp;count={count?}\"/>\n"
+				+ "<Url type=\"application/opensearchdescription+xml\" rel=\"self\" template=\"" + base + PATH_DESCRIPTION + "\"/>\n"
+				+ "<InputEncoding>UTF-8</InputEncoding>\n"
+				+ "<OutputEncoding>UTF-8</OutputEncoding>\n"
+				+ "</OpenSearchDescription>\n";
+	}
+
+	/**
+	 * Handler of an endpoint: it parses the query, injects the faults and writes the body
+	 */
+	private abstract class StubHandler implements HttpHandler {
+
+		/**
+		 * @param terms - the search terms, empty if missing
+		 * @param startIndex - the index of the first result, 1 if missing
+		 * @param count - the number of results, {@link StubSearchServer#DEFAULT_COUNT} if missing
+		 * @return the body of the response
+		 */
+		protected abstract String body(String terms, int startIndex, int count);
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			StubSearchServer.this.requests.incrementAndGet();
+			try {
+				long delay = StubSearchServer.this.latency.nextMillis();
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+				double errorRate = StubSearchServer.this.errorRate;
+				if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+					StubSearchServer.this.failures.incrementAndGet();
+					exchange.sendResponseHeaders(503, -1);
+					return;
+				}
+
+				String terms = "";
+				int startIndex = 1;
+				int count = DEFAULT_COUNT;
+				String query = exchange.getRequestURI().getRawQuery();
+				if (query != null) {
+					for (String pair : query.split("&")) {
+						int separator = pair.indexOf('=');
+						if (separator <= 0) {
+							continue;
+						}
+						String name = pair.substring(0, separator);
+						String value = URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+						if (name.equals("q")) {
+							terms = value;
+						} else if (name.equals("start")) {
+							startIndex = Math.max(1, XmlStreams.parseInt(value, startIndex));
+						} else if (name.equals("count")) {
+							count = Math.max(0, Math.min(MAX_COUNT, XmlStreams.parseInt(value, count)));
+						}
+					}
+				}
+
+				byte[] body = body(terms, startIndex, count).getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", contentType(exchange.getHttpContext().getPath()));
+				int chunk = StubSearchServer.this.dripChunkBytes;
+				long chunkDelay = StubSearchServer.this.dripDelayMillis;
+				if (chunk <= 0 || chunk >= body.length) {
+					exchange.sendResponseHeaders(200, body.length);
+					try (OutputStream output = exchange.getResponseBody()) {
+						output.write(body);
+					}
+				} else {
+					// chunked transfer: the client cannot know how much is left
+					exchange.sendResponseHeaders(200, 0);
+					try (OutputStream output = exchange.getResponseBody()) {
+						for (int offset = 0; offset < body.length; offset += chunk) {
+							output.write(body, offset, Math.min(chunk, body.length - offset));
+							output.flush();
+							if (chunkDelay > 0) {
+								TimeUnit.MILLISECONDS.sleep(chunkDelay);
+							}
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// the server is stopping
+				Thread.currentThread().interrupt();
+			} catch (IOException | RuntimeException e) {
+				// the client closed the connection, or the body cannot be generated
+				StubSearchServer.this.failures.incrementAndGet();
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * @param path - the path of the endpoint
+	 * @return the content type of the responses of the endpoint
+	 */
+	private static String contentType(String path) {
+		switch (path) {
+		case PATH_RSS:
+			return "application/rss+xml; charset=UTF-8";
+		case PATH_ATOM:
+			return "application/atom+xml; charset=UTF-8";
+		case PATH_SUGGEST:
+			return "application/x-suggestions+json; charset=UTF-8";
+		default:
+			return "application/opensearchdescription+xml; charset=UTF-8";
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package com.pasdam.opensearch.cache;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pasdam.opensearch.client.HttpClients;
+import com.pasdam.opensearch.client.HttpStatusException;
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+
+/**
+ * Repository of description documents, that keeps each parsed description together with
+ * the validators of its HTTP response (ETag and Last-Modified).<br/>
+ * Descriptions are refreshed with conditional requests (If-None-Match and
+ * If-Modified-Since): when the server answers 304 Not Modified the stored description is
+ * kept and the document is neither downloaded nor parsed again. When a description
+ * declares a url with role "self" (see {@link OpenSearchDescription#getSelfUrl()}), that
+ * url is used for the following refreshes.<br/>
+ * The stored descriptions are shared by all the callers, so they must not be modified.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class DescriptionRepository {
+
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_NOT_MODIFIED = 304;
+
+	private final HttpClient httpClient;
+
+	private final Duration timeout;
+
+	/**
+	 * Entries by the location used to register them
+	 */
+	private final ConcurrentMap<URI, Entry> entries = new ConcurrentHashMap<URI, Entry>();
+
+	private final AtomicLong downloadCount = new AtomicLong();
+
+	private final AtomicLong notModifiedCount = new AtomicLong();
+
+	/**
+	 * Creates a repository that uses the shared HttpClient and the default timeout
+	 */
+	public DescriptionRepository() {
+		this(HttpClients.getDefault(), HttpClients.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor
+	 * @param httpClient - the client used to send the requests
+	 * @param timeout - the timeout of the requests
+	 */
+	public DescriptionRepository(HttpClient httpClient, Duration timeout) {
+		if (httpClient == null || timeout == null) {
+			throw new IllegalArgumentException("Client and timeout cannot be null");
+		}
+		this.httpClient = httpClient;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns a description, downloading it the first time
+	 * @param location - the location of the description document
+	 * @return the description
+	 * @throws ExecutionException if the download or the parse failed
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public OpenSearchDescription get(URI location) throws ExecutionException, InterruptedException {
+		Entry entry = this.entries.get(location);
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		if (metrics.isEnabled()) {
+			metrics.cacheAccessed(entry != null ? entry.description.shortName : null, UrlRole.SELF, entry != null);
+		}
+		if (entry != null) {
+			return entry.description;
+		}
+		return refreshAsync(location).get();
+	}
+
+	/**
+	 * Returns a stored description, without downloading it
+	 * @param location - the location used to register the description
+	 * @return the description, or null if it isn't in the repository
+	 */
+	public OpenSearchDescription getIfPresent(URI location) {
+		Entry entry = this.entries.get(location);
+		return entry != null ? entry.description : null;
+	}
+
+	/**
+	 * Refreshes a description, downloading it only if it has been modified
+	 * @param location - the location used to register the description
+	 * @return a future completed with the current description
+	 */
+	public CompletableFuture<OpenSearchDescription> refreshAsync(final URI location) {
+		final Entry entry = this.entries.get(location);
+		HttpRequest.Builder request = HttpRequest.newBuilder(entry != null ? entry.refreshLocation : location)
+				.timeout(this.timeout)
+				.GET();
+		if (entry != null) {
+			if (entry.etag != null) {
+				request.header(HEADER_IF_NONE_MATCH, entry.etag);
+			}
+			if (entry.lastModified != null) {
+				request.header(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+			}
+		}
+		final String engine = entry != null ? entry.description.shortName : null;
+		final OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		CompletableFuture<HttpResponse<byte[]>> exchange = this.httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+		if (metrics.isEnabled()) {
+			exchange.whenComplete((response, error) -> {
+				if (error != null) {
+					metrics.failed(engine, UrlRole.SELF, Stage.FETCH, FailureCause.of(error), error);
+				} else if (response.statusCode() == STATUS_OK) {
+					metrics.fetched(engine, UrlRole.SELF, System.nanoTime() - start, response.body().length);
+				} else if (response.statusCode() == STATUS_NOT_MODIFIED && entry != null) {
+					// the stored description is still valid
+					metrics.cacheAccessed(engine, UrlRole.SELF, true);
+				}
+			});
+		}
+		return exchange.thenApply(response -> {
+			if (response.statusCode() == STATUS_NOT_MODIFIED && entry != null) {
+				this.notModifiedCount.incrementAndGet();
+				return entry.description;
+			}
+			if (response.statusCode() != STATUS_OK) {
+				HttpStatusException error = new HttpStatusException(response.statusCode(), response.uri());
+				if (metrics.isEnabled()) {
+					metrics.failed(engine, UrlRole.SELF, Stage.FETCH, FailureCause.HTTP_STATUS, error);
+				}
+				throw new CompletionException(error);
+			}
+			this.downloadCount.incrementAndGet();
+			OpenSearchDescription description = OpenSearchDescription.parse(new ByteArrayInputStream(response.body()));
+			if (description == null) {
+				throw new CompletionException(new ParseException("Invalid description document: " + response.uri(), 0));
+			}
+			this.entries.put(location, new Entry(description,
+					refreshLocation(description, entry != null ? entry.refreshLocation : location),
+					response.headers().firstValue(HEADER_ETAG).orElse(null),
+					response.headers().firstValue(HEADER_LAST_MODIFIED).orElse(null)));
+			return description;
+		});
+	}
+
+	/**
+	 * Refreshes all the descriptions; a failed refresh leaves the stored description unchanged
+	 * @return a future completed, when all the refreshes have completed, with the locations
+	 * of the descriptions that couldn't be refreshed
+	 */
+	public CompletableFuture<List<URI>> refreshAllAsync() {
+		final List<URI> failed = new ArrayList<URI>();
+		List<CompletableFuture<?>> refreshes = new ArrayList<CompletableFuture<?>>(this.entries.size());
+		for (final URI location : this.entries.keySet()) {
+			refreshes.add(refreshAsync(location).whenComplete((description, error) -> {
+				if (error != null) {
+					synchronized (failed) {
+						failed.add(location);
+					}
+				}
+			}));
+		}
+		return CompletableFuture.allOf(refreshes.toArray(new CompletableFuture<?>[refreshes.size()]))
+				.handle((ignored, error) -> failed);
+	}
+
+	/**
+	 * Removes a description
+	 * @param location - the location used to register the description
+	 * @return the removed description, or null if it wasn't in the repository
+	 */
+	public OpenSearchDescription remove(URI location) {
+		Entry entry = this.entries.remove(location);
+		return entry != null ? entry.description : null;
+	}
+
+	/**
+	 * @return the locations of the stored descriptions
+	 */
+	public List<URI> getLocations() {
+		return new ArrayList<URI>(this.entries.keySet());
+	}
+
+	/**
+	 * @return the number of stored descriptions
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return the number of documents downloaded and parsed
+	 */
+	public long getDownloadCount() {
+		return this.downloadCount.get();
+	}
+
+	/**
+	 * @return the number of refreshes answered with 304 Not Modified
+	 */
+	public long getNotModifiedCount() {
+		return this.notModifiedCount.get();
+	}
+
+	/**
+	 * Returns the location from which a description should be refreshed
+	 * @param description - the description
+	 * @param location - the location from which the description has been downloaded
+	 * @return the "self" url of the description, if it declares a valid one, otherwise the location
+	 */
+	private static URI refreshLocation(OpenSearchDescription description, URI location) {
+		Url self = description.getSelfUrl();
+		if (self != null) {
+			try {
+				URI uri = location.resolve(self.getUrl(QueryBinding.EMPTY));
+				String scheme = uri.getScheme();
+				if ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) {
+					return uri;
+				}
+			} catch (IllegalArgumentException e) {}
+		}
+		return location;
+	}
+
+	/**
+	 * A stored description, with its validators; entries are replaced, never modified
+	 */
+	private static class Entry {
+
+		final OpenSearchDescription description;
+		final URI refreshLocation;
+		final String etag;
+		final String lastModified;
+
+		Entry(OpenSearchDescription description, URI refreshLocation, String etag, String lastModified) {
+			this.description = description;
+			this.refreshLocation = refreshLocation;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -0,0 +1,572 @@
+package com.pasdam.opensearch.cache;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.response.ResultField;
+import com.pasdam.opensearch.response.ResultPage;
+import com.pasdam.opensearch.response.SearchResponse;
+
+/**
+ * Cache of search responses, placed in front of {@link SearchResponse#parse(URL)}.<br/>
+ * Responses are indexed by the canonical form of the expanded url (see
+ * {@link #canonicalKey(String)}), so the same request written in different ways is fetched
+ * only once. The cache is bounded by the estimated memory used by the responses, and it
+ * evicts them with a segmented LRU policy: new responses enter a probation segment and are
+ * promoted to a protected segment, that takes up to 80% of the budget, when they are
+ * requested again, so a burst of one-off queries cannot flush the responses that are
+ * requested often. Responses older than the time to live are ignored and removed.<br/>
+ * When many threads miss the same key at the same time, only one of them fetches the
+ * response; the others wait for it.<br/>
+ * The cached responses are shared by all the callers, so they must not be modified.<br/>
+ * This class is thread safe; the requests to the engines are made without holding the lock.
+ * @author Paco
+ * @version 1.0
+ */
+public class SearchResponseCache {
+
+	/**
+	 * Fraction of the budget reserved to the protected segment
+	 */
+	private static final double PROTECTED_RATIO = 0.8;
+
+	/**
+	 * Estimated weight of a string, without its characters
+	 */
+	private static final int STRING_WEIGHT = 40;
+
+	/**
+	 * Estimated weight of a result, without its strings
+	 */
+	private static final int RESULT_WEIGHT = 200;
+
+	/**
+	 * Estimated weight of a row of a result page, without its strings
+	 */
+	private static final int ROW_WEIGHT = 48;
+
+	/**
+	 * Estimated weight of a response and of its key, without the results
+	 */
+	private static final int RESPONSE_WEIGHT = 200;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Function used to fetch the responses, it receives the url and the short name of the
+	 * engine, or null if it isn't known
+	 */
+	private final BiFunction<URL, String, SearchResponse> source;
+
+	private final long maxWeight;
+
+	private final long maxProtectedWeight;
+
+	private final long ttlNanos;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * Requests in progress, by key
+	 */
+	private final Map<String, CompletableFuture<SearchResponse>> loading = new HashMap<String, CompletableFuture<SearchResponse>>();
+
+	/**
+	 * Sentinels of the segments: head.next is the most recently used entry, head.previous
+	 * the least recently used one
+	 */
+	private final Entry probationHead = new Entry(null, null, 0);
+	private final Entry protectedHead = new Entry(null, null, 0);
+
+	private long probationWeight;
+
+	private long protectedWeight;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long sharedLoadCount;
+
+	private long evictionCount;
+
+	/**
+	 * Creates a cache that fetches the responses with {@link SearchResponse#parse(URL)};
+	 * the fetches made through {@link #get(Url, QueryBinding)} are tagged with the name of
+	 * the engine
+	 * @param maxWeight - maximum estimated size of the cached responses, in bytes
+	 * @param ttl - time to live of the cached responses
+	 * @param unit - unit of the time to live
+	 */
+	public SearchResponseCache(long maxWeight, long ttl, TimeUnit unit) {
+		this(maxWeight, ttl, unit, (url, engine) -> SearchResponse.parse(url, null, ResultField.DEFAULT, engine));
+	}
+
+	/**
+	 * Constructor
+	 * @param source - the function used to fetch the responses not found in the cache; it
+	 * returns null in case of errors. To cache columnar result pages use
+	 * <code>url -&gt; SearchResponse.parseResultPage(url, fields, engine)</code>
+	 * @param maxWeight - maximum estimated size of the cached responses, in bytes
+	 * @param ttl - time to live of the cached responses
+	 * @param unit - unit of the time to live
+	 */
+	public SearchResponseCache(Function<URL, SearchResponse> source, long maxWeight, long ttl, TimeUnit unit) {
+		this(maxWeight, ttl, unit, source != null ? (url, engine) -> source.apply(url) : null);
+	}
+
+	private SearchResponseCache(long maxWeight, long ttl, TimeUnit unit, BiFunction<URL, String, SearchResponse> source) {
+		if (source == null || maxWeight <= 0) {
+			throw new IllegalArgumentException("Source cannot be null and maxWeight must be positive");
+		}
+		this.source = source;
+		this.maxWeight = maxWeight;
+		this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+		this.ttlNanos = unit.toNanos(ttl);
+		clear();
+	}
+
+	/**
+	 * Returns the response of a request, from the cache if possible
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters
+	 * @return the response, or null in case of errors
+	 */
+	public SearchResponse get(Url url, QueryBinding binding) {
+		return get(url.getUrl(binding), url.engineName);
+	}
+
+	/**
+	 * Returns the response of a request, from the cache if possible
+	 * @param url - the expanded url of the request
+	 * @return the response, or null in case of errors
+	 */
+	public SearchResponse get(String url) {
+		return get(url, null);
+	}
+
+	/**
+	 * Returns the response of a request, from the cache if possible
+	 * @param url - the expanded url of the request
+	 * @param engine - the short name of the engine, it tags the metrics of the cache and of
+	 * the fetch; it could be null
+	 * @return the response, or null in case of errors
+	 */
+	private SearchResponse get(String url, String engine) {
+		String key = canonicalKey(url);
+		CompletableFuture<SearchResponse> load;
+		SearchResponse cached = null;
+		boolean owner = false;
+		synchronized (this) {
+			Entry entry = lookup(key);
+			if (entry != null) {
+				this.hitCount++;
+				cached = entry.response;
+				load = null;
+			} else {
+				load = this.loading.get(key);
+				if (load != null) {
+					this.sharedLoadCount++;
+				} else {
+					this.missCount++;
+					load = new CompletableFuture<SearchResponse>();
+					this.loading.put(key, load);
+					owner = true;
+				}
+			}
+		}
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		if (metrics.isEnabled()) {
+			// a shared load is a hit: this caller doesn't send a request
+			metrics.cacheAccessed(engine, UrlRole.RESULTS, !owner);
+		}
+		if (cached != null) {
+			return cached;
+		}
+		if (owner) {
+			return load(url, engine, key, load);
+		}
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Fetches a response from the source and stores it. Whatever the source throws, the key
+	 * is removed from the requests in progress and the shared future is completed, so the
+	 * threads waiting for it never block forever.
+	 * @param url - the expanded url of the request
+	 * @param engine - the short name of the engine, or null
+	 * @param key - the key of the response
+	 * @param load - the future of the request, shared with the threads that miss the same key
+	 * @return the response, or null in case of errors
+	 */
+	private SearchResponse load(String url, String engine, String key, CompletableFuture<SearchResponse> load) {
+		SearchResponse response = null;
+		Throwable error = null;
+		try {
+			response = this.source.apply(new URL(url), engine);
+			return response;
+		} catch (MalformedURLException e) {
+			return null;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			try {
+				synchronized (this) {
+					this.loading.remove(key);
+					if (response != null) {
+						store(key, response);
+					}
+				}
+			} finally {
+				if (error != null) {
+					load.completeExceptionally(error);
+				} else {
+					load.complete(response);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks for a response, removing it if it is expired
+	 * @param key - the key of the response
+	 * @return the entry of the response, or null if it isn't in the cache
+	 */
+	private Entry lookup(String key) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.nanoTime() - entry.storedAt > this.ttlNanos) {
+			remove(entry);
+			return null;
+		}
+		if (entry.isProtected) {
+			unlink(entry);
+			linkFirst(this.protectedHead, entry);
+		} else {
+			// promote the entry, demoting the least recently used protected ones if needed
+			unlink(entry);
+			this.probationWeight -= entry.weight;
+			entry.isProtected = true;
+			linkFirst(this.protectedHead, entry);
+			this.protectedWeight += entry.weight;
+			Entry demoted;
+			while (this.protectedWeight > this.maxProtectedWeight && this.protectedHead.previous != entry) {
+				demoted = this.protectedHead.previous;
+				unlink(demoted);
+				this.protectedWeight -= demoted.weight;
+				demoted.isProtected = false;
+				linkFirst(this.probationHead, demoted);
+				this.probationWeight += demoted.weight;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores a response in the probation segment, evicting other responses if needed
+	 * @param key - the key of the response
+	 * @param response - the response
+	 */
+	private void store(String key, SearchResponse response) {
+		long weight = weigh(key, response);
+		if (weight > this.maxWeight) {
+			return;
+		}
+		Entry entry = this.entries.get(key);
+		if (entry != null) {
+			remove(entry);
+		}
+		entry = new Entry(key, response, weight);
+		entry.storedAt = System.nanoTime();
+		this.entries.put(key, entry);
+		linkFirst(this.probationHead, entry);
+		this.probationWeight += weight;
+		Entry victim;
+		while (this.probationWeight + this.protectedWeight > this.maxWeight) {
+			victim = this.probationHead.previous != this.probationHead ? this.probationHead.previous : this.protectedHead.previous;
+			remove(victim);
+			this.evictionCount++;
+		}
+	}
+
+	/**
+	 * Removes all the cached responses; the requests in progress are not affected
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		this.probationHead.previous = this.probationHead;
+		this.probationHead.next = this.probationHead;
+		this.protectedHead.previous = this.protectedHead;
+		this.protectedHead.next = this.protectedHead;
+		this.probationWeight = 0;
+		this.protectedWeight = 0;
+	}
+
+	/**
+	 * @return the number of cached responses
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return the estimated size of the cached responses, in bytes
+	 */
+	public synchronized long weight() {
+		return this.probationWeight + this.protectedWeight;
+	}
+
+	/**
+	 * @return the number of requests answered with a cached response
+	 */
+	public synchronized long getHitCount() {
+		return this.hitCount;
+	}
+
+	/**
+	 * @return the number of requests sent to the search engines
+	 */
+	public synchronized long getMissCount() {
+		return this.missCount;
+	}
+
+	/**
+	 * @return the number of requests answered by waiting for the same request made by
+	 * another thread
+	 */
+	public synchronized long getSharedLoadCount() {
+		return this.sharedLoadCount;
+	}
+
+	/**
+	 * @return the number of responses evicted to respect the budget
+	 */
+	public synchronized long getEvictionCount() {
+		return this.evictionCount;
+	}
+
+	/**
+	 * @return the ratio between the requests not sent to the search engines and all the
+	 * requests, 1 if there were no requests
+	 */
+	public synchronized double getHitRate() {
+		long requests = this.hitCount + this.sharedLoadCount + this.missCount;
+		return requests == 0 ? 1.0 : (double) (this.hitCount + this.sharedLoadCount) / requests;
+	}
+
+	private void remove(Entry entry) {
+		unlink(entry);
+		if (entry.isProtected) {
+			this.protectedWeight -= entry.weight;
+		} else {
+			this.probationWeight -= entry.weight;
+		}
+		this.entries.remove(entry.key);
+	}
+
+	private static void linkFirst(Entry head, Entry entry) {
+		entry.previous = head;
+		entry.next = head.next;
+		head.next.previous = entry;
+		head.next = entry;
+	}
+
+	private static void unlink(Entry entry) {
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+			entry.next.previous = entry.previous;
+			entry.previous = null;
+			entry.next = null;
+		}
+	}
+
+	/**
+	 * Estimates the memory used by a cached response
+	 * @param key - the key of the response
+	 * @param response - the response
+	 * @return the estimated size, in bytes
+	 */
+	static long weigh(String key, SearchResponse response) {
+		long weight = RESPONSE_WEIGHT + 2L * key.length();
+		if (response.resultsList != null) {
+			for (Map<String, String> result : response.resultsList) {
+				weight += RESULT_WEIGHT;
+				for (Map.Entry<String, String> field : result.entrySet()) {
+					// keys are constants shared by all the results
+					if (field.getValue() != null) {
+						weight += STRING_WEIGHT + 2L * field.getValue().length();
+					}
+				}
+			}
+		}
+		if (response.resultPage != null) {
+			ResultPage page = response.resultPage;
+			for (int i = 0; i < page.size(); i++) {
+				weight += ROW_WEIGHT
+						+ weigh(page.getTitle(i)) + weigh(page.getLink(i)) + weigh(page.getDescription(i))
+						+ weigh(page.getPubDate(i)) + weigh(page.getAuthor(i)) + weigh(page.getEnclosure(i));
+			}
+		}
+		if (response.queries != null) {
+			weight += (long) response.queries.size() * RESULT_WEIGHT;
+		}
+		return weight;
+	}
+
+	private static long weigh(String value) {
+		return value != null ? STRING_WEIGHT + 2L * value.length() : 0;
+	}
+
+	/**
+	 * Returns the canonical form of an url, so that equivalent urls have the same key:
+	 * <ul>
+	 * <li>scheme and host are lower case, default ports and the fragment are removed;</li>
+	 * <li>percent-encoded unreserved characters are decoded, the other escapes use upper
+	 * case digits, and spaces in the query string are encoded as "+";</li>
+	 * <li>the parameters of the query string are sorted, empty ones are removed.</li>
+	 * </ul>
+	 * @param url - the url
+	 * @return the canonical form of the url
+	 */
+	public static String canonicalKey(String url) {
+		String value = url.trim();
+		int fragment = value.indexOf('#');
+		if (fragment >= 0) {
+			value = value.substring(0, fragment);
+		}
+		int query = value.indexOf('?');
+		String base = query >= 0 ? value.substring(0, query) : value;
+		StringBuilder key = new StringBuilder(value.length() + 8);
+
+		int authorityStart = base.indexOf("://");
+		int pathStart;
+		if (authorityStart >= 0) {
+			String scheme = base.substring(0, authorityStart).toLowerCase(Locale.ROOT);
+			authorityStart += 3;
+			pathStart = base.indexOf('/', authorityStart);
+			if (pathStart < 0) {
+				pathStart = base.length();
+			}
+			String authority = base.substring(authorityStart, pathStart).toLowerCase(Locale.ROOT);
+			if ((scheme.equals("http") && authority.endsWith(":80")) || (scheme.equals("https") && authority.endsWith(":443"))) {
+				authority = authority.substring(0, authority.lastIndexOf(':'));
+			}
+			key.append(scheme).append("://").append(authority);
+		} else {
+			pathStart = 0;
+		}
+		if (pathStart == base.length() && authorityStart >= 0) {
+			key.append('/');
+		} else {
+			normalizeEncoding(base, pathStart, base.length(), false, key);
+		}
+
+		if (query >= 0) {
+			String[] parameters = value.substring(query + 1).split("&");
+			int count = 0;
+			StringBuilder parameter = new StringBuilder();
+			for (String current : parameters) {
+				if (current.length() > 0) {
+					parameter.setLength(0);
+					normalizeEncoding(current, 0, current.length(), true, parameter);
+					parameters[count++] = parameter.toString();
+				}
+			}
+			parameters = Arrays.copyOf(parameters, count);
+			// repeated parameters are kept, sorting preserves them
+			Arrays.sort(parameters);
+			char separator = '?';
+			for (String current : parameters) {
+				key.append(separator).append(current);
+				separator = '&';
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Appends a part of an url, normalizing its percent-encoding
+	 * @param value - the url
+	 * @param start - start of the part
+	 * @param end - end of the part
+	 * @param query - true if the part is in the query string
+	 * @param out - the builder to which the normalized part is appended
+	 */
+	private static void normalizeEncoding(String value, int start, int end, boolean query, StringBuilder out) {
+		char c;
+		int decoded;
+		for (int i = start; i < end; i++) {
+			c = value.charAt(i);
+			if (c == '%' && i + 2 < end
+					&& (decoded = hexValue(value.charAt(i + 1), value.charAt(i + 2))) >= 0) {
+				if (isUnreserved(decoded)) {
+					out.append((char) decoded);
+				} else if (decoded == ' ' && query) {
+					out.append('+');
+				} else {
+					out.append('%').append(HEX_DIGITS[decoded >> 4]).append(HEX_DIGITS[decoded & 0x0F]);
+				}
+				i += 2;
+			} else if (c == ' ') {
+				out.append(query ? "+" : "%20");
+			} else {
+				out.append(c);
+			}
+		}
+	}
+
+	private static int hexValue(char high, char low) {
+		int h = Character.digit(high, 16);
+		int l = Character.digit(low, 16);
+		return h < 0 || l < 0 ? -1 : (h << 4) | l;
+	}
+
+	private static boolean isUnreserved(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	/**
+	 * A cached response, and entry of the list of its segment
+	 */
+	private static class Entry {
+
+		final String key;
+		final SearchResponse response;
+		final long weight;
+		long storedAt;
+		boolean isProtected;
+
+		Entry previous;
+		Entry next;
+
+		Entry(String key, SearchResponse response, long weight) {
+			this.key = key;
+			this.response = response;
+			this.weight = weight;
+		}
+	}
+}
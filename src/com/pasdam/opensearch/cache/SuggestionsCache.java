@@ -0,0 +1,362 @@
+package com.pasdam.opensearch.cache;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.response.SuggestionsResponse;
+
+/**
+ * Cache of the suggestions of a single search engine, placed in front of a
+ * {@link SuggestionsResponse}.<br/>
+ * The responses are stored in a trie indexed by the query. When a query isn't in the cache,
+ * the cache looks for the longest cached prefix of it whose response was not truncated (it
+ * contains less completions than the requested maximum and than the maximum returned by the
+ * engine): in that case the response already contains all the completions of the longer
+ * query, so they are obtained by filtering it and no request is sent to the engine. While
+ * typing "j", "ja", "jav", "java" only the first request usually reaches the engine.<br/>
+ * Many engines return at most a fixed number of completions whatever the requested count:
+ * that limit must be passed to the constructor, otherwise a capped response would be taken as
+ * complete; 0 disables the reuse of the prefixes.<br/>
+ * The number of cached responses is bounded: the least recently used one is evicted when the
+ * limit is reached. Responses older than the time to live are ignored and removed.<br/>
+ * This class is thread safe; the requests to the engine are made without holding the lock.
+ * @author Paco
+ * @version 1.0
+ */
+public class SuggestionsCache {
+
+	/**
+	 * Default maximum number of completions returned by an engine
+	 */
+	public static final int DEFAULT_ENGINE_LIMIT = 10;
+
+	private final SuggestionsResponse source;
+
+	private final int maxEntries;
+
+	/**
+	 * Maximum number of completions returned by the engine, 0 if the responses of the
+	 * prefixes must not be reused
+	 */
+	private final int engineLimit;
+
+	private final long ttlNanos;
+
+	private final Node root = new Node(null, '\0');
+
+	/**
+	 * Sentinel of the LRU list: head.next is the most recently used entry, head.previous the
+	 * least recently used one
+	 */
+	private final Node head = new Node(null, '\0');
+
+	private int size;
+
+	private long hitCount;
+
+	private long prefixHitCount;
+
+	private long missCount;
+
+	/**
+	 * Creates a cache for an engine that returns at most {@link #DEFAULT_ENGINE_LIMIT} completions
+	 * @param source - the object used to request the suggestions not found in the cache
+	 * @param maxEntries - maximum number of cached responses
+	 * @param ttl - time to live of the cached responses
+	 * @param unit - unit of the time to live
+	 */
+	public SuggestionsCache(SuggestionsResponse source, int maxEntries, long ttl, TimeUnit unit) {
+		this(source, maxEntries, ttl, unit, DEFAULT_ENGINE_LIMIT);
+	}
+
+	/**
+	 * Constructor
+	 * @param source - the object used to request the suggestions not found in the cache
+	 * @param maxEntries - maximum number of cached responses
+	 * @param ttl - time to live of the cached responses
+	 * @param unit - unit of the time to live
+	 * @param engineLimit - maximum number of completions returned by the engine, whatever the
+	 * requested count; 0 to never answer a query with the response of a shorter one
+	 */
+	public SuggestionsCache(SuggestionsResponse source, int maxEntries, long ttl, TimeUnit unit, int engineLimit) {
+		if (source == null || maxEntries <= 0 || engineLimit < 0) {
+			throw new IllegalArgumentException("Source cannot be null, maxEntries must be positive and engineLimit cannot be negative");
+		}
+		this.source = source;
+		this.maxEntries = maxEntries;
+		this.engineLimit = engineLimit;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.head.previous = this.head;
+		this.head.next = this.head;
+	}
+
+	/**
+	 * Returns the suggestions for a query, from the cache if possible
+	 * @param query - the prefix to complete
+	 * @param maxResults - the maximum number of suggestions desired
+	 * @return the suggestions, in the format of {@link SuggestionsResponse#parseJsonResponse(String)},
+	 * or null in case of errors
+	 */
+	public String[][] getSuggestions(String query, int maxResults) {
+		String[][] suggestions = lookup(query, maxResults);
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		if (metrics.isEnabled()) {
+			Url url = this.source.getUrl();
+			metrics.cacheAccessed(url != null ? url.engineName : null, UrlRole.SUGGESTIONS, suggestions != null);
+		}
+		if (suggestions != null) {
+			return suggestions;
+		}
+		suggestions = this.source.getSuggestions(query, maxResults);
+		if (suggestions != null) {
+			store(query, maxResults, suggestions);
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Looks for the query in the cache
+	 * @param query - the prefix to complete
+	 * @param maxResults - the maximum number of suggestions desired
+	 * @return the cached suggestions, or null if the cache cannot answer
+	 */
+	private synchronized String[][] lookup(String query, int maxResults) {
+		long now = System.nanoTime();
+		// walk down the trie, remembering the deepest complete response
+		Node node = this.root;
+		Node candidate = null;
+		for (int i = 0; i <= query.length(); i++) {
+			if (node.suggestions != null) {
+				if (now - node.storedAt > this.ttlNanos) {
+					remove(node);
+				} else if (i == query.length() && (node.requestedResults >= maxResults || node.isComplete(this.engineLimit))) {
+					this.hitCount++;
+					touch(node);
+					return truncate(node.suggestions, maxResults);
+				} else if (node.isComplete(this.engineLimit)) {
+					candidate = node;
+				}
+			}
+			if (i == query.length()) {
+				break;
+			}
+			node = node.children != null ? node.children.get(Character.valueOf(query.charAt(i))) : null;
+			if (node == null) {
+				break;
+			}
+		}
+		if (candidate != null) {
+			this.prefixHitCount++;
+			touch(candidate);
+			return filter(candidate.suggestions, query, maxResults);
+		}
+		this.missCount++;
+		return null;
+	}
+
+	/**
+	 * Stores a response in the cache
+	 * @param query - the query of the response
+	 * @param maxResults - the maximum number of suggestions requested
+	 * @param suggestions - the response
+	 */
+	private synchronized void store(String query, int maxResults, String[][] suggestions) {
+		Node node = this.root;
+		Node child;
+		char c;
+		for (int i = 0; i < query.length(); i++) {
+			c = query.charAt(i);
+			if (node.children == null) {
+				node.children = new HashMap<Character, Node>(4);
+			}
+			child = node.children.get(Character.valueOf(c));
+			if (child == null) {
+				child = new Node(node, c);
+				node.children.put(Character.valueOf(c), child);
+			}
+			node = child;
+		}
+		if (node.suggestions == null) {
+			this.size++;
+		} else {
+			unlink(node);
+		}
+		node.suggestions = suggestions;
+		node.requestedResults = maxResults;
+		node.storedAt = System.nanoTime();
+		linkFirst(node);
+		while (this.size > this.maxEntries) {
+			remove(this.head.previous);
+		}
+	}
+
+	/**
+	 * Removes all the cached responses
+	 */
+	public synchronized void clear() {
+		if (this.root.children != null) {
+			this.root.children.clear();
+		}
+		this.root.suggestions = null;
+		this.head.previous = this.head;
+		this.head.next = this.head;
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of cached responses
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of queries answered with the response of the same query
+	 */
+	public synchronized long getHitCount() {
+		return this.hitCount;
+	}
+
+	/**
+	 * @return the number of queries answered by filtering the response of a shorter query
+	 */
+	public synchronized long getPrefixHitCount() {
+		return this.prefixHitCount;
+	}
+
+	/**
+	 * @return the number of queries sent to the search engine
+	 */
+	public synchronized long getMissCount() {
+		return this.missCount;
+	}
+
+	/**
+	 * Removes the response stored in the node, and the nodes that become useless
+	 * @param node - the node to clear
+	 */
+	private void remove(Node node) {
+		unlink(node);
+		node.suggestions = null;
+		this.size--;
+		// prune the branch
+		Node parent;
+		while (node.parent != null && node.suggestions == null && (node.children == null || node.children.isEmpty())) {
+			parent = node.parent;
+			parent.children.remove(Character.valueOf(node.key));
+			node = parent;
+		}
+	}
+
+	private void touch(Node node) {
+		unlink(node);
+		linkFirst(node);
+	}
+
+	private void linkFirst(Node node) {
+		node.previous = this.head;
+		node.next = this.head.next;
+		this.head.next.previous = node;
+		this.head.next = node;
+	}
+
+	private void unlink(Node node) {
+		if (node.previous != null) {
+			node.previous.next = node.next;
+			node.next.previous = node.previous;
+			node.previous = null;
+			node.next = null;
+		}
+	}
+
+	/**
+	 * Returns the first maxResults completions of the response
+	 * @param suggestions - the response
+	 * @param maxResults - the maximum number of completions
+	 * @return the truncated response, or the same response if it isn't longer than maxResults
+	 */
+	private static String[][] truncate(String[][] suggestions, int maxResults) {
+		if (suggestions.length < 2 || suggestions[1].length <= maxResults) {
+			return suggestions;
+		}
+		String[][] truncated = new String[suggestions.length][];
+		truncated[0] = suggestions[0];
+		for (int i = 1; i < suggestions.length; i++) {
+			truncated[i] = new String[Math.min(maxResults, suggestions[i].length)];
+			System.arraycopy(suggestions[i], 0, truncated[i], 0, truncated[i].length);
+		}
+		return truncated;
+	}
+
+	/**
+	 * Builds the response of a query from the complete response of one of its prefixes
+	 * @param suggestions - the response of the prefix
+	 * @param query - the query
+	 * @param maxResults - the maximum number of completions
+	 * @return the completions of the prefix that start with the query; the descriptions and
+	 * the urls, if present, are filtered in the same way
+	 */
+	private static String[][] filter(String[][] suggestions, String query, int maxResults) {
+		String[][] filtered = new String[Math.max(suggestions.length, 2)][];
+		filtered[0] = new String[]{query};
+		if (suggestions.length < 2) {
+			filtered[1] = new String[0];
+			return filtered;
+		}
+		String[] completions = suggestions[1];
+		String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+		int[] matches = new int[Math.min(completions.length, maxResults)];
+		int count = 0;
+		for (int i = 0; i < completions.length && count < matches.length; i++) {
+			if (completions[i].toLowerCase(Locale.ROOT).startsWith(lowerCaseQuery)) {
+				matches[count++] = i;
+			}
+		}
+		for (int i = 1; i < suggestions.length; i++) {
+			filtered[i] = new String[count];
+			for (int j = 0; j < count; j++) {
+				filtered[i][j] = matches[j] < suggestions[i].length ? suggestions[i][matches[j]] : "";
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Node of the trie, and entry of the LRU list when it contains a response
+	 */
+	private static class Node {
+
+		final Node parent;
+		final char key;
+		Map<Character, Node> children;
+
+		String[][] suggestions;
+		int requestedResults;
+		long storedAt;
+
+		Node previous;
+		Node next;
+
+		Node(Node parent, char key) {
+			this.parent = parent;
+			this.key = key;
+		}
+
+		/**
+		 * @param engineLimit - maximum number of completions returned by the engine, 0 if
+		 * unknown
+		 * @return true if the response contains all the completions known by the engine
+		 */
+		boolean isComplete(int engineLimit) {
+			if (engineLimit <= 0) {
+				return false;
+			}
+			return this.suggestions.length < 2 || this.suggestions[1].length < Math.min(this.requestedResults, engineLimit);
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package com.pasdam.opensearch.client;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.xml.stream.XMLStreamReader;
+
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.jfr.ResultsFetchEvent;
+import com.pasdam.opensearch.jfr.ResultsParseEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.response.ResultField;
+import com.pasdam.opensearch.response.SearchResponse;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
+/**
+ * Non-blocking client for the search results of a search engine.<br/>
+ * Requests are sent with a {@link HttpClient}, shared by all the clients unless a
+ * specific one is supplied (see {@link HttpClients}), and the responses are parsed by
+ * the streaming parser of {@link SearchResponse}, that reads only the {@link ResultField}s
+ * requested to the constructor (i.e. only the links, for a crawler). The results are
+ * returned as maps (see {@link #search(Url, QueryBinding)}) or in a columnar
+ * {@link com.pasdam.opensearch.response.ResultPage}, that costs a fraction of their
+ * memory (see {@link #searchResultPage(Url, QueryBinding)}). Errors, including
+ * parse errors, are reported by completing the returned future exceptionally.<br/>
+ * Cancelling a returned future cancels the exchange of the HttpClient: on JDK 16 and later
+ * that aborts the request, on earlier versions the response is still downloaded and then
+ * discarded. Cancelled requests are not reported to the metrics as failures.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class AsyncSearchClient {
+
+	private final HttpClient httpClient;
+
+	private final Duration timeout;
+
+	/**
+	 * The fields of the results read by the parser
+	 */
+	private final Set<ResultField> fields;
+
+	/**
+	 * Creates a client that uses the shared HttpClient and the default timeout, and that
+	 * reads the default fields of the results
+	 */
+	public AsyncSearchClient() {
+		this(HttpClients.getDefault(), HttpClients.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Creates a client that uses the shared HttpClient and the default timeout
+	 * @param fields - the fields of the results to read, see
+	 * {@link SearchResponse#parse(XMLStreamReader, com.pasdam.opensearch.response.SearchResultHandler, Set, com.pasdam.opensearch.xml.ParseDiagnostics)}
+	 */
+	public AsyncSearchClient(Set<ResultField> fields) {
+		this(HttpClients.getDefault(), HttpClients.DEFAULT_TIMEOUT, fields);
+	}
+
+	/**
+	 * Creates a client that reads the default fields of the results
+	 * @param httpClient - the client used to send the requests
+	 * @param timeout - the timeout of the requests
+	 */
+	public AsyncSearchClient(HttpClient httpClient, Duration timeout) {
+		this(httpClient, timeout, ResultField.DEFAULT);
+	}
+
+	/**
+	 * Constructor
+	 * @param httpClient - the client used to send the requests
+	 * @param timeout - the timeout of the requests
+	 * @param fields - the fields of the results to read, see
+	 * {@link SearchResponse#parse(XMLStreamReader, com.pasdam.opensearch.response.SearchResultHandler, Set, com.pasdam.opensearch.xml.ParseDiagnostics)}
+	 */
+	public AsyncSearchClient(HttpClient httpClient, Duration timeout, Set<ResultField> fields) {
+		if (httpClient == null || timeout == null || fields == null) {
+			throw new IllegalArgumentException("Client, timeout and fields cannot be null");
+		}
+		this.httpClient = httpClient;
+		this.timeout = timeout;
+		EnumSet<ResultField> copy = EnumSet.noneOf(ResultField.class);
+		copy.addAll(fields);
+		this.fields = Collections.unmodifiableSet(copy);
+	}
+
+	/**
+	 * @return the fields of the results read by this client
+	 */
+	public Set<ResultField> getFields() {
+		return this.fields;
+	}
+
+	/**
+	 * Requests the search results
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters
+	 * @return a future completed with the parsed response; cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	public CompletableFuture<SearchResponse> search(Url url, QueryBinding binding) {
+		URI uri;
+		try {
+			uri = URI.create(url.getUrl(binding));
+		} catch (IllegalArgumentException e) {
+			return HttpClients.failedFuture(e);
+		}
+		return search(uri, url.engineName, false);
+	}
+
+	/**
+	 * Requests the search results, storing them in a
+	 * {@link com.pasdam.opensearch.response.ResultPage} instead of maps (see
+	 * {@link SearchResponse#resultPage})
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters
+	 * @return a future completed with the parsed response; cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	public CompletableFuture<SearchResponse> searchResultPage(Url url, QueryBinding binding) {
+		URI uri;
+		try {
+			uri = URI.create(url.getUrl(binding));
+		} catch (IllegalArgumentException e) {
+			return HttpClients.failedFuture(e);
+		}
+		return search(uri, url.engineName, true);
+	}
+
+	/**
+	 * Requests the search results
+	 * @param uri - the expanded url of the request
+	 * @return a future completed with the parsed response; cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	public CompletableFuture<SearchResponse> search(URI uri) {
+		return search(uri, null, false);
+	}
+
+	/**
+	 * Requests the search results, storing them in a
+	 * {@link com.pasdam.opensearch.response.ResultPage} instead of maps
+	 * @param uri - the expanded url of the request
+	 * @return a future completed with the parsed response; cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	public CompletableFuture<SearchResponse> searchResultPage(URI uri) {
+		return search(uri, null, true);
+	}
+
+	/**
+	 * Requests the search results
+	 * @param uri - the expanded url of the request
+	 * @param engine - the short name of the engine, it tags the metrics; it could be null
+	 * @param page - true to store the results in a ResultPage
+	 * @return a future completed with the parsed response; cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	private CompletableFuture<SearchResponse> search(URI uri, final String engine, final boolean page) {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.timeout(this.timeout)
+				.GET()
+				.build();
+		final OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		final ResultsFetchEvent event = new ResultsFetchEvent();
+		event.begin();
+		final CompletableFuture<HttpResponse<byte[]>> exchange = this.httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+		if (metrics.isEnabled() || event.isEnabled()) {
+			exchange.whenComplete((httpResponse, error) -> fetched(engine, uri, metrics, start, event, httpResponse, error));
+		}
+		final CompletableFuture<SearchResponse> response = exchange.thenApply(httpResponse -> {
+			if (httpResponse.statusCode() != 200) {
+				HttpStatusException error = new HttpStatusException(httpResponse.statusCode(), httpResponse.uri());
+				if (metrics.isEnabled()) {
+					metrics.failed(engine, UrlRole.RESULTS, Stage.FETCH, FailureCause.HTTP_STATUS, error);
+				}
+				throw new CompletionException(error);
+			}
+			return parse(httpResponse.body(), engine, this.fields, page, metrics);
+		});
+		// cancelling the returned future cancels the exchange too, that aborts it on JDK 16+
+		response.whenComplete((result, error) -> {
+			if (response.isCancelled()) {
+				exchange.cancel(true);
+			}
+		});
+		return response;
+	}
+
+	/**
+	 * Reports a completed exchange to the metrics and to the recording
+	 * @param engine - the short name of the engine, or null
+	 * @param uri - the requested uri
+	 * @param metrics - the metrics
+	 * @param start - the time the request was sent, if the metrics are enabled
+	 * @param event - the event of the request
+	 * @param response - the response, null if the exchange failed
+	 * @param error - the error of the exchange, or null
+	 */
+	private static void fetched(String engine, URI uri, OpenSearchMetrics metrics, long start, ResultsFetchEvent event,
+			HttpResponse<byte[]> response, Throwable error) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.engine = engine;
+			event.url = uri.toString();
+			if (error != null) {
+				event.error = error.toString();
+			} else {
+				event.status = response.statusCode();
+				event.bytes = response.body().length;
+			}
+			event.commit();
+		}
+		if (metrics.isEnabled()) {
+			if (error != null) {
+				// a request dropped by the caller, i.e. a closed cursor, isn't a failure
+				FailureCause cause = FailureCause.of(error);
+				if (cause != FailureCause.CANCELLED) {
+					metrics.failed(engine, UrlRole.RESULTS, Stage.FETCH, cause, error);
+				}
+			} else if (response.statusCode() == 200) {
+				metrics.fetched(engine, UrlRole.RESULTS, System.nanoTime() - start, response.body().length);
+			}
+		}
+	}
+
+	/**
+	 * Parses the body of a response
+	 * @param body - the body of the response
+	 * @param engine - the short name of the engine, or null
+	 * @param fields - the fields of the results to read
+	 * @param page - true to store the results in a ResultPage
+	 * @param metrics - the metrics that receive the time of the parse
+	 * @return the parsed response
+	 * @throws CompletionException if the body isn't a valid response
+	 */
+	private static SearchResponse parse(byte[] body, String engine, Set<ResultField> fields, boolean page, OpenSearchMetrics metrics) {
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		ResultsParseEvent event = new ResultsParseEvent();
+		event.begin();
+		XMLStreamReader reader = null;
+		try {
+			reader = XmlStreams.createReader(new ByteArrayInputStream(body));
+			SearchResponse response = page
+					? SearchResponse.parseResultPage(reader, fields, ParseDiagnostics.DISCARD)
+					: SearchResponse.parse(reader, null, fields, ParseDiagnostics.DISCARD);
+			event.end();
+			if (event.shouldCommit()) {
+				event.engine = engine;
+				event.bytes = body.length;
+				event.items = response.getParsedResults();
+				event.commit();
+			}
+			if (metrics.isEnabled()) {
+				metrics.parsed(engine, UrlRole.RESULTS, System.nanoTime() - start, response.getParsedResults());
+			}
+			return response;
+		} catch (Exception e) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.engine = engine;
+				event.bytes = body.length;
+				event.error = e.toString();
+				event.commit();
+			}
+			if (metrics.isEnabled()) {
+				metrics.failed(engine, UrlRole.RESULTS, Stage.PARSE, FailureCause.of(e), e);
+			}
+			throw new CompletionException(e);
+		} finally {
+			XmlStreams.closeQuietly(reader);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package com.pasdam.opensearch.client;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.TemplateParameter;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.jfr.SuggestionsFetchEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.response.SuggestionsResponse;
+
+/**
+ * Non-blocking client for the suggestions of a search engine.<br/>
+ * Requests are sent with a {@link HttpClient}, shared by all the clients unless a
+ * specific one is supplied (see {@link HttpClients}), so connections are reused and no thread is blocked while
+ * a request is in flight. Errors are reported by completing the returned future
+ * exceptionally.<br/>
+ * This class is thread safe. To drop the requests made obsolete by a newer keystroke
+ * use a {@link Session}, one for each user input.<br/>
+ * Cancelling a returned future cancels the exchange of the HttpClient: on JDK 16 and later
+ * that aborts the request, on earlier versions the response is still downloaded and then
+ * discarded. Cancelled requests are not reported to the metrics as failures.
+ * @author Paco
+ * @version 1.0
+ */
+public class AsyncSuggestionsClient {
+
+	private final Url url;
+
+	private final HttpClient httpClient;
+
+	private final Duration timeout;
+
+	/**
+	 * Creates a client that uses the shared HttpClient and the default timeout
+	 * @param url - the suggestions url, it isn't modified by this object
+	 */
+	public AsyncSuggestionsClient(Url url) {
+		this(url, HttpClients.getDefault(), HttpClients.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor
+	 * @param url - the suggestions url, it isn't modified by this object
+	 * @param httpClient - the client used to send the requests
+	 * @param timeout - the default timeout of the requests
+	 */
+	public AsyncSuggestionsClient(Url url, HttpClient httpClient, Duration timeout) {
+		if (url == null || httpClient == null || timeout == null) {
+			throw new IllegalArgumentException("Url, client and timeout cannot be null");
+		}
+		this.url = url;
+		this.httpClient = httpClient;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Requests the suggestions for a query, using the default timeout
+	 * @param query - the prefix to complete
+	 * @param maxResults - the maximum number of suggestions desired
+	 * @return a future completed with the parsed suggestions (see
+	 * {@link SuggestionsResponse#parseJsonResponse(String)})
+	 */
+	public CompletableFuture<String[][]> getSuggestions(String query, int maxResults) {
+		return getSuggestions(query, maxResults, this.timeout);
+	}
+
+	/**
+	 * Requests the suggestions for a query. The response is decoded with the charset of its 
+	 * Content-Type, see {@link SuggestionsResponse#responseCharset(String, String)}.
+	 * @param query - the prefix to complete
+	 * @param maxResults - the maximum number of suggestions desired
+	 * @param timeout - the timeout of this request
+	 * @return a future completed with the parsed suggestions (see
+	 * {@link SuggestionsResponse#parseJsonResponse(String)}); cancelling it discards the
+	 * response, and aborts the request on JDK 16 and later
+	 */
+	public CompletableFuture<String[][]> getSuggestions(String query, int maxResults, Duration timeout) {
+		final QueryBinding binding = QueryBinding.searchTerms(query).with(TemplateParameter.COUNT, maxResults);
+		HttpRequest request;
+		try {
+			request = HttpRequest.newBuilder(URI.create(this.url.getUrl(binding)))
+					.timeout(timeout)
+					.GET()
+					.build();
+		} catch (IllegalArgumentException e) {
+			return HttpClients.failedFuture(e);
+		}
+		final String engine = this.url.engineName;
+		final OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		final SuggestionsFetchEvent event = new SuggestionsFetchEvent();
+		event.begin();
+		final CompletableFuture<HttpResponse<byte[]>> exchange = this.httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+		if (metrics.isEnabled()) {
+			exchange.whenComplete((response, error) -> {
+				if (error != null) {
+					// a request dropped by the caller, i.e. by a newer keystroke, isn't a failure
+					FailureCause cause = FailureCause.of(error);
+					if (cause != FailureCause.CANCELLED) {
+						metrics.failed(engine, UrlRole.SUGGESTIONS, Stage.FETCH, cause, error);
+					}
+				} else if (response.statusCode() == 200) {
+					metrics.fetched(engine, UrlRole.SUGGESTIONS, System.nanoTime() - start, response.body().length);
+				}
+			});
+		}
+		final CompletableFuture<String[][]> suggestions = exchange.thenApply(response -> {
+			if (response.statusCode() != 200) {
+				HttpStatusException error = new HttpStatusException(response.statusCode(), response.uri());
+				if (metrics.isEnabled()) {
+					metrics.failed(engine, UrlRole.SUGGESTIONS, Stage.FETCH, FailureCause.HTTP_STATUS, error);
+				}
+				throw new CompletionException(error);
+			}
+			long parseStart = metrics.isEnabled() ? System.nanoTime() : 0;
+			try {
+				Charset charset = SuggestionsResponse.responseCharset(response.headers().firstValue("Content-Type").orElse(null),
+						binding.get(TemplateParameter.OUTPUT_ENCODING));
+				String[][] parsed = SuggestionsResponse.parseJsonResponse(ByteBuffer.wrap(response.body()), charset);
+				if (metrics.isEnabled()) {
+					metrics.parsed(engine, UrlRole.SUGGESTIONS, System.nanoTime() - parseStart, parsed.length > 1 ? parsed[1].length : 0);
+				}
+				return parsed;
+			} catch (ParseException e) {
+				if (metrics.isEnabled()) {
+					metrics.failed(engine, UrlRole.SUGGESTIONS, Stage.PARSE, FailureCause.INVALID, e);
+				}
+				throw new CompletionException(e);
+			}
+		});
+		// cancelling the returned future cancels the exchange too, that aborts it on JDK 16+
+		suggestions.whenComplete((result, error) -> {
+			if (suggestions.isCancelled()) {
+				exchange.cancel(true);
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				commit(event, engine, request.uri(), exchange, result, error);
+			}
+		});
+		return suggestions;
+	}
+
+	/**
+	 * Commits the event of a completed request
+	 * @param event - the event of the request
+	 * @param engine - the short name of the engine, or null
+	 * @param uri - the requested uri
+	 * @param exchange - the completed exchange
+	 * @param suggestions - the parsed suggestions, null if the request failed
+	 * @param error - the error of the request, or null
+	 */
+	private static void commit(SuggestionsFetchEvent event, String engine, URI uri,
+			CompletableFuture<HttpResponse<byte[]>> exchange, String[][] suggestions, Throwable error) {
+		event.engine = engine;
+		event.url = uri.toString();
+		if (exchange.isDone() && !exchange.isCompletedExceptionally()) {
+			HttpResponse<byte[]> response = exchange.join();
+			event.status = response.statusCode();
+			event.bytes = response.body().length;
+		}
+		if (suggestions != null) {
+			event.items = suggestions.length > 1 ? suggestions[1].length : 0;
+		}
+		if (error != null) {
+			event.error = error.toString();
+		}
+		event.commit();
+	}
+
+	/**
+	 * Creates a new session, to be used for the requests of a single input
+	 * @return a new session
+	 */
+	public Session newSession() {
+		return new Session();
+	}
+
+	/**
+	 * Sequence of requests made for the same input, i.e. one request per keystroke. When
+	 * a new request is made the previous one, if still in flight, is cancelled, so its
+	 * future completes with a {@link java.util.concurrent.CancellationException}.
+	 */
+	public class Session {
+
+		private final AtomicReference<CompletableFuture<String[][]>> current = new AtomicReference<CompletableFuture<String[][]>>();
+
+		private Session() {
+		}
+
+		/**
+		 * Requests the suggestions for a query, cancelling the previous request of this session
+		 * @param query - the prefix to complete
+		 * @param maxResults - the maximum number of suggestions desired
+		 * @return a future completed with the parsed suggestions
+		 */
+		public CompletableFuture<String[][]> getSuggestions(String query, int maxResults) {
+			CompletableFuture<String[][]> future = AsyncSuggestionsClient.this.getSuggestions(query, maxResults);
+			CompletableFuture<String[][]> previous = this.current.getAndSet(future);
+			if (previous != null) {
+				previous.cancel(true);
+			}
+			return future;
+		}
+
+		/**
+		 * Cancels the request in flight, if any
+		 */
+		public void cancel() {
+			CompletableFuture<String[][]> previous = this.current.getAndSet(null);
+			if (previous != null) {
+				previous.cancel(true);
+			}
+		}
+	}
+}
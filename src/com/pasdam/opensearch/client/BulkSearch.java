@@ -0,0 +1,262 @@
+package com.pasdam.opensearch.client;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.response.ResultPage;
+import com.pasdam.opensearch.response.SearchResponse;
+import com.pasdam.opensearch.response.SearchResultHandler;
+
+/**
+ * Fetches all the results of a search, requesting many pages concurrently.<br/>
+ * The first page is requested alone: its totalResults and itemsPerPage tell how many
+ * pages there are, then the other pages are requested keeping at most <i>window</i> of
+ * them in flight or waiting to be delivered. Results are passed to the handler in page
+ * order, as soon as all the previous pages have been delivered, so memory is bounded by
+ * the window and not by the number of results. The results are delivered one by one as
+ * maps, or a page at a time in a columnar {@link ResultPage}, that costs a fraction of
+ * their memory.<br/>
+ * Page bindings are computed as in {@link PageCursor}.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class BulkSearch {
+
+	/**
+	 * Default number of pages requested concurrently
+	 */
+	public static final int DEFAULT_WINDOW = 4;
+
+	private final AsyncSearchClient client;
+
+	private final int window;
+
+	/**
+	 * Creates an object that uses a client with the shared HttpClient and the default window
+	 */
+	public BulkSearch() {
+		this(new AsyncSearchClient(), DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Constructor
+	 * @param client - the client used to request the pages
+	 * @param window - the maximum number of pages requested concurrently
+	 */
+	public BulkSearch(AsyncSearchClient client, int window) {
+		if (client == null) {
+			throw new IllegalArgumentException("The client cannot be null");
+		}
+		if (window <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		this.client = client;
+		this.window = window;
+	}
+
+	/**
+	 * Fetches all the results and waits for the last one
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters of the first page
+	 * @param handler - the handler that receives the results, in page order
+	 * @return the number of results delivered
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 * @throws ExecutionException if the request of a page failed
+	 */
+	public int fetchAll(Url url, QueryBinding binding, SearchResultHandler handler) throws InterruptedException, ExecutionException {
+		return fetchAllAsync(url, binding, handler).get();
+	}
+
+	/**
+	 * Fetches all the results without blocking. The handler is called by the threads that
+	 * complete the requests, never concurrently.
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters of the first page
+	 * @param handler - the handler that receives the results, in page order
+	 * @return a future completed with the number of results delivered when the last page
+	 * has been delivered, or exceptionally as soon as a page fails; cancelling it cancels
+	 * the pending requests
+	 */
+	public CompletableFuture<Integer> fetchAllAsync(Url url, QueryBinding binding, SearchResultHandler handler) {
+		if (url == null || binding == null || handler == null) {
+			throw new IllegalArgumentException("Url, binding and handler cannot be null");
+		}
+		return new Export(url, binding, handler, null).start();
+	}
+
+	/**
+	 * Fetches all the results, a page at a time, and waits for the last page
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters of the first page
+	 * @param handler - the handler that receives the pages, in order
+	 * @return the number of results delivered
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 * @throws ExecutionException if the request of a page failed
+	 */
+	public int fetchAllPages(Url url, QueryBinding binding, Consumer<ResultPage> handler) throws InterruptedException, ExecutionException {
+		return fetchAllPagesAsync(url, binding, handler).get();
+	}
+
+	/**
+	 * Fetches all the results without blocking, storing the results of each page in a
+	 * {@link ResultPage} (see {@link AsyncSearchClient#searchResultPage(Url, QueryBinding)}).
+	 * The handler is called by the threads that complete the requests, never concurrently.
+	 * @param url - the results url, it isn't modified by this method
+	 * @param binding - the values of the template parameters of the first page
+	 * @param handler - the handler that receives the pages, in order
+	 * @return a future completed with the number of results delivered when the last page
+	 * has been delivered, or exceptionally as soon as a page fails; cancelling it cancels
+	 * the pending requests
+	 */
+	public CompletableFuture<Integer> fetchAllPagesAsync(Url url, QueryBinding binding, Consumer<ResultPage> handler) {
+		if (url == null || binding == null || handler == null) {
+			throw new IllegalArgumentException("Url, binding and handler cannot be null");
+		}
+		return new Export(url, binding, null, handler).start();
+	}
+
+	/**
+	 * State of a single bulk fetch
+	 */
+	private class Export {
+
+		private final Url url;
+
+		private final Pagination pagination;
+
+		/**
+		 * The handler of the results, null if the results are delivered by page
+		 */
+		private final SearchResultHandler handler;
+
+		/**
+		 * The handler of the pages, null if the results are delivered one by one
+		 */
+		private final Consumer<ResultPage> pageHandler;
+
+		private final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+		/**
+		 * Pages received and not delivered yet, at position page % window
+		 */
+		private final SearchResponse[] received;
+
+		/**
+		 * Requests in flight, at position page % window
+		 */
+		private final CompletableFuture<?>[] requests;
+
+		private int pageCount = 1;
+
+		private int nextRequested;
+
+		private int nextDelivered;
+
+		private int delivered;
+
+		Export(Url url, QueryBinding binding, SearchResultHandler handler, Consumer<ResultPage> pageHandler) {
+			this.url = url;
+			this.pagination = new Pagination(url, binding);
+			this.handler = handler;
+			this.pageHandler = pageHandler;
+			this.received = new SearchResponse[BulkSearch.this.window];
+			this.requests = new CompletableFuture<?>[BulkSearch.this.window];
+		}
+
+		CompletableFuture<Integer> start() {
+			this.result.whenComplete((count, error) -> {
+				if (error != null) {
+					cancelRequests();
+				}
+			});
+			synchronized (this) {
+				request(this.nextRequested++);
+			}
+			return this.result;
+		}
+
+		/**
+		 * Sends the request of a page
+		 * @param page - the number of the page
+		 */
+		private void request(final int page) {
+			QueryBinding binding = this.pagination.binding(page);
+			CompletableFuture<SearchResponse> request = this.pageHandler != null
+					? BulkSearch.this.client.searchResultPage(this.url, binding)
+					: BulkSearch.this.client.search(this.url, binding);
+			this.requests[page % this.requests.length] = request;
+			request.whenComplete((response, error) -> {
+				if (error != null) {
+					this.result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+				} else {
+					onPage(page, response);
+				}
+			});
+		}
+
+		private synchronized void onPage(int page, SearchResponse response) {
+			if (this.result.isDone()) {
+				return;
+			}
+			this.requests[page % this.requests.length] = null;
+			if (page == 0) {
+				this.pagination.setPageSize(response);
+				this.pageCount = this.pagination.pageCount(response);
+			}
+			this.received[page % this.received.length] = response;
+			SearchResponse next;
+			try {
+				while (this.nextDelivered < this.pageCount
+						&& (next = this.received[this.nextDelivered % this.received.length]) != null) {
+					this.received[this.nextDelivered % this.received.length] = null;
+					deliver(next);
+					if (next.getResultCount() == 0) {
+						// an empty page is the last one, whatever totalResults says
+						this.pageCount = this.nextDelivered + 1;
+					}
+					this.nextDelivered++;
+				}
+			} catch (RuntimeException e) {
+				this.result.completeExceptionally(e);
+				return;
+			}
+			if (this.nextDelivered >= this.pageCount) {
+				cancelRequests();
+				this.result.complete(Integer.valueOf(this.delivered));
+				return;
+			}
+			while (this.nextRequested < this.pageCount && this.nextRequested - this.nextDelivered < this.received.length) {
+				request(this.nextRequested++);
+			}
+		}
+
+		private void deliver(SearchResponse response) {
+			if (this.pageHandler != null) {
+				if (response.resultPage != null) {
+					this.pageHandler.accept(response.resultPage);
+					this.delivered += response.resultPage.size();
+				}
+			} else if (response.resultsList != null) {
+				for (HashMap<String, String> item : response.resultsList) {
+					this.handler.onResult(item);
+					this.delivered++;
+				}
+			}
+		}
+
+		private synchronized void cancelRequests() {
+			for (int i = 0; i < this.requests.length; i++) {
+				if (this.requests[i] != null) {
+					this.requests[i].cancel(true);
+					this.requests[i] = null;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package com.pasdam.opensearch.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.response.SearchResponse;
+
+/**
+ * Runs the same query on many search engines concurrently, within a global deadline.<br/>
+ * Each engine is queried through the first url of its description that returns RSS or
+ * Atom results (see {@link OpenSearchDescription#getResultsUrl()}). When all the engines
+ * have answered, or the deadline expires, the search completes with the responses
+ * received in time and with the outcome of each engine, so the engines that failed or
+ * didn't answer in time can be reported instead of being silently dropped. The requests
+ * still in flight at the deadline are cancelled.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class FederatedSearch {
+
+	private final AsyncSearchClient client;
+
+	/**
+	 * Creates an executor that uses a client with the shared HttpClient
+	 */
+	public FederatedSearch() {
+		this(new AsyncSearchClient());
+	}
+
+	/**
+	 * Constructor
+	 * @param client - the client used to query the engines
+	 */
+	public FederatedSearch(AsyncSearchClient client) {
+		if (client == null) {
+			throw new IllegalArgumentException("The client cannot be null");
+		}
+		this.client = client;
+	}
+
+	/**
+	 * Queries the engines and waits for their responses, at most until the deadline
+	 * @param engines - the descriptions of the engines to query
+	 * @param binding - the values of the template parameters
+	 * @param deadline - maximum time to wait for the responses
+	 * @return the outcome of the search
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public Result search(Collection<OpenSearchDescription> engines, QueryBinding binding, Duration deadline) throws InterruptedException {
+		try {
+			return searchAsync(engines, binding, deadline).get();
+		} catch (ExecutionException e) {
+			// the future of the result is never completed exceptionally
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Queries the engines without blocking
+	 * @param engines - the descriptions of the engines to query
+	 * @param binding - the values of the template parameters
+	 * @param deadline - maximum time to wait for the responses
+	 * @return a future completed with the outcome of the search when all the engines have
+	 * answered, or when the deadline expires
+	 */
+	public CompletableFuture<Result> searchAsync(Collection<OpenSearchDescription> engines, QueryBinding binding, Duration deadline) {
+		final long start = System.nanoTime();
+		final List<EngineResult> results = new ArrayList<EngineResult>(engines.size());
+		List<CompletableFuture<?>> pending = new ArrayList<CompletableFuture<?>>(engines.size());
+		Url url;
+		EngineResult engineResult;
+		for (OpenSearchDescription engine : engines) {
+			url = engine.getResultsUrl();
+			engineResult = new EngineResult(engine, url);
+			results.add(engineResult);
+			if (url == null) {
+				engineResult.complete(Status.UNSUPPORTED, null, null, start);
+			} else {
+				pending.add(query(engineResult, binding, start));
+			}
+		}
+		return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()]))
+				.handle((ignored, error) -> (Void) null)
+				.completeOnTimeout(null, deadline.toNanos(), TimeUnit.NANOSECONDS)
+				.thenApply(ignored -> {
+					for (EngineResult result : results) {
+						result.expire(start);
+					}
+					return new Result(results, System.nanoTime() - start);
+				});
+	}
+
+	/**
+	 * Sends the request to an engine
+	 * @param engineResult - the outcome of the engine, completed when the response arrives
+	 * @param binding - the values of the template parameters
+	 * @param start - start time of the search, as returned by {@link System#nanoTime()}
+	 * @return a future completed after the outcome of the engine has been recorded
+	 */
+	private CompletableFuture<SearchResponse> query(final EngineResult engineResult, QueryBinding binding, final long start) {
+		CompletableFuture<SearchResponse> request = this.client.search(engineResult.url, binding);
+		engineResult.request = request;
+		return request.whenComplete((response, error) -> {
+			if (error == null) {
+				engineResult.complete(Status.COMPLETED, response, null, start);
+			} else if (!(error instanceof CancellationException)) {
+				engineResult.complete(Status.FAILED, null, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error, start);
+			}
+		});
+	}
+
+	/**
+	 * Outcome of the query on a single engine
+	 */
+	public enum Status {
+
+		/**
+		 * The engine answered in time with a valid response
+		 */
+		COMPLETED,
+
+		/**
+		 * The request failed, or the response isn't valid
+		 */
+		FAILED,
+
+		/**
+		 * The engine didn't answer before the deadline
+		 */
+		TIMED_OUT,
+
+		/**
+		 * The engine hasn't a url that returns RSS or Atom results
+		 */
+		UNSUPPORTED
+	}
+
+	/**
+	 * Outcome of the query on a single engine
+	 */
+	public static class EngineResult {
+
+		private final OpenSearchDescription engine;
+
+		private final Url url;
+
+		private volatile CompletableFuture<SearchResponse> request;
+
+		private Status status;
+
+		private SearchResponse response;
+
+		private Throwable error;
+
+		private long elapsedNanos;
+
+		EngineResult(OpenSearchDescription engine, Url url) {
+			this.engine = engine;
+			this.url = url;
+		}
+
+		synchronized void complete(Status status, SearchResponse response, Throwable error, long start) {
+			if (this.status == null) {
+				this.status = status;
+				this.response = response;
+				this.error = error;
+				this.elapsedNanos = System.nanoTime() - start;
+			}
+		}
+
+		/**
+		 * Marks the engine as timed out, if it hasn't answered yet, and cancels its request
+		 * @param start - start time of the search
+		 */
+		void expire(long start) {
+			complete(Status.TIMED_OUT, null, null, start);
+			CompletableFuture<SearchResponse> request = this.request;
+			if (request != null && !request.isDone()) {
+				request.cancel(true);
+			}
+		}
+
+		/**
+		 * @return the description of the engine
+		 */
+		public OpenSearchDescription getEngine() {
+			return this.engine;
+		}
+
+		/**
+		 * @return the url used to query the engine, null if the status is UNSUPPORTED
+		 */
+		public Url getUrl() {
+			return this.url;
+		}
+
+		/**
+		 * @return the outcome of the query
+		 */
+		public synchronized Status getStatus() {
+			return this.status;
+		}
+
+		/**
+		 * @return the response of the engine, null if the status isn't COMPLETED
+		 */
+		public synchronized SearchResponse getResponse() {
+			return this.response;
+		}
+
+		/**
+		 * @return the cause of the failure, null if the status isn't FAILED
+		 */
+		public synchronized Throwable getError() {
+			return this.error;
+		}
+
+		/**
+		 * @return the time elapsed from the start of the search to the outcome of this engine,
+		 * in nanoseconds
+		 */
+		public synchronized long getElapsedNanos() {
+			return this.elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return this.engine.shortName + ": " + getStatus() + (getError() != null ? " (" + getError() + ")" : "");
+		}
+	}
+
+	/**
+	 * Outcome of a federated search
+	 */
+	public static class Result {
+
+		private final List<EngineResult> engineResults;
+
+		private final long elapsedNanos;
+
+		Result(List<EngineResult> engineResults, long elapsedNanos) {
+			this.engineResults = Collections.unmodifiableList(engineResults);
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return the outcome of each engine, in the order the engines were supplied
+		 */
+		public List<EngineResult> getEngineResults() {
+			return this.engineResults;
+		}
+
+		/**
+		 * @return the responses received before the deadline, in the order the engines were supplied
+		 */
+		public List<SearchResponse> getResponses() {
+			List<SearchResponse> responses = new ArrayList<SearchResponse>(this.engineResults.size());
+			for (EngineResult result : this.engineResults) {
+				if (result.getStatus() == Status.COMPLETED) {
+					responses.add(result.getResponse());
+				}
+			}
+			return responses;
+		}
+
+		/**
+		 * @param status - the status to look for
+		 * @return the outcome of the engines with the specified status
+		 */
+		public List<EngineResult> getEngineResults(Status status) {
+			List<EngineResult> results = new ArrayList<EngineResult>();
+			for (EngineResult result : this.engineResults) {
+				if (result.getStatus() == status) {
+					results.add(result);
+				}
+			}
+			return results;
+		}
+
+		/**
+		 * @return the duration of the search, in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return this.elapsedNanos;
+		}
+	}
+}
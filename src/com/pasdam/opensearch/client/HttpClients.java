@@ -0,0 +1,67 @@
+package com.pasdam.opensearch.client;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the HttpClient shared by the clients of this package that are created without a
+ * specific one, so that all the requests reuse the same connections.
+ * @author Paco
+ * @version 1.0
+ */
+public final class HttpClients {
+
+	/**
+	 * Default timeout of connections and requests
+	 */
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+	private static volatile HttpClient defaultClient;
+
+	private HttpClients() {
+	}
+
+	/**
+	 * Returns the shared HttpClient, creating it the first time
+	 * @return the shared HttpClient
+	 */
+	public static HttpClient getDefault() {
+		HttpClient client = defaultClient;
+		if (client == null) {
+			synchronized (HttpClients.class) {
+				client = defaultClient;
+				if (client == null) {
+					client = HttpClient.newBuilder()
+							.connectTimeout(DEFAULT_TIMEOUT)
+							.followRedirects(HttpClient.Redirect.NORMAL)
+							.build();
+					defaultClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * Returns a future already completed with an error
+	 * @param error - the error
+	 * @return a future completed exceptionally
+	 */
+	static <T> CompletableFuture<T> failedFuture(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/**
+	 * Replaces the shared HttpClient
+	 * @param client - the client to share
+	 */
+	public static void setDefault(HttpClient client) {
+		if (client == null) {
+			throw new IllegalArgumentException("The client cannot be null");
+		}
+		defaultClient = client;
+	}
+}
@@ -0,0 +1,33 @@
+package com.pasdam.opensearch.client;
+
+import java.io.IOException;
+import java.net.URI;
+
+import com.pasdam.opensearch.metrics.HttpStatusError;
+
+/**
+ * Thrown when a server responds with an unexpected HTTP status.
+ * @author Paco
+ * @version 1.0
+ */
+public class HttpStatusException extends IOException implements HttpStatusError {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	/**
+	 * Constructor
+	 * @param statusCode - the status of the response
+	 * @param uri - the requested uri
+	 */
+	public HttpStatusException(int statusCode, URI uri) {
+		super("Unexpected HTTP status " + statusCode + " for " + uri);
+		this.statusCode = statusCode;
+	}
+
+	@Override
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+}
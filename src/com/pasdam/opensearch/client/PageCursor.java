@@ -0,0 +1,208 @@
+package com.pasdam.opensearch.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.response.SearchResponse;
+
+/**
+ * Cursor over the pages of a search, that requests the next page in background as soon
+ * as the current one has been received, so that reading the pages in sequence doesn't
+ * cost a full round trip for each of them.<br/>
+ * The pages following the first one are requested by setting the startIndex and
+ * startPage parameters, computed from the itemsPerPage of the first page and from the
+ * indexOffset and pageOffset of the url. The cursor stops when the totalResults declared
+ * by the engine have been read, when a page is empty, or after the first page if the
+ * template has neither startIndex nor startPage.<br/>
+ * The results of the pages are maps, or a columnar
+ * {@link com.pasdam.opensearch.response.ResultPage} if the cursor is created for result
+ * pages (see {@link AsyncSearchClient#searchResultPage(Url, QueryBinding)}).<br/>
+ * Closing the cursor cancels the page being prefetched, if any.<br/>
+ * This class is thread safe, but it is meant to be consumed by a single reader.
+ * @author Paco
+ * @version 1.0
+ */
+public class PageCursor implements AutoCloseable {
+
+	private final AsyncSearchClient client;
+
+	private final Url url;
+
+	private final Pagination pagination;
+
+	/**
+	 * Indicates whether the results are stored in a ResultPage instead of maps
+	 */
+	private final boolean resultPages;
+
+	/**
+	 * The next page, it completes with null if there are no more pages
+	 */
+	private CompletableFuture<SearchResponse> next;
+
+	/**
+	 * The request of the page being prefetched
+	 */
+	private CompletableFuture<SearchResponse> prefetch;
+
+	/**
+	 * The number of the next page
+	 */
+	private int page;
+
+	/**
+	 * The number of the last page, -1 until it is known
+	 */
+	private int lastPage = -1;
+
+	private boolean failed;
+
+	private boolean closed;
+
+	/**
+	 * Creates a cursor that uses a client with the shared HttpClient
+	 * @param url - the results url, it isn't modified by this object
+	 * @param binding - the values of the template parameters of the first page
+	 */
+	public PageCursor(Url url, QueryBinding binding) {
+		this(new AsyncSearchClient(), url, binding);
+	}
+
+	/**
+	 * Constructor
+	 * @param client - the client used to request the pages
+	 * @param url - the results url, it isn't modified by this object
+	 * @param binding - the values of the template parameters of the first page
+	 */
+	public PageCursor(AsyncSearchClient client, Url url, QueryBinding binding) {
+		this(client, url, binding, false);
+	}
+
+	/**
+	 * Constructor
+	 * @param client - the client used to request the pages
+	 * @param url - the results url, it isn't modified by this object
+	 * @param binding - the values of the template parameters of the first page
+	 * @param resultPages - true to store the results of each page in
+	 * {@link SearchResponse#resultPage} instead of maps
+	 */
+	public PageCursor(AsyncSearchClient client, Url url, QueryBinding binding, boolean resultPages) {
+		if (client == null || url == null || binding == null) {
+			throw new IllegalArgumentException("Client, url and binding cannot be null");
+		}
+		this.client = client;
+		this.url = url;
+		this.pagination = new Pagination(url, binding);
+		this.resultPages = resultPages;
+	}
+
+	/**
+	 * Indicates whether there could be other pages; it returns true while the page that
+	 * would tell otherwise hasn't been received yet
+	 * @return false if all the pages have been returned, or the cursor is closed
+	 */
+	public synchronized boolean hasNext() {
+		return !this.closed && !this.failed && (this.lastPage < 0 || this.page <= this.lastPage);
+	}
+
+	/**
+	 * Returns the next page, waiting for it if it hasn't been received yet
+	 * @return the next page, or null if there are no more pages
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 * @throws ExecutionException if the request of the page failed
+	 */
+	public SearchResponse next() throws InterruptedException, ExecutionException {
+		return nextAsync().get();
+	}
+
+	/**
+	 * Returns the next page without blocking. When the returned future completes, the
+	 * request of the following page starts immediately.
+	 * @return a future completed with the next page, or with null if there are no more pages
+	 * @throws IllegalStateException if the cursor is closed
+	 */
+	public synchronized CompletableFuture<SearchResponse> nextAsync() {
+		if (this.closed) {
+			throw new IllegalStateException("The cursor is closed");
+		}
+		if (this.failed || (this.lastPage >= 0 && this.page > this.lastPage)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		CompletableFuture<SearchResponse> current = this.next;
+		if (current == null) {
+			current = request(0);
+		}
+		final int currentPage = this.page++;
+		this.next = current.thenCompose(response -> {
+			if (response == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return prefetch(currentPage, response);
+		});
+		current.whenComplete((response, error) -> {
+			if (error != null) {
+				fail();
+			}
+		});
+		return current;
+	}
+
+	/**
+	 * Requests the page after the specified one, if there is one
+	 * @param page - the number of the page received
+	 * @param response - the page received
+	 * @return the future of the following page, completed with null if there are no more pages
+	 */
+	private synchronized CompletableFuture<SearchResponse> prefetch(int page, SearchResponse response) {
+		if (page == 0) {
+			this.pagination.setPageSize(response);
+		}
+		if (this.closed || !this.pagination.hasNext(page, response)) {
+			this.lastPage = page;
+			return CompletableFuture.completedFuture(null);
+		}
+		return request(page + 1);
+	}
+
+	/**
+	 * Sends the request of a page
+	 * @param page - the number of the page
+	 * @return the future of the page
+	 */
+	private CompletableFuture<SearchResponse> request(int page) {
+		QueryBinding binding = this.pagination.binding(page);
+		CompletableFuture<SearchResponse> request = this.resultPages
+				? this.client.searchResultPage(this.url, binding)
+				: this.client.search(this.url, binding);
+		this.prefetch = request;
+		return request;
+	}
+
+	private synchronized void fail() {
+		this.failed = true;
+	}
+
+	/**
+	 * @return the number of pages returned so far
+	 */
+	public synchronized int getPage() {
+		return this.page;
+	}
+
+	/**
+	 * Closes the cursor, cancelling the request of the page being prefetched
+	 */
+	@Override
+	public synchronized void close() {
+		if (!this.closed) {
+			this.closed = true;
+			if (this.prefetch != null) {
+				this.prefetch.cancel(true);
+				this.prefetch = null;
+			}
+			this.next = null;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.pasdam.opensearch.client;
+
+import com.pasdam.opensearch.description.CompiledTemplate;
+import com.pasdam.opensearch.description.QueryBinding;
+import com.pasdam.opensearch.description.TemplateParameter;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.response.SearchResponse;
+import com.pasdam.opensearch.xml.XmlStreams;
+
+/**
+ * Computes the bindings of the pages of a search, starting from the page requested by the
+ * binding supplied by the caller.<br/>
+ * Pages are numbered from 0, the first page being the one requested by the original
+ * binding. The page size is not known until the first page has been received, see
+ * {@link #setPageSize(SearchResponse)}.
+ * @author Paco
+ * @version 1.0
+ */
+final class Pagination {
+
+	private final Url url;
+
+	private final QueryBinding binding;
+
+	private final boolean pageable;
+
+	private int pageSize;
+
+	/**
+	 * Constructor
+	 * @param url - the results url, it isn't modified by this object
+	 * @param binding - the values of the template parameters of the first page
+	 */
+	Pagination(Url url, QueryBinding binding) {
+		this.url = url;
+		this.binding = binding;
+		CompiledTemplate template = url.getCompiledTemplate();
+		this.pageable = template.contains(TemplateParameter.START_INDEX) || template.contains(TemplateParameter.START_PAGE);
+	}
+
+	/**
+	 * Sets the page size, using the values of the first page: the declared itemsPerPage,
+	 * or the count requested by the binding, or the number of results received
+	 * @param firstPage - the response of the first page
+	 */
+	void setPageSize(SearchResponse firstPage) {
+		int size = firstPage.itemsPerPage;
+		if (size <= 0) {
+			size = XmlStreams.parseInt(this.binding.get(TemplateParameter.COUNT), 0);
+		}
+		if (size <= 0) {
+			size = firstPage.getResultCount();
+		}
+		this.pageSize = size;
+	}
+
+	/**
+	 * @return the page size, 0 if it isn't known yet
+	 */
+	int getPageSize() {
+		return this.pageSize;
+	}
+
+	/**
+	 * Returns the number of pages of the search, including the first one
+	 * @param firstPage - the response of the first page
+	 * @return the number of pages, at least 1
+	 */
+	int pageCount(SearchResponse firstPage) {
+		if (!this.pageable || this.pageSize <= 0) {
+			return 1;
+		}
+		int remaining = firstPage.totalResults - skipped();
+		if (remaining <= this.pageSize) {
+			return 1;
+		}
+		return (int) Math.min(Integer.MAX_VALUE, ((long) remaining + this.pageSize - 1) / this.pageSize);
+	}
+
+	/**
+	 * Indicates whether there are results after the specified page
+	 * @param page - the number of the page
+	 * @param response - the response of the page
+	 * @return true if the next page should be requested
+	 */
+	boolean hasNext(int page, SearchResponse response) {
+		if (!this.pageable || this.pageSize <= 0 || (response.resultsList == null && response.resultPage == null)) {
+			return false;
+		}
+		if (response.getResultCount() == 0 && page > 0) {
+			// a page without results is the last one, whatever totalResults says
+			return false;
+		}
+		return skipped() + (long) (page + 1) * this.pageSize < response.totalResults;
+	}
+
+	/**
+	 * Returns the binding of a page
+	 * @param page - the number of the page
+	 * @return the binding of the page; for the first page it is the original binding
+	 */
+	QueryBinding binding(int page) {
+		if (page == 0) {
+			return this.binding;
+		}
+		long startIndex = firstIndex() + (long) page * this.pageSize;
+		long startPage = firstPage() + (long) page;
+		return this.binding
+				.with(TemplateParameter.START_INDEX, Long.toString(startIndex))
+				.with(TemplateParameter.START_PAGE, Long.toString(startPage));
+	}
+
+	/**
+	 * @return the index of the first result of the first page
+	 */
+	private int firstIndex() {
+		String startIndex = this.binding.get(TemplateParameter.START_INDEX);
+		if (startIndex != null) {
+			return XmlStreams.parseInt(startIndex, this.url.indexOffset);
+		}
+		return this.url.indexOffset + (firstPage() - this.url.pageOffset) * this.pageSize;
+	}
+
+	/**
+	 * @return the number of the first page
+	 */
+	private int firstPage() {
+		String startPage = this.binding.get(TemplateParameter.START_PAGE);
+		if (startPage != null) {
+			return XmlStreams.parseInt(startPage, this.url.pageOffset);
+		}
+		String startIndex = this.binding.get(TemplateParameter.START_INDEX);
+		if (startIndex != null && this.pageSize > 0) {
+			return this.url.pageOffset + (XmlStreams.parseInt(startIndex, this.url.indexOffset) - this.url.indexOffset) / this.pageSize;
+		}
+		return this.url.pageOffset;
+	}
+
+	/**
+	 * @return the number of results before the first page
+	 */
+	private int skipped() {
+		return Math.max(firstIndex() - this.url.indexOffset, 0);
+	}
+}
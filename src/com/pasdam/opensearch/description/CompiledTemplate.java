@@ -0,0 +1,497 @@
+package com.pasdam.opensearch.description;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, pre-processed form of an OpenSearch URL template, see {@link Url#compile()}.<br/>
+ * The template is split once in an array of parts: literal segments, that are copied as they
+ * are, and slots, identified by their {@link TemplateParameter}, that are replaced with the
+ * URL-encoded value supplied at expansion time. Expanding a compiled template doesn't create
+ * intermediate strings: the output is appended to a caller-supplied StringBuilder or
+ * ByteBuffer.<br/>
+ * Slots are filled from an array of values indexed by {@link TemplateParameter#ordinal()}.
+ * An optional parameter ("{name?}") without a value is omitted from the query string, while
+ * a required one is replaced with its default value, if the specification defines one, or
+ * with an empty string. The values are encoded as UTF-8, like {@link Url#getUrl()} does.<br/>
+ * Instances of this class are immutable, so they can be shared between threads.
+ * @author Paco
+ * @version 1.0
+ */
+public final class CompiledTemplate {
+
+	/**
+	 * Literal text, copied as it is
+	 */
+	private static final byte PART_LITERAL = 0;
+
+	/**
+	 * Template parameter in the path of the url, spaces are encoded as "%20"
+	 */
+	private static final byte PART_PATH_SLOT = 1;
+
+	/**
+	 * Query string parameter with a fixed value
+	 */
+	private static final byte PART_QUERY_LITERAL = 2;
+
+	/**
+	 * Query string parameter whose value is a template parameter
+	 */
+	private static final byte PART_QUERY_SLOT = 3;
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Characters that are not encoded, the same as {@link java.net.URLEncoder}
+	 */
+	private static final boolean[] UNRESERVED = new boolean[128];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+		UNRESERVED['.'] = true;
+		UNRESERVED['-'] = true;
+		UNRESERVED['*'] = true;
+		UNRESERVED['_'] = true;
+	}
+
+	private final byte[] kinds;
+
+	/**
+	 * Literal text of each part: the text itself for literals, "name=" for query parameters
+	 * and the already encoded "name=value" for query parameters with a fixed value
+	 */
+	private final String[] texts;
+
+	/**
+	 * The texts encoded as bytes, used when expanding into a ByteBuffer
+	 */
+	private final byte[][] textBytes;
+
+	private final TemplateParameter[] slots;
+
+	private final boolean[] optional;
+
+	/**
+	 * Values used for required slots without a value
+	 */
+	private final String[] defaults;
+
+	/**
+	 * Estimated length of the expanded template, without the values
+	 */
+	private final int literalLength;
+
+	private CompiledTemplate(List<Part> parts) {
+		int count = parts.size();
+		this.kinds = new byte[count];
+		this.texts = new String[count];
+		this.textBytes = new byte[count][];
+		this.slots = new TemplateParameter[count];
+		this.optional = new boolean[count];
+		this.defaults = new String[count];
+		int length = 0;
+		Part part;
+		for (int i = 0; i < count; i++) {
+			part = parts.get(i);
+			this.kinds[i] = part.kind;
+			this.texts[i] = part.text;
+			this.textBytes[i] = part.text.getBytes(StandardCharsets.UTF_8);
+			this.slots[i] = part.slot;
+			this.optional[i] = part.optional;
+			this.defaults[i] = part.defaultValue;
+			length += part.text.length() + 1;
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Compiles the template of the url and its parameters
+	 * @param url - the url to compile
+	 * @return the compiled template
+	 */
+	public static CompiledTemplate compile(Url url) {
+		List<Part> parts = new ArrayList<Part>();
+		compilePath(url, parts);
+		if (url.parameters != null) {
+			for (Parameter parameter : url.parameters) {
+				if (parameter.valueType != null) {
+					parts.add(new Part(PART_QUERY_SLOT, parameter.name + "=", parameter.valueType,
+							parameter.minimum == 0, defaultValue(url, parameter.valueType)));
+				} else {
+					StringBuilder text = new StringBuilder(parameter.name).append('=');
+					encode(parameter.value, true, text);
+					parts.add(new Part(PART_QUERY_LITERAL, text.toString(), null, false, null));
+				}
+			}
+		}
+		return new CompiledTemplate(parts);
+	}
+
+	/**
+	 * Splits the path of the template (the part before the query string) in literals and slots
+	 * @param url - the url to compile
+	 * @param parts - the list to which the parts are added
+	 */
+	private static void compilePath(Url url, List<Part> parts) {
+		String template = url.template != null ? url.template : "";
+		int literalStart = 0;
+		int open = template.indexOf('{');
+		int close;
+		TemplateParameter slot;
+		while (open >= 0) {
+			close = template.indexOf('}', open);
+			if (close < 0) {
+				break;
+			}
+			slot = TemplateParameter.fromString(template.substring(open, close + 1));
+			if (slot != null) {
+				if (open > literalStart) {
+					parts.add(new Part(PART_LITERAL, template.substring(literalStart, open), null, false, null));
+				}
+				parts.add(new Part(PART_PATH_SLOT, "", slot, template.charAt(close - 1) == '?', defaultValue(url, slot)));
+				literalStart = close + 1;
+			}
+			open = template.indexOf('{', close + 1);
+		}
+		if (literalStart < template.length()) {
+			parts.add(new Part(PART_LITERAL, template.substring(literalStart), null, false, null));
+		}
+	}
+
+	/**
+	 * Returns the value that the OpenSearch specification defines for a parameter without value
+	 * @param url - the url containing the parameter
+	 * @param parameter - the parameter
+	 * @return the default value, or null if the parameter hasn't one
+	 */
+	private static String defaultValue(Url url, TemplateParameter parameter) {
+		switch (parameter) {
+		case START_INDEX:
+			return Integer.toString(url.indexOffset);
+		case START_PAGE:
+			return Integer.toString(url.pageOffset);
+		case LANGUAGE:
+			return "*";
+		case INPUT_ENCODING:
+		case OUTPUT_ENCODING:
+			return "UTF-8";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Expands the template and returns the url
+	 * @param binding - values of the template parameters
+	 * @return the expanded url
+	 */
+	public String expand(QueryBinding binding) {
+		return expand(binding.values());
+	}
+
+	/**
+	 * Expands the template, appending the url to the output builder
+	 * @param out - the builder to which the url is appended
+	 * @param binding - values of the template parameters
+	 * @return the output builder
+	 */
+	public StringBuilder expand(StringBuilder out, QueryBinding binding) {
+		return expand(out, binding.values());
+	}
+
+	/**
+	 * Expands the template, writing the url in the output buffer, see {@link #expand(ByteBuffer, String[])}
+	 * @param out - the buffer to which the url is written
+	 * @param binding - values of the template parameters
+	 * @return the output buffer
+	 * @throws java.nio.BufferOverflowException if the url doesn't fit in the remaining space of the buffer
+	 */
+	public ByteBuffer expand(ByteBuffer out, QueryBinding binding) {
+		return expand(out, binding.values());
+	}
+
+	/**
+	 * Expands the template and returns the url
+	 * @param values - values of the template parameters, indexed by {@link TemplateParameter#ordinal()};
+	 * it could be shorter than the number of template parameters and it could contain null elements
+	 * @return the expanded url
+	 */
+	public String expand(String[] values) {
+		return expand(new StringBuilder(this.literalLength + 32), values).toString();
+	}
+
+	/**
+	 * Expands the template, appending the url to the output builder
+	 * @param out - the builder to which the url is appended
+	 * @param values - values of the template parameters, indexed by {@link TemplateParameter#ordinal()};
+	 * it could be shorter than the number of template parameters and it could contain null elements
+	 * @return the output builder
+	 */
+	public StringBuilder expand(StringBuilder out, String[] values) {
+		boolean firstParameter = true;
+		String value;
+		for (int i = 0; i < this.kinds.length; i++) {
+			switch (this.kinds[i]) {
+			case PART_LITERAL:
+				out.append(this.texts[i]);
+				break;
+			case PART_PATH_SLOT:
+				value = valueOf(i, values);
+				if (value != null) {
+					encode(value, false, out);
+				}
+				break;
+			case PART_QUERY_LITERAL:
+				out.append(firstParameter ? '?' : '&').append(this.texts[i]);
+				firstParameter = false;
+				break;
+			case PART_QUERY_SLOT:
+				value = valueOf(i, values);
+				if (value != null || !this.optional[i]) {
+					out.append(firstParameter ? '?' : '&').append(this.texts[i]);
+					if (value != null) {
+						encode(value, true, out);
+					}
+					firstParameter = false;
+				}
+				break;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Expands the template, writing the url in the output buffer as US-ASCII bytes (the
+	 * values are percent-encoded, so the url doesn't contain other characters unless the
+	 * literal parts of the template contain them, in which case they are written as UTF-8).
+	 * @param out - the buffer to which the url is written
+	 * @param values - values of the template parameters, indexed by {@link TemplateParameter#ordinal()};
+	 * it could be shorter than the number of template parameters and it could contain null elements
+	 * @return the output buffer
+	 * @throws java.nio.BufferOverflowException if the url doesn't fit in the remaining space of the buffer
+	 */
+	public ByteBuffer expand(ByteBuffer out, String[] values) {
+		boolean firstParameter = true;
+		String value;
+		for (int i = 0; i < this.kinds.length; i++) {
+			switch (this.kinds[i]) {
+			case PART_LITERAL:
+				out.put(this.textBytes[i]);
+				break;
+			case PART_PATH_SLOT:
+				value = valueOf(i, values);
+				if (value != null) {
+					encode(value, false, out);
+				}
+				break;
+			case PART_QUERY_LITERAL:
+				out.put((byte) (firstParameter ? '?' : '&')).put(this.textBytes[i]);
+				firstParameter = false;
+				break;
+			case PART_QUERY_SLOT:
+				value = valueOf(i, values);
+				if (value != null || !this.optional[i]) {
+					out.put((byte) (firstParameter ? '?' : '&')).put(this.textBytes[i]);
+					if (value != null) {
+						encode(value, true, out);
+					}
+					firstParameter = false;
+				}
+				break;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the value of a slot
+	 * @param part - index of the part
+	 * @param values - values of the template parameters
+	 * @return the value of the slot, its default value if it is required, or null
+	 */
+	private String valueOf(int part, String[] values) {
+		int index = this.slots[part].ordinal();
+		if (values != null && index < values.length && values[index] != null
+				&& (values[index].length() > 0 || !this.optional[part])) {
+			return values[index];
+		}
+		return this.optional[part] ? null : this.defaults[part];
+	}
+
+	/**
+	 * Indicates whether the template contains the specified parameter
+	 * @param parameter - the parameter to look for
+	 * @return true if the template contains a slot for the parameter
+	 */
+	public boolean contains(TemplateParameter parameter) {
+		for (int i = 0; i < this.slots.length; i++) {
+			if (this.slots[i] == parameter) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the template parameters of this template, in order of appearance
+	 * @return the template parameters of this template
+	 */
+	public List<TemplateParameter> getParameters() {
+		List<TemplateParameter> parameters = new ArrayList<TemplateParameter>();
+		for (int i = 0; i < this.slots.length; i++) {
+			if (this.slots[i] != null) {
+				parameters.add(this.slots[i]);
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Encodes the value in the application/x-www-form-urlencoded format, using UTF-8
+	 * @param value - the value to encode
+	 * @param spaceAsPlus - true to encode spaces as "+", false to encode them as "%20"
+	 * @param out - the builder to which the encoded value is appended
+	 */
+	static void encode(CharSequence value, boolean spaceAsPlus, StringBuilder out) {
+		int length = value.length();
+		char c;
+		int codePoint;
+		for (int i = 0; i < length; i++) {
+			c = value.charAt(i);
+			if (c < 0x80) {
+				if (UNRESERVED[c]) {
+					out.append(c);
+				} else if (c == ' ' && spaceAsPlus) {
+					out.append('+');
+				} else {
+					appendEscaped(c, out);
+				}
+			} else if (c < 0x800) {
+				appendEscaped(0xC0 | (c >> 6), out);
+				appendEscaped(0x80 | (c & 0x3F), out);
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					codePoint = Character.toCodePoint(c, value.charAt(++i));
+					appendEscaped(0xF0 | (codePoint >> 18), out);
+					appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), out);
+					appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+					appendEscaped(0x80 | (codePoint & 0x3F), out);
+				} else {
+					// malformed input, replaced like the standard encoder does
+					appendEscaped('?', out);
+				}
+			} else {
+				appendEscaped(0xE0 | (c >> 12), out);
+				appendEscaped(0x80 | ((c >> 6) & 0x3F), out);
+				appendEscaped(0x80 | (c & 0x3F), out);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the value in the application/x-www-form-urlencoded format, using UTF-8
+	 * @param value - the value to encode
+	 * @param spaceAsPlus - true to encode spaces as "+", false to encode them as "%20"
+	 * @param out - the buffer to which the encoded value is written
+	 */
+	static void encode(CharSequence value, boolean spaceAsPlus, ByteBuffer out) {
+		int length = value.length();
+		char c;
+		int codePoint;
+		for (int i = 0; i < length; i++) {
+			c = value.charAt(i);
+			if (c < 0x80) {
+				if (UNRESERVED[c]) {
+					out.put((byte) c);
+				} else if (c == ' ' && spaceAsPlus) {
+					out.put((byte) '+');
+				} else {
+					putEscaped(c, out);
+				}
+			} else if (c < 0x800) {
+				putEscaped(0xC0 | (c >> 6), out);
+				putEscaped(0x80 | (c & 0x3F), out);
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					codePoint = Character.toCodePoint(c, value.charAt(++i));
+					putEscaped(0xF0 | (codePoint >> 18), out);
+					putEscaped(0x80 | ((codePoint >> 12) & 0x3F), out);
+					putEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+					putEscaped(0x80 | (codePoint & 0x3F), out);
+				} else {
+					// malformed input, replaced like the standard encoder does
+					putEscaped('?', out);
+				}
+			} else {
+				putEscaped(0xE0 | (c >> 12), out);
+				putEscaped(0x80 | ((c >> 6) & 0x3F), out);
+				putEscaped(0x80 | (c & 0x3F), out);
+			}
+		}
+	}
+
+	private static void appendEscaped(int b, StringBuilder out) {
+		out.append('%').append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+	}
+
+	private static void putEscaped(int b, ByteBuffer out) {
+		out.put((byte) '%').put((byte) HEX_DIGITS[(b >> 4) & 0x0F]).put((byte) HEX_DIGITS[b & 0x0F]);
+	}
+
+	/**
+	 * Returns the template with the placeholders of the parameters
+	 * @return the template with the placeholders of the parameters
+	 */
+	@Override
+	public String toString() {
+		StringBuilder template = new StringBuilder();
+		boolean firstParameter = true;
+		for (int i = 0; i < this.kinds.length; i++) {
+			if (this.kinds[i] == PART_QUERY_LITERAL || this.kinds[i] == PART_QUERY_SLOT) {
+				template.append(firstParameter ? '?' : '&');
+				firstParameter = false;
+			}
+			template.append(this.texts[i]);
+			if (this.slots[i] != null) {
+				String placeholder = this.slots[i].toString();
+				if (this.optional[i]) {
+					template.append(placeholder, 0, placeholder.length() - 1).append("?}");
+				} else {
+					template.append(placeholder);
+				}
+			}
+		}
+		return template.toString();
+	}
+
+	/**
+	 * A part of the template, used only while compiling it
+	 */
+	private static class Part {
+
+		final byte kind;
+		final String text;
+		final TemplateParameter slot;
+		final boolean optional;
+		final String defaultValue;
+
+		Part(byte kind, String text, TemplateParameter slot, boolean optional, String defaultValue) {
+			this.kind = kind;
+			this.text = text;
+			this.slot = slot;
+			this.optional = optional;
+			this.defaultValue = defaultValue;
+		}
+	}
+}
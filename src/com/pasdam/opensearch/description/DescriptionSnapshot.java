@@ -0,0 +1,458 @@
+package com.pasdam.opensearch.description;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format of a list of descriptions, used to store a whole registry in a
+ * single file that can be loaded much faster than parsing the xml documents.<br/>
+ * A snapshot contains a header (magic number and version), a table of the distinct
+ * strings, and the descriptions, whose strings are written as indexes in the table.
+ * Integers are written as varints (signed ones zigzag encoded) and enumerations
+ * ({@link UrlRole}, {@link SyndicationRight}, {@link TemplateParameter}) as ordinals, so
+ * the order of their constants must not change without increasing {@link #VERSION}.<br/>
+ * Snapshot files are read through a memory mapping and written atomically, replacing the
+ * previous file only when the new one is complete.
+ * @author Paco
+ * @version 1.0
+ */
+public final class DescriptionSnapshot {
+
+	/**
+	 * First bytes of a snapshot: "OSDS"
+	 */
+	public static final int MAGIC = 0x4F534453;
+
+	/**
+	 * Version of the format written by this class
+	 */
+	public static final int VERSION = 1;
+
+	private static final UrlRole[] ROLES = UrlRole.values();
+
+	private static final SyndicationRight[] SYNDICATION_RIGHTS = SyndicationRight.values();
+
+	private static final TemplateParameter[] TEMPLATE_PARAMETERS = TemplateParameter.values();
+
+	private DescriptionSnapshot() {
+	}
+
+	/**
+	 * Writes the descriptions in a file, replacing it if it exists
+	 * @param descriptions - the descriptions to write
+	 * @param file - the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(List<OpenSearchDescription> descriptions, Path file) throws IOException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temporary)) {
+			write(descriptions, out);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes the descriptions in a stream
+	 * @param descriptions - the descriptions to write
+	 * @param out - the stream to which the snapshot is written, it isn't closed
+	 * @throws IOException if the stream cannot be written
+	 */
+	public static void write(List<OpenSearchDescription> descriptions, OutputStream out) throws IOException {
+		Writer writer = new Writer();
+		writer.writeVarint(descriptions.size());
+		for (OpenSearchDescription description : descriptions) {
+			writer.writeDescription(description);
+		}
+		Writer header = new Writer();
+		header.writeInt(MAGIC);
+		header.writeVarint(VERSION);
+		header.writeVarint(writer.strings.size());
+		for (String string : writer.strings) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			header.writeVarint(bytes.length);
+			header.write(bytes);
+		}
+		out.write(header.buffer, 0, header.length);
+		out.write(writer.buffer, 0, writer.length);
+	}
+
+	/**
+	 * Reads the descriptions stored in a file
+	 * @param file - the snapshot file
+	 * @return the descriptions, in the order they were written
+	 * @throws IOException if the file cannot be read, or it isn't a valid snapshot
+	 */
+	public static List<OpenSearchDescription> read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer);
+		}
+	}
+
+	/**
+	 * Reads the descriptions stored in a buffer, from its position to its limit
+	 * @param buffer - the buffer containing the snapshot
+	 * @return the descriptions, in the order they were written
+	 * @throws IOException if the buffer doesn't contain a valid snapshot
+	 */
+	public static List<OpenSearchDescription> read(ByteBuffer buffer) throws IOException {
+		try {
+			if (buffer.remaining() < 4 || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a description snapshot");
+			}
+			int version = readVarint(buffer);
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version: " + version);
+			}
+			Reader reader = new Reader(buffer);
+			int count = readVarint(buffer);
+			if (count < 0 || count > buffer.remaining()) {
+				throw new IOException("Corrupted description snapshot");
+			}
+			List<OpenSearchDescription> descriptions = new ArrayList<OpenSearchDescription>(count);
+			for (int i = 0; i < count; i++) {
+				descriptions.add(reader.readDescription());
+			}
+			return descriptions;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("Corrupted description snapshot", e);
+		}
+	}
+
+	private static int readVarint(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		byte b;
+		for (int shift = 0; shift < 32; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Encodes the descriptions, collecting their strings in the table
+	 */
+	private static class Writer {
+
+		final List<String> strings = new ArrayList<String>();
+
+		/**
+		 * Index of each string in the table, plus one (0 is null)
+		 */
+		final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+		byte[] buffer = new byte[4096];
+
+		int length;
+
+		void writeDescription(OpenSearchDescription description) {
+			writeString(description.shortName);
+			writeString(description.description);
+			writeString(description.developer);
+			writeString(description.contact);
+			writeString(description.longName);
+			writeString(description.attribution);
+			writeStrings(description.tags);
+			writeStrings(description.languages);
+			writeStrings(description.inputEncoding);
+			writeStrings(description.outputEncoding);
+			writeVarint(description.syndicationRight != null ? description.syndicationRight.ordinal() + 1 : 0);
+			writeVarint(description.adultContent ? 1 : 0);
+			if (writeSize(description.images)) {
+				for (Image image : description.images) {
+					writeSignedVarint(image.height);
+					writeSignedVarint(image.width);
+					writeString(image.type);
+					writeString(image.value);
+				}
+			}
+			if (writeSize(description.urls)) {
+				for (Url url : description.urls) {
+					writeUrl(url);
+				}
+			}
+			if (writeSize(description.queries)) {
+				for (Query query : description.queries) {
+					writeString(query.role);
+					writeString(query.title);
+					writeSignedVarint(query.totalResults);
+					writeString(query.searchTerms);
+					writeSignedVarint(query.count);
+					writeSignedVarint(query.startIndex);
+					writeSignedVarint(query.startPage);
+					writeString(query.language);
+					writeString(query.inputEncoding);
+					writeString(query.outputEncoding);
+				}
+			}
+		}
+
+		void writeUrl(Url url) {
+			writeString(url.template);
+			writeString(url.type);
+			if (writeSize(url.rel)) {
+				for (UrlRole role : url.rel) {
+					writeVarint(role.ordinal());
+				}
+			}
+			writeSignedVarint(url.indexOffset);
+			writeSignedVarint(url.pageOffset);
+			writeString(url.method);
+			writeString(url.enctype);
+			if (writeSize(url.parameters)) {
+				for (Parameter parameter : url.parameters) {
+					writeString(parameter.name);
+					writeString(parameter.value);
+					writeSignedVarint(parameter.minimum);
+					writeSignedVarint(parameter.maximum);
+					writeVarint(parameter.valueType != null ? parameter.valueType.ordinal() + 1 : 0);
+				}
+			}
+		}
+
+		/**
+		 * Writes the size of a list, plus one (0 is null)
+		 * @return true if the list isn't null
+		 */
+		boolean writeSize(List<?> list) {
+			writeVarint(list != null ? list.size() + 1 : 0);
+			return list != null;
+		}
+
+		void writeStrings(String[] strings) {
+			writeVarint(strings != null ? strings.length + 1 : 0);
+			if (strings != null) {
+				for (String string : strings) {
+					writeString(string);
+				}
+			}
+		}
+
+		void writeString(String string) {
+			if (string == null) {
+				writeVarint(0);
+				return;
+			}
+			Integer index = this.stringIndexes.get(string);
+			if (index == null) {
+				this.strings.add(string);
+				index = Integer.valueOf(this.strings.size());
+				this.stringIndexes.put(string, index);
+			}
+			writeVarint(index.intValue());
+		}
+
+		void writeSignedVarint(int value) {
+			writeVarint((value << 1) ^ (value >> 31));
+		}
+
+		void writeVarint(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				this.buffer[this.length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			this.buffer[this.length++] = (byte) value;
+		}
+
+		void writeInt(int value) {
+			ensureCapacity(4);
+			this.buffer[this.length++] = (byte) (value >>> 24);
+			this.buffer[this.length++] = (byte) (value >>> 16);
+			this.buffer[this.length++] = (byte) (value >>> 8);
+			this.buffer[this.length++] = (byte) value;
+		}
+
+		void write(byte[] bytes) {
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+			this.length += bytes.length;
+		}
+
+		private void ensureCapacity(int count) {
+			if (this.length + count > this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + count));
+			}
+		}
+	}
+
+	/**
+	 * Decodes the descriptions, after reading the table of the strings
+	 */
+	private static class Reader {
+
+		final ByteBuffer buffer;
+
+		final String[] strings;
+
+		Reader(ByteBuffer buffer) throws IOException {
+			this.buffer = buffer;
+			int count = readVarint(buffer);
+			if (count < 0 || count > buffer.remaining()) {
+				throw new IOException("Corrupted description snapshot");
+			}
+			this.strings = new String[count + 1];
+			byte[] bytes = new byte[64];
+			int length;
+			for (int i = 1; i <= count; i++) {
+				length = readVarint(buffer);
+				if (length < 0 || length > buffer.remaining()) {
+					throw new IOException("Corrupted description snapshot");
+				}
+				if (length > bytes.length) {
+					bytes = new byte[Math.max(length, bytes.length * 2)];
+				}
+				buffer.get(bytes, 0, length);
+				this.strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			}
+		}
+
+		OpenSearchDescription readDescription() throws IOException {
+			OpenSearchDescription description = new OpenSearchDescription();
+			description.shortName = readString();
+			description.description = readString();
+			description.developer = readString();
+			description.contact = readString();
+			description.longName = readString();
+			description.attribution = readString();
+			description.tags = readStrings();
+			description.languages = readStrings();
+			description.inputEncoding = readStrings();
+			description.outputEncoding = readStrings();
+			int syndicationRight = readVarint(this.buffer);
+			description.syndicationRight = syndicationRight > 0 ? SYNDICATION_RIGHTS[syndicationRight - 1] : null;
+			description.adultContent = readVarint(this.buffer) != 0;
+			int size = readSize();
+			if (size >= 0) {
+				description.images = new ArrayList<Image>(size);
+				Image image;
+				for (int i = 0; i < size; i++) {
+					image = new Image();
+					image.height = readSignedVarint();
+					image.width = readSignedVarint();
+					image.type = readString();
+					image.value = readString();
+					description.images.add(image);
+				}
+			}
+			size = readSize();
+			if (size >= 0) {
+				description.urls = new ArrayList<Url>(size);
+				Url url;
+				for (int i = 0; i < size; i++) {
+					url = readUrl();
+					url.engineName = description.shortName;
+					description.urls.add(url);
+				}
+			}
+			size = readSize();
+			if (size >= 0) {
+				description.queries = new ArrayList<Query>(size);
+				Query query;
+				for (int i = 0; i < size; i++) {
+					query = new Query();
+					query.role = readString();
+					query.title = readString();
+					query.totalResults = readSignedVarint();
+					query.searchTerms = readString();
+					query.count = readSignedVarint();
+					query.startIndex = readSignedVarint();
+					query.startPage = readSignedVarint();
+					query.language = readString();
+					query.inputEncoding = readString();
+					query.outputEncoding = readString();
+					description.queries.add(query);
+				}
+			}
+			return description;
+		}
+
+		Url readUrl() throws IOException {
+			Url url = new Url();
+			url.template = readString();
+			url.type = readString();
+			int size = readSize();
+			if (size >= 0) {
+				url.rel = new ArrayList<UrlRole>(size);
+				for (int i = 0; i < size; i++) {
+					url.rel.add(ROLES[readVarint(this.buffer)]);
+				}
+			} else {
+				url.rel = null;
+			}
+			url.indexOffset = readSignedVarint();
+			url.pageOffset = readSignedVarint();
+			url.method = readString();
+			url.enctype = readString();
+			size = readSize();
+			if (size >= 0) {
+				url.parameters = new ArrayList<Parameter>(size);
+				Parameter parameter;
+				int valueType;
+				for (int i = 0; i < size; i++) {
+					parameter = new Parameter();
+					parameter.name = readString();
+					parameter.value = readString();
+					parameter.minimum = readSignedVarint();
+					parameter.maximum = readSignedVarint();
+					valueType = readVarint(this.buffer);
+					parameter.valueType = valueType > 0 ? TEMPLATE_PARAMETERS[valueType - 1] : null;
+					url.parameters.add(parameter);
+				}
+			} else {
+				url.parameters = null;
+			}
+			return url;
+		}
+
+		/**
+		 * @return the size of a list, -1 if the list is null
+		 */
+		int readSize() throws IOException {
+			int size = readVarint(this.buffer) - 1;
+			if (size > this.buffer.remaining()) {
+				// each element takes at least one byte
+				throw new IOException("Corrupted description snapshot");
+			}
+			return size;
+		}
+
+		String[] readStrings() throws IOException {
+			int size = readSize();
+			if (size < 0) {
+				return null;
+			}
+			String[] strings = new String[size];
+			for (int i = 0; i < size; i++) {
+				strings[i] = readString();
+			}
+			return strings;
+		}
+
+		String readString() throws IOException {
+			return this.strings[readVarint(this.buffer)];
+		}
+
+		int readSignedVarint() throws IOException {
+			int value = readVarint(this.buffer);
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+}
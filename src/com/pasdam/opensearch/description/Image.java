@@ -3,10 +3,15 @@ package com.pasdam.opensearch.description;
 import java.net.URI;
 import java.text.ParseException;
 
-import org.w3c.dom.DOMException;
-import org.w3c.dom.NamedNodeMap;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Node;
 
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
 /**
  * Contains a URL that identifies the location of an image that can be used in 
  * association with this search content.<br/>
@@ -64,40 +69,100 @@ public class Image {
 	 * @throws ParseException if element is invalid
 	 */
 	public static Image parse(Node imageElement) throws ParseException{
+		return parse(imageElement, ParseDiagnostics.DISCARD);
+	}
+
+	/**
+	 * @param imageElement - the element containing parameter's attributes
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return an Image object
+	 * @throws ParseException if element is invalid
+	 */
+	public static Image parse(Node imageElement, ParseDiagnostics diagnostics) throws ParseException{
+		String value = DomNodes.text(imageElement);
+		return create(DomNodes.attribute(imageElement, ATTR_HEIGHT), 
+				DomNodes.attribute(imageElement, ATTR_WIDTH), 
+				DomNodes.attribute(imageElement, ATTR_TYPE), 
+				value != null ? value.trim() : "", diagnostics, -1);
+	}
+
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the image element
+	 * @return an Image object
+	 * @throws ParseException if element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Image parse(XMLStreamReader reader) throws ParseException, XMLStreamException {
+		return parse(reader, ParseDiagnostics.DISCARD);
+	}
+
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the image element
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return an Image object
+	 * @throws ParseException if element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Image parse(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		int line = reader.getLocation().getLineNumber();
+		String height = XmlStreams.attribute(reader, ATTR_HEIGHT);
+		String width = XmlStreams.attribute(reader, ATTR_WIDTH);
+		String type = XmlStreams.attribute(reader, ATTR_TYPE);
+		String value = XmlStreams.elementText(reader).trim();
+		return create(height, width, type, value, diagnostics, line);
+	}
+
+	/**
+	 * Creates an image from the values read by the parsers
+	 * @param height - the value of the height attribute, or null
+	 * @param width - the value of the width attribute, or null
+	 * @param type - the value of the type attribute, or null
+	 * @param value - the trimmed text of the element
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return an Image object
+	 * @throws ParseException if element is invalid
+	 */
+	private static Image create(String height, String width, String type, String value, ParseDiagnostics diagnostics, int line) throws ParseException {
 		Image img = new Image();
 		try {
-			img.value = URI.create(imageElement.getChildNodes().item(0).getNodeValue().trim()).toString();
-		} catch (Exception e) {
-			String value = null;
-			try {
-				value = imageElement.getChildNodes().item(0).getNodeValue().trim();
-			} catch (DOMException e1) {
-				value = "";
-			}
+			img.value = URI.create(value).toString();
+		} catch (IllegalArgumentException e) {
 			throw new ParseException("Image element's value isn't a valid URI: " + value, 0);
 		}
-		NamedNodeMap attr = imageElement.getAttributes();
-		try {
-			img.height = Integer.parseInt(attr.getNamedItem(ATTR_HEIGHT).getNodeValue().trim());
-			if (img.height < 0) {
-				img.height = 0;
+		img.height = Math.max(toInt(height, ATTR_HEIGHT, diagnostics, line), 0);
+		img.width = Math.max(toInt(width, ATTR_WIDTH, diagnostics, line), 0);
+		if (type != null) {
+			img.type = type.trim();
+			if (!img.type.matches("^[-\\w]+/[-\\w\\+]+$")) {
+				throw new ParseException("Invalid attribute \"" + ATTR_TYPE + "\"!", 0);
 			}
-		} catch (Exception e) {}
-		try {
-			img.width = Integer.parseInt(attr.getNamedItem(ATTR_WIDTH).getNodeValue().trim());
-			if (img.width < 0) {
-				img.width = 0;
-			}
-		} catch (Exception e) {}
-		try {
-			img.type = attr.getNamedItem(ATTR_TYPE).getNodeValue().trim();
-		} catch (Exception e) {}
-		if (img.type!=null && !img.type.matches("^[-\\w]+/[-\\w\\+]+$")) {
-			throw new ParseException("Invalid attribute \"" + ATTR_TYPE + "\"!", 0);
 		}
 		return img;
 	}
 
+	/**
+	 * @param value - the value of the attribute, it could be null
+	 * @param name - the name of the attribute
+	 * @param diagnostics - the object that collects the invalid values
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return the integer value, or 0 if the value is null or isn't a number
+	 */
+	private static int toInt(String value, String name, ParseDiagnostics diagnostics, int line) {
+		if (value == null) {
+			return 0;
+		}
+		if (!XmlStreams.isInteger(value)) {
+			diagnostics.report(TAG_NAME, "Invalid attribute \"" + name + "\": " + value, line);
+			return 0;
+		}
+		return XmlStreams.parseInt(value, 0);
+	}
+
 	/**
 	 * Returns the xml tag of this element
 	 * @return the xml tag of this element
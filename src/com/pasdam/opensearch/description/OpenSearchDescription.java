@@ -1,23 +1,39 @@
 package com.pasdam.opensearch.description;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import com.pasdam.opensearch.jfr.DescriptionParseEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.xml.ByteBufferInputStream;
+import com.pasdam.opensearch.xml.DecodingReader;
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
 /**
  * The root node of the OpenSearch description document.
  * 
@@ -43,6 +59,9 @@ public class OpenSearchDescription {
 	public static final int SYNDICATION_RIGHT_LIMITED = 1;
 	public static final int SYNDICATION_RIGHT_PRIVATE = 2;
 	public static final int SYNDICATION_RIGHT_CLOSED = 3;
+	public static final String TYPE_RSS = "application/rss+xml";
+	public static final String TYPE_ATOM = "application/atom+xml";
+	public static final String TYPE_DESCRIPTION = "application/opensearchdescription+xml";
 
 	/**
 	 * Contains a brief human-readable title that identifies this search engine. <br/>
@@ -199,13 +218,18 @@ public class OpenSearchDescription {
 	 * @return a new OpenSearchDescription object or null in case of errors
 	 */
 	public static OpenSearchDescription parse(URL documentUrl){
+		InputStream inputStream = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(documentUrl.toString()));
-		} catch (Exception e) {
+			inputStream = documentUrl.openStream();
+			return parse(inputStream);
+		} catch (IOException e) {
+			OpenSearchMetrics metrics = OpenSearchMetrics.get();
+			if (metrics.isEnabled()) {
+				metrics.failed(null, UrlRole.SELF, Stage.FETCH, FailureCause.of(e), e);
+			}
 			return null;
+		} finally {
+			closeQuietly(inputStream);
 		}
 	}
 	
@@ -219,10 +243,15 @@ public class OpenSearchDescription {
 	 * @throws ParseException - If input document isn't valid
 	 */
 	public static OpenSearchDescription parse(String xml) throws ParserConfigurationException, ParseException, SAXException, IOException{
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		// parsing input document
-		return parse(db.parse(new InputSource(new StringReader(xml))));
+		XMLStreamReader reader = null;
+		try {
+			reader = XmlStreams.createReader(new StringReader(xml));
+			return parse(reader);
+		} catch (XMLStreamException e) {
+			throw new ParseException(e.getMessage(), e.getLocation() != null ? e.getLocation().getCharacterOffset() : 0);
+		} finally {
+			XmlStreams.closeQuietly(reader);
+		}
 	}
 	
 	/**
@@ -231,14 +260,14 @@ public class OpenSearchDescription {
 	 * @return a new OpenSearchDescription object or null in case of errors
 	 */
 	public static OpenSearchDescription parse(File file){
+		InputStream inputStream = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(file));
-		} catch (Exception e) {
-			e.printStackTrace();
+			inputStream = new FileInputStream(file);
+			return parse(inputStream);
+		} catch (IOException e) {
 			return null;
+		} finally {
+			closeQuietly(inputStream);
 		}
 	}
 	
@@ -248,166 +277,435 @@ public class OpenSearchDescription {
 	 * @return a new OpenSearchDescription object or null in case of errors
 	 */
 	public static OpenSearchDescription parse(InputStream inputStream){
+		return parse(inputStream, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document and return a new OpenSearchDescription object.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param diagnostics - the object that collects the problems found in the document, 
+	 * including the error that prevented the parse, if any
+	 * @return a new OpenSearchDescription object or null in case of errors
+	 */
+	public static OpenSearchDescription parse(InputStream inputStream, ParseDiagnostics diagnostics){
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		DescriptionParseEvent event = new DescriptionParseEvent();
+		event.begin();
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(inputStream));
-		} catch (Exception e) {
+			reader = XmlStreams.createReader(inputStream);
+			OpenSearchDescription description = parse(reader, diagnostics);
+			event.end();
+			if (event.shouldCommit()) {
+				event.engine = description.shortName;
+				event.urls = description.urls.size();
+				event.commit();
+			}
+			if (metrics.isEnabled()) {
+				metrics.parsed(description.shortName, UrlRole.SELF, System.nanoTime() - start, description.urls.size());
+			}
+			return description;
+		} catch (XMLStreamException e) {
+			diagnostics.report(ELEMENT_NAME, "Malformed document: " + e.getMessage(), e.getLocation());
+			parseFailed(metrics, event, e);
+			return null;
+		} catch (ParseException e) {
+			diagnostics.report(ELEMENT_NAME, "Invalid document: " + e.getMessage());
+			parseFailed(metrics, event, e);
+			return null;
+		} catch (RuntimeException e) {
+			diagnostics.report(ELEMENT_NAME, "Invalid document: " + e);
+			parseFailed(metrics, event, e);
 			return null;
+		} finally {
+			XmlStreams.closeQuietly(reader);
 		}
 	}
 	
 	/**
-	 * Parse the content of the given URL as an XML document and return a new OpenSearchDescription object.
+	 * Parse the content of the given buffer as an XML document, see 
+	 * {@link #parse(ByteBuffer, ParseDiagnostics)}
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @return a new OpenSearchDescription object or null in case of errors
+	 */
+	public static OpenSearchDescription parse(ByteBuffer buffer){
+		return parse(buffer, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the content of the given buffer, from its position to its limit, as an XML 
+	 * document. The buffer isn't copied, so it can be a direct buffer; the encoding is the 
+	 * one declared by the document (byte order mark or XML declaration), UTF-8 by default.
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @param diagnostics - the object that collects the problems found in the document, 
+	 * including the error that prevented the parse, if any
+	 * @return a new OpenSearchDescription object or null in case of errors
+	 */
+	public static OpenSearchDescription parse(ByteBuffer buffer, ParseDiagnostics diagnostics){
+		return parse(new ByteBufferInputStream(buffer), diagnostics);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document, see 
+	 * {@link #parse(ReadableByteChannel, ParseDiagnostics)}
+	 * @param channel - the channel containing the content to be parsed
+	 * @return a new OpenSearchDescription object or null in case of errors
+	 */
+	public static OpenSearchDescription parse(ReadableByteChannel channel){
+		return parse(channel, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document, see 
+	 * {@link #parse(ByteBuffer, ParseDiagnostics)}. The channel must be in blocking mode, 
+	 * and it isn't closed.
+	 * @param channel - the channel containing the content to be parsed
+	 * @param diagnostics - the object that collects the problems found in the document, 
+	 * including the error that prevented the parse, if any
+	 * @return a new OpenSearchDescription object or null in case of errors
+	 */
+	public static OpenSearchDescription parse(ReadableByteChannel channel, ParseDiagnostics diagnostics){
+		return parse(Channels.newInputStream(channel), diagnostics);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader, in a single pass, and return a new 
+	 * OpenSearchDescription object. The reader must be positioned at the beginning of the 
+	 * document or on the start of the root element.
+	 * @param reader - the reader of the document
+	 * @return a new OpenSearchDescription object
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static OpenSearchDescription parse(XMLStreamReader reader) throws ParseException, XMLStreamException{
+		return parse(reader, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader, in a single pass, and return a new 
+	 * OpenSearchDescription object. The reader must be positioned at the beginning of the 
+	 * document or on the start of the root element.
+	 * @param reader - the reader of the document
+	 * @param diagnostics - the object that collects the skipped children and the invalid 
+	 * optional values
+	 * @return a new OpenSearchDescription object
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static OpenSearchDescription parse(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException{
+		OpenSearchDescription openSearchObject = new OpenSearchDescription();
+		openSearchObject.urls = new ArrayList<Url>();
+		openSearchObject.images = new ArrayList<Image>();
+		openSearchObject.queries = new ArrayList<Query>();
+		List<String> languages = new ArrayList<String>(1);
+		List<String> inputEncodings = new ArrayList<String>(1);
+		List<String> outputEncodings = new ArrayList<String>(1);
+		String adultContent = null;
+		String syndicationRight = null;
+		String elementName;
+		
+		int event = reader.getEventType();
+		while (event != XMLStreamConstants.END_DOCUMENT) {
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				elementName = XmlStreams.qualifiedName(reader);
+				if (elementName.equals(Url.TAG_NAME)) {
+					try {
+						openSearchObject.urls.add(Url.parse(reader, diagnostics));
+					} catch (ParseException e) {
+						diagnostics.report(Url.TAG_NAME, "Url skipped: " + e.getMessage(), reader.getLocation());
+					}
+				} else if (elementName.equals(Image.TAG_NAME)) {
+					try {
+						openSearchObject.images.add(Image.parse(reader, diagnostics));
+					} catch (ParseException e) {
+						diagnostics.report(Image.TAG_NAME, "Image skipped: " + e.getMessage(), reader.getLocation());
+					}
+				} else if (elementName.equals(Query.TAG_NAME)) {
+					try {
+						openSearchObject.queries.add(Query.parse(reader, diagnostics));
+					} catch (ParseException e) {
+						diagnostics.report(Query.TAG_NAME, "Query skipped: " + e.getMessage(), reader.getLocation());
+					}
+				} else if (elementName.equals(CHILD_SHORT_NAME)) {
+					openSearchObject.shortName = firstText(openSearchObject.shortName, reader);
+				} else if (elementName.equals(CHILD_DESCRIPTION)) {
+					openSearchObject.description = firstText(openSearchObject.description, reader);
+				} else if (elementName.equals(CHILD_CONTACT)) {
+					openSearchObject.contact = firstText(openSearchObject.contact, reader);
+				} else if (elementName.equals(CHILD_TAGS)) {
+					if (openSearchObject.tags == null) {
+						openSearchObject.tags = XmlStreams.elementText(reader).trim().split(" ");
+					} else {
+						XmlStreams.skipElement(reader);
+					}
+				} else if (elementName.equals(CHILD_LONG_NAME)) {
+					openSearchObject.longName = firstText(openSearchObject.longName, reader);
+				} else if (elementName.equals(CHILD_DEVELOPER)) {
+					openSearchObject.developer = firstText(openSearchObject.developer, reader);
+				} else if (elementName.equals(CHILD_ATTRIBUTION)) {
+					openSearchObject.attribution = firstText(openSearchObject.attribution, reader);
+				} else if (elementName.equals(CHILD_SYNDICATION_RIGHT)) {
+					syndicationRight = firstText(syndicationRight, reader);
+				} else if (elementName.equals(CHILD_ADULT_CONTENT)) {
+					adultContent = firstText(adultContent, reader);
+				} else if (elementName.equals(CHILD_LANGUAGE)) {
+					languages.add(XmlStreams.elementText(reader).trim());
+				} else if (elementName.equals(CHILD_INPUT_ENCODING)) {
+					inputEncodings.add(XmlStreams.elementText(reader).trim());
+				} else if (elementName.equals(CHILD_OUTPUT_ENCODING)) {
+					outputEncodings.add(XmlStreams.elementText(reader).trim());
+				}
+			}
+			event = reader.next();
+		}
+		
+		// checking required elements
+		if (openSearchObject.shortName == null) {
+			throw new ParseException("Element \""+ CHILD_SHORT_NAME + "\" not found!", 0);
+		}
+		if (openSearchObject.description == null) {
+			throw new ParseException("Element \"" + CHILD_DESCRIPTION + "\" not found!", 0);
+		}
+		// setting default values
+		setDefaults(openSearchObject, syndicationRight, adultContent, languages, inputEncodings, outputEncodings, diagnostics);
+		return openSearchObject;
+	}
+	
+	/**
+	 * Sets the values of the optional elements, using their default values if they are missing
+	 * @param openSearchObject - the parsed description
+	 * @param syndicationRight - the text of the SyndicationRight element, or null
+	 * @param adultContent - the text of the AdultContent element, or null
+	 * @param languages - the texts of the Language elements
+	 * @param inputEncodings - the texts of the InputEncoding elements
+	 * @param outputEncodings - the texts of the OutputEncoding elements
+	 * @param diagnostics - the object that collects the invalid values
+	 */
+	private static void setDefaults(OpenSearchDescription openSearchObject, String syndicationRight, String adultContent, 
+			List<String> languages, List<String> inputEncodings, List<String> outputEncodings, ParseDiagnostics diagnostics) {
+		if (openSearchObject.longName == null) {
+			openSearchObject.longName = openSearchObject.shortName;
+		}
+		for (Url url : openSearchObject.urls) {
+			url.engineName = openSearchObject.shortName;
+		}
+		if (syndicationRight != null) {
+			// an invalid value keeps the default (open)
+			SyndicationRight right = SyndicationRight.find(syndicationRight);
+			if (right != null) {
+				openSearchObject.syndicationRight = right;
+			} else {
+				diagnostics.report(CHILD_SYNDICATION_RIGHT, "Invalid value: " + syndicationRight);
+			}
+		}
+		openSearchObject.adultContent = adultContent != null && isAdultContent(adultContent);
+		openSearchObject.languages = toArray(languages, "*");
+		openSearchObject.inputEncoding = toArray(inputEncodings, "UTF-8");
+		openSearchObject.outputEncoding = toArray(outputEncodings, "UTF-8");
+	}
+	
+	/**
+	 * Reads the text of the current element, if it is the first occurrence of it
+	 * @param currentValue - the value read from a previous occurrence of the element, or null
+	 * @param reader - a reader positioned on the start of the element
+	 * @return the trimmed text of the element, or currentValue if it isn't null
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	private static String firstText(String currentValue, XMLStreamReader reader) throws XMLStreamException {
+		if (currentValue != null) {
+			XmlStreams.skipElement(reader);
+			return currentValue;
+		}
+		return XmlStreams.elementText(reader).trim();
+	}
+	
+	/**
+	 * @param values - list of values
+	 * @param defaultValue - the value to use if the list is empty
+	 * @return an array containing the values of the list, or the default value if it is empty
+	 */
+	private static String[] toArray(List<String> values, String defaultValue) {
+		if (values.isEmpty()) {
+			return new String[]{defaultValue};
+		}
+		return values.toArray(new String[values.size()]);
+	}
+	
+	/**
+	 * @param adultContent - the value of the AdultContent element
+	 * @return false if the value is "false", "FALSE", "0", "no", or "NO", true otherwise
+	 */
+	private static boolean isAdultContent(String adultContent) {
+		return !(adultContent.equals("false") || 
+				adultContent.equals("FALSE") || 
+				adultContent.equals("0") || 
+				adultContent.equals("no") || 
+				adultContent.equals("NO"));
+	}
+	
+	/**
+	 * Reports a failed parse to the metrics and to the recording, if they are enabled
+	 * @param metrics - the metrics
+	 * @param event - the event of the parse
+	 * @param error - the error
+	 */
+	private static void parseFailed(OpenSearchMetrics metrics, DescriptionParseEvent event, Exception error) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.error = error.toString();
+			event.commit();
+		}
+		if (metrics.isEnabled()) {
+			metrics.failed(null, UrlRole.SELF, Stage.PARSE, FailureCause.of(error), error);
+		}
+	}
+	
+	/**
+	 * Closes the stream, ignoring errors
+	 * @param inputStream - the stream to close, it could be null
+	 */
+	private static void closeQuietly(InputStream inputStream) {
+		if (inputStream != null) {
+			try {
+				inputStream.close();
+			} catch (IOException e) {}
+		}
+	}
+	
+	/**
+	 * Parse the given DOM document and return a new OpenSearchDescription object.<br/>
+	 * The other parse methods use the streaming parser, this method can be used as 
+	 * fallback by clients that already have the DOM of the description.
 	 * @param document - The document containing xml elements
 	 * @return a new OpenSearchDescription object or null in case of errors
 	 * @throws ParseException if input document isn't valid
 	 */
-	private static OpenSearchDescription parse(Document document) throws ParseException{
+	public static OpenSearchDescription parse(Document document) throws ParseException{
+		return parse(document, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the given DOM document and return a new OpenSearchDescription object.
+	 * @param document - The document containing xml elements
+	 * @param diagnostics - the object that collects the skipped children and the invalid 
+	 * optional values
+	 * @return a new OpenSearchDescription object
+	 * @throws ParseException if input document isn't valid
+	 * @see #parse(Document)
+	 */
+	public static OpenSearchDescription parse(Document document, ParseDiagnostics diagnostics) throws ParseException{
 		OpenSearchDescription openSearchObject = new OpenSearchDescription();
-		// setting object properties
-		NodeList currentElements = null;
 		// parsing required elements
-		currentElements = document.getElementsByTagName(CHILD_SHORT_NAME);
-		if (currentElements != null) {
-			openSearchObject.shortName = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} else {
+		openSearchObject.shortName = DomNodes.firstText(document, CHILD_SHORT_NAME);
+		if (openSearchObject.shortName == null) {
 			throw new ParseException("Element \""+ CHILD_SHORT_NAME + "\" not found!", 0);
 		}
-		currentElements = document.getElementsByTagName(CHILD_DESCRIPTION);
-		if (currentElements != null) {
-			openSearchObject.description = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} else {
+		openSearchObject.description = DomNodes.firstText(document, CHILD_DESCRIPTION);
+		if (openSearchObject.description == null) {
 			throw new ParseException("Element \"" + CHILD_DESCRIPTION + "\" not found!", 0);
 		}
-		currentElements = document.getElementsByTagName(Url.TAG_NAME);
-		if (currentElements != null) {
-			openSearchObject.urls = new ArrayList<Url>(currentElements.getLength());
-			for (int i = 0; i < currentElements.getLength(); i++) {
-				try {
-					openSearchObject.urls.add(Url.parse(currentElements.item(i)));
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
+		NodeList currentElements = document.getElementsByTagName(Url.TAG_NAME);
+		openSearchObject.urls = new ArrayList<Url>(currentElements.getLength());
+		for (int i = 0; i < currentElements.getLength(); i++) {
+			try {
+				openSearchObject.urls.add(Url.parse(currentElements.item(i), diagnostics));
+			} catch (ParseException e) {
+				diagnostics.report(Url.TAG_NAME, "Url skipped: " + e.getMessage());
 			}
-		} else {
-			throw new ParseException("Element \"" + Url.TAG_NAME + "\" not found!", 0);
 		}
 		// parsing optional elements
-		currentElements = document.getElementsByTagName(CHILD_CONTACT);
-		try {
-			openSearchObject.contact = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} catch (Exception e) {}
-		currentElements = document.getElementsByTagName(CHILD_TAGS);
-		try {
-			openSearchObject.tags = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim().split(" ");
-		} catch (Exception e) {}
-		currentElements = document.getElementsByTagName(CHILD_LONG_NAME);
-		try {
-			openSearchObject.longName = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} catch (Exception e) {
-			openSearchObject.longName = openSearchObject.shortName;
+		openSearchObject.contact = DomNodes.firstText(document, CHILD_CONTACT);
+		String tags = DomNodes.firstText(document, CHILD_TAGS);
+		if (tags != null) {
+			openSearchObject.tags = tags.split(" ");
 		}
+		openSearchObject.longName = DomNodes.firstText(document, CHILD_LONG_NAME);
 		currentElements = document.getElementsByTagName(Image.TAG_NAME);
-		if (currentElements != null) {
-			openSearchObject.images = new ArrayList<Image>();
-			for (int i = 0; i < currentElements.getLength(); i++) {
-				try {
-					openSearchObject.images.add(Image.parse(currentElements.item(i)));
-				} catch (Exception e) {}
+		openSearchObject.images = new ArrayList<Image>();
+		for (int i = 0; i < currentElements.getLength(); i++) {
+			try {
+				openSearchObject.images.add(Image.parse(currentElements.item(i), diagnostics));
+			} catch (ParseException e) {
+				diagnostics.report(Image.TAG_NAME, "Image skipped: " + e.getMessage());
 			}
 		}
 		currentElements = document.getElementsByTagName(Query.TAG_NAME);
 		openSearchObject.queries = new ArrayList<Query>();
 		for (int i = 0; i < currentElements.getLength(); i++) {
 			try {
-				openSearchObject.queries.add(Query.parse(currentElements.item(i)));
-			} catch (Exception e) {}
-		}
-		currentElements = document.getElementsByTagName(CHILD_DEVELOPER);
-		try {
-			openSearchObject.developer = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} catch (Exception e) {}
-		currentElements = document.getElementsByTagName(CHILD_ATTRIBUTION);
-		try {
-			openSearchObject.attribution = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-		} catch (Exception e) {}
-		currentElements = document.getElementsByTagName(CHILD_SYNDICATION_RIGHT);
-		try {
-			openSearchObject.syndicationRight = SyndicationRight.fromString(currentElements.item(0).getChildNodes().item(0).getNodeValue().trim());
-		} catch (Exception e) {}
-		currentElements = document.getElementsByTagName(CHILD_ADULT_CONTENT);
-		try {
-			String adultContent = currentElements.item(0).getChildNodes().item(0).getNodeValue().trim();
-			if (adultContent.equals("false") || 
-					adultContent.equals("FALSE") || 
-					adultContent.equals("0") || 
-					adultContent.equals("no") || 
-					adultContent.equals("NO")) {
-				openSearchObject.adultContent = false;
-			} else {
-				openSearchObject.adultContent = true;
-			}
-		} catch (Exception e) {
-			openSearchObject.adultContent = false;
-		}
-		currentElements = document.getElementsByTagName(CHILD_LANGUAGE);
-		if (currentElements != null) {
-			int langCount = 0;
-			openSearchObject.languages = new String[currentElements.getLength()];
-			for (int i = 0; i < openSearchObject.languages.length; i++) {
-				try {
-					openSearchObject.languages[i] = currentElements.item(i).getChildNodes().item(0).getNodeValue().trim();
-					if (openSearchObject.languages[i] != null) {
-						langCount++;
-					}
-				} catch (Exception e) {}
-			}
-			if (langCount == 0) {
-				openSearchObject.languages = new String[]{"*"};
+				openSearchObject.queries.add(Query.parse(currentElements.item(i), diagnostics));
+			} catch (ParseException e) {
+				diagnostics.report(Query.TAG_NAME, "Query skipped: " + e.getMessage());
 			}
-		} else {
-			openSearchObject.languages = new String[]{"*"};
 		}
-		currentElements = document.getElementsByTagName(CHILD_INPUT_ENCODING);
-		if (currentElements != null) {
-			int encCount = 0;
-			openSearchObject.inputEncoding = new String[currentElements.getLength()];
-			for (int i = 0; i < openSearchObject.inputEncoding.length; i++) {
-				try {
-					openSearchObject.inputEncoding[i] = currentElements.item(i).getChildNodes().item(0).getNodeValue().trim();
-					if (openSearchObject.inputEncoding[i] != null) {
-						encCount++;
-					}
-				} catch (Exception e) {}
-			}
-			if (encCount == 0) {
-				openSearchObject.inputEncoding = new String[]{"UTF-8"};
+		openSearchObject.developer = DomNodes.firstText(document, CHILD_DEVELOPER);
+		openSearchObject.attribution = DomNodes.firstText(document, CHILD_ATTRIBUTION);
+		setDefaults(openSearchObject, 
+				DomNodes.firstText(document, CHILD_SYNDICATION_RIGHT), 
+				DomNodes.firstText(document, CHILD_ADULT_CONTENT), 
+				DomNodes.texts(document, CHILD_LANGUAGE), 
+				DomNodes.texts(document, CHILD_INPUT_ENCODING), 
+				DomNodes.texts(document, CHILD_OUTPUT_ENCODING), 
+				diagnostics);
+		// return object, if it has all required fields
+		return openSearchObject;
+	}
+	
+	/**
+	 * Returns the first url with the specified role and type
+	 * @param role - the role of the url
+	 * @param type - the MIME type of the url, null to accept any type
+	 * @return the first url with the specified role and type, or null if there isn't one
+	 */
+	public Url getUrl(UrlRole role, String type) {
+		if (this.urls != null) {
+			for (Url url : this.urls) {
+				if (url.rel != null && url.rel.contains(role) && (type == null || type.equalsIgnoreCase(url.type))) {
+					return url;
+				}
 			}
-		} else {
-			openSearchObject.inputEncoding = new String[]{"UTF-8"};
 		}
-		currentElements = document.getElementsByTagName(CHILD_OUTPUT_ENCODING);
-		if (currentElements != null) {
-			int encCount = 0;
-			openSearchObject.outputEncoding = new String[currentElements.getLength()];
-			for (int i = 0; i < openSearchObject.outputEncoding.length; i++) {
-				try {
-					openSearchObject.outputEncoding[i] = currentElements.item(i).getChildNodes().item(0).getNodeValue().trim();
-					if (openSearchObject.outputEncoding[i] != null) {
-						encCount++;
-					}
-				} catch (Exception e) {}
-			}
-			if (encCount == 0) {
-				openSearchObject.outputEncoding = new String[]{"UTF-8"};
+		return null;
+	}
+	
+	/**
+	 * Returns the first url that returns search results in a format that can be parsed 
+	 * by {@link com.pasdam.opensearch.response.SearchResponse}, RSS or Atom
+	 * @return the first url that returns RSS or Atom search results, or null if there isn't one
+	 */
+	public Url getResultsUrl() {
+		Url url = getUrl(UrlRole.RESULTS, TYPE_RSS);
+		return url != null ? url : getUrl(UrlRole.RESULTS, TYPE_ATOM);
+	}
+	
+	/**
+	 * Returns the url of this description document, declared with role "self"
+	 * @return the first url with role "self", preferring the ones of type
+	 * {@link #TYPE_DESCRIPTION}, or null if there isn't one
+	 */
+	public Url getSelfUrl() {
+		Url url = getUrl(UrlRole.SELF, TYPE_DESCRIPTION);
+		return url != null ? url : getUrl(UrlRole.SELF, null);
+	}
+	
+	/**
+	 * Returns the charset of the search responses: the first supported "OutputEncoding". 
+	 * It is the charset to use to decode the responses of the requests that don't set the 
+	 * "outputEncoding" parameter (an optional parameter without value is set to UTF-8).
+	 * @return the charset of the responses, UTF-8 if no declared encoding is supported
+	 */
+	public Charset getOutputCharset() {
+		if (outputEncoding != null) {
+			Charset charset;
+			for (String enc : outputEncoding) {
+				charset = DecodingReader.charset(enc);
+				if (charset != null) {
+					return charset;
+				}
 			}
-		} else {
-			openSearchObject.outputEncoding = new String[]{"UTF-8"};
 		}
-		// return object, if it has all required fields
-		return openSearchObject;
+		return StandardCharsets.UTF_8;
 	}
 	
 	/**
@@ -443,7 +741,9 @@ public class OpenSearchDescription {
 		tag.append(tags != null ? "\n\t" + createTag(CHILD_TAGS, getTags()) : "");
 		tag.append("\n\t" + createTag(CHILD_LONG_NAME, (longName != null ? longName : shortName)));
 		tag.append(attribution != null ? "\n\t" + createTag(CHILD_ATTRIBUTION, attribution) : "");
-		tag.append("\n\t" + createTag(CHILD_SYNDICATION_RIGHT, syndicationRight.toString()));
+		if (syndicationRight != null) {
+			tag.append("\n\t" + createTag(CHILD_SYNDICATION_RIGHT, syndicationRight.toString()));
+		}
 		tag.append("\n\t" + createTag(CHILD_ADULT_CONTENT, (adultContent == true ? "true" : "false")));
 		if (images != null) {
 			for (Image img : images) {
@@ -1,14 +1,20 @@
 package com.pasdam.opensearch.description;
 
-import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.text.ParseException;
 import java.util.regex.Pattern;
 
-import org.w3c.dom.NamedNodeMap;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Node;
 
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
 /**
  * The OpenSearch parameter extension is an enhancement to the OpenSearch description document 
  * that enables an augmented query parameter mechanism via structured XML. The extension also 
@@ -93,62 +99,100 @@ public class Parameter {
 	 * @throws ParseException if element is invalid
 	 */
 	public static Parameter parse(Node parameterElement) throws ParseException{
-		NamedNodeMap attributes = parameterElement.getAttributes();
-		Parameter param = new Parameter();
-		try {
-			param.name = attributes.getNamedItem(ATTR_NAME).getNodeValue().trim();
-		} catch (Exception e) {
+		return parse(parameterElement, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * @param parameterElement - the element containing parameter's attributes
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return a Parameter object
+	 * @throws ParseException if element is invalid
+	 */
+	public static Parameter parse(Node parameterElement, ParseDiagnostics diagnostics) throws ParseException{
+		return create(DomNodes.attribute(parameterElement, ATTR_NAME), 
+				DomNodes.attribute(parameterElement, ATTR_VALUE), 
+				DomNodes.attribute(parameterElement, ATTR_MINIMUM), 
+				DomNodes.attribute(parameterElement, ATTR_MAXIMUM), 
+				diagnostics, -1);
+	}
+	
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the parameter element
+	 * @return a Parameter object
+	 * @throws ParseException if element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Parameter parse(XMLStreamReader reader) throws ParseException, XMLStreamException {
+		return parse(reader, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the parameter element
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return a Parameter object
+	 * @throws ParseException if element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Parameter parse(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		int line = reader.getLocation().getLineNumber();
+		String name = XmlStreams.attribute(reader, ATTR_NAME);
+		String value = XmlStreams.attribute(reader, ATTR_VALUE);
+		String minimum = XmlStreams.attribute(reader, ATTR_MINIMUM);
+		String maximum = XmlStreams.attribute(reader, ATTR_MAXIMUM);
+		XmlStreams.skipElement(reader);
+		return create(name, value, minimum, maximum, diagnostics, line);
+	}
+	
+	/**
+	 * Creates a parameter from the values read by the parsers
+	 * @param name - the value of the name attribute, or null
+	 * @param value - the value of the value attribute, or null
+	 * @param minimum - the value of the minimum attribute, or null
+	 * @param maximum - the value of the maximum attribute, or null
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return a Parameter object
+	 * @throws ParseException if element is invalid
+	 */
+	private static Parameter create(String name, String value, String minimum, String maximum, ParseDiagnostics diagnostics, int line) throws ParseException {
+		if (name == null) {
 			throw new ParseException("Attribute \"" + ATTR_NAME + "\" not found!", 0);
 		}
-		try {
-			param.value = attributes.getNamedItem(ATTR_VALUE).getNodeValue().trim();
+		Parameter param = new Parameter();
+		param.name = name.trim();
+		if (value != null) {
+			param.value = value.trim();
 			if (param.value.endsWith("?}")) {
 				param.minimum = 0;
-				param.value = param.value.replaceAll("?}", "}");
+				param.value = param.value.replace("?}", "}");
 			}
-			try {
-				param.valueType = TemplateParameter.fromString(param.value);
-				if (param.valueType != null) {
-					// if valueType is valid (so this object indicates a template parameter) the value
-					// must be inserted before perform the query
-					param.value = "";
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+			param.valueType = TemplateParameter.fromString(param.value);
+			if (param.valueType != null) {
+				// the value of a template parameter must be inserted before perform the query
+				param.value = "";
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			param.value = "";
 		}
-		
-		Node currentElement;
-		
-		try {
-			currentElement = attributes.getNamedItem(ATTR_MINIMUM);
-			if (currentElement != null) {
-				param.minimum = Integer.parseInt(currentElement.getNodeValue().trim());
-			}
-			if (param.minimum < 0) {
-				param.minimum = 0;
+		if (minimum != null) {
+			if (XmlStreams.isInteger(minimum)) {
+				param.minimum = Math.max(XmlStreams.parseInt(minimum, 0), 0);
+			} else {
+				diagnostics.report(TAG_NAME, "Invalid attribute \"" + ATTR_MINIMUM + "\": " + minimum, line);
 			}
-			
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		
-		try {
-			currentElement = attributes.getNamedItem(ATTR_MAXIMUM);
-			if (currentElement != null) {
-				param.maximum = Integer.parseInt(currentElement.getNodeValue().trim());
+		if (maximum != null) {
+			if (XmlStreams.isInteger(maximum)) {
+				param.maximum = XmlStreams.parseInt(maximum, 0);
+			} else if (!maximum.trim().equals("*")) {
+				diagnostics.report(TAG_NAME, "Invalid attribute \"" + ATTR_MAXIMUM + "\": " + maximum, line);
 			}
-			if (param.maximum < param.minimum) {
-				param.maximum = param.minimum;
-			}
-			
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
-		
+		if (param.maximum < param.minimum) {
+			param.maximum = param.minimum;
+		}
 		return param;
 	}
 	
@@ -208,11 +252,6 @@ public class Parameter {
 	}
 	
 	public String encodeAsQueryString(String value) {
-		try {
-			return name + "=" + URLEncoder.encode(value, "UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
-		return "";
+		return name + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8);
 	}
 }
@@ -2,9 +2,15 @@ package com.pasdam.opensearch.description;
 
 import java.text.ParseException;
 
-import org.w3c.dom.NamedNodeMap;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Node;
 
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
 /**
  * Describes a specific search request that can be made by the search client.
  * @author Paco
@@ -124,66 +130,115 @@ public class Query {
 	 * @throws ParseException if the element is not valid
 	 */
 	public static Query parse(Node queryElement) throws ParseException{
-		NamedNodeMap attributes = queryElement.getAttributes();
+		return parse(queryElement, ParseDiagnostics.DISCARD);
+	}
+
+	/**
+	 * @param queryElement - the element containing parameter's attributes
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return a Query object
+	 * @throws ParseException if the element is not valid
+	 */
+	public static Query parse(Node queryElement, ParseDiagnostics diagnostics) throws ParseException{
+		Query query = new Query();
+		query.role = DomNodes.attribute(queryElement, ATTR_ROLE);
+		query.title = DomNodes.attribute(queryElement, ATTR_TITLE);
+		query.totalResults = Math.max(toInt(DomNodes.attribute(queryElement, ATTR_TOTAL_RESULTS), ATTR_TOTAL_RESULTS, diagnostics, -1), 0);
+		query.searchTerms = DomNodes.attribute(queryElement, ATTR_SEARCH_TERMS);
+		query.count = Math.max(toInt(DomNodes.attribute(queryElement, ATTR_COUNT), ATTR_COUNT, diagnostics, -1), 0);
+		query.startIndex = toInt(DomNodes.attribute(queryElement, ATTR_START_INDEX), ATTR_START_INDEX, diagnostics, -1);
+		query.startPage = toInt(DomNodes.attribute(queryElement, ATTR_START_PAGE), ATTR_START_PAGE, diagnostics, -1);
+		query.language = DomNodes.attribute(queryElement, ATTR_LANGUAGE);
+		query.inputEncoding = DomNodes.attribute(queryElement, ATTR_INPUT_ENCODING);
+		query.outputEncoding = DomNodes.attribute(queryElement, ATTR_OUTPUT_ENCODING);
+		return validate(query);
+	}
+
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the query element
+	 * @return a Query object
+	 * @throws ParseException if the element is not valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Query parse(XMLStreamReader reader) throws ParseException, XMLStreamException {
+		return parse(reader, ParseDiagnostics.DISCARD);
+	}
+
+	/**
+	 * Parses the element the reader is positioned on. When this method returns, the reader
+	 * is positioned on the end of the element.
+	 * @param reader - a reader positioned on the start of the query element
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @return a Query object
+	 * @throws ParseException if the element is not valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Query parse(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		int line = reader.getLocation().getLineNumber();
 		Query query = new Query();
-		try {
-			query.role = attributes.getNamedItem(ATTR_ROLE).getNodeValue().trim();
-		} catch (Exception e) {
+		query.role = trim(XmlStreams.attribute(reader, ATTR_ROLE));
+		query.title = trim(XmlStreams.attribute(reader, ATTR_TITLE));
+		query.totalResults = Math.max(toInt(XmlStreams.attribute(reader, ATTR_TOTAL_RESULTS), ATTR_TOTAL_RESULTS, diagnostics, line), 0);
+		query.searchTerms = trim(XmlStreams.attribute(reader, ATTR_SEARCH_TERMS));
+		query.count = Math.max(toInt(XmlStreams.attribute(reader, ATTR_COUNT), ATTR_COUNT, diagnostics, line), 0);
+		query.startIndex = toInt(XmlStreams.attribute(reader, ATTR_START_INDEX), ATTR_START_INDEX, diagnostics, line);
+		query.startPage = toInt(XmlStreams.attribute(reader, ATTR_START_PAGE), ATTR_START_PAGE, diagnostics, line);
+		query.language = trim(XmlStreams.attribute(reader, ATTR_LANGUAGE));
+		query.inputEncoding = trim(XmlStreams.attribute(reader, ATTR_INPUT_ENCODING));
+		query.outputEncoding = trim(XmlStreams.attribute(reader, ATTR_OUTPUT_ENCODING));
+		XmlStreams.skipElement(reader);
+		return validate(query);
+	}
+	
+	/**
+	 * Checks the required attributes of a parsed query and sets the default values
+	 * @param query - the parsed query
+	 * @return the query
+	 * @throws ParseException if the element is not valid
+	 */
+	private static Query validate(Query query) throws ParseException {
+		if (query.role == null) {
 			throw new ParseException("Attribute \"" + ATTR_ROLE + "\" not found!", 0);
 		}
-		try {
-			query.title = attributes.getNamedItem(ATTR_TITLE).getNodeValue().trim();
-		} catch (Exception e) {
-			query.title = null;
-		}
-		try {
-			query.totalResults = Integer.parseInt(attributes.getNamedItem(ATTR_TOTAL_RESULTS).getNodeValue().trim());
-			if (query.totalResults < 0) {
-				query.totalResults = 0;
-			}
-		} catch (Exception e) {
-			query.totalResults = 0;
-		}
-		try {
-			query.searchTerms = attributes.getNamedItem(ATTR_SEARCH_TERMS).getNodeValue().trim();
-		} catch (Exception e) {
-			query.searchTerms = null;
-		}
-		try {
-			query.count = Integer.parseInt(attributes.getNamedItem(ATTR_COUNT).getNodeValue().trim());
-			if (query.count < 0) {
-				query.count = 0;
-			}
-		} catch (Exception e) {
-			query.count = 0;
-		}
-		try {
-			query.startIndex = Integer.parseInt(attributes.getNamedItem(ATTR_START_INDEX).getNodeValue().trim());
-		} catch (Exception e) {
-			query.startIndex = 0;
-		}
-		try {
-			query.startPage = Integer.parseInt(attributes.getNamedItem(ATTR_START_PAGE).getNodeValue().trim());
-		} catch (Exception e) {
-			query.startPage = 0;
-		}
-		try {
-			query.language = attributes.getNamedItem(ATTR_LANGUAGE).getNodeValue().trim();
-		} catch (Exception e) {
+		if (query.language == null) {
 			query.language = "*";
 		}
-		try {
-			query.inputEncoding = attributes.getNamedItem(ATTR_INPUT_ENCODING).getNodeValue().trim();
-		} catch (Exception e) {
+		if (query.inputEncoding == null) {
 			query.inputEncoding = "UTF-8";
 		}
-		try {
-			query.outputEncoding = attributes.getNamedItem(ATTR_OUTPUT_ENCODING).getNodeValue().trim();
-		} catch (Exception e) {
+		if (query.outputEncoding == null) {
 			query.outputEncoding = "UTF-8";
 		}
 		return query;
 	}
+	
+	/**
+	 * @param value - the value to trim, it could be null
+	 * @return the trimmed value, or null if the input value is null
+	 */
+	private static String trim(String value) {
+		return value != null ? value.trim() : null;
+	}
+	
+	/**
+	 * @param value - the value to convert, it could be null
+	 * @param name - the name of the attribute
+	 * @param diagnostics - the object that collects the invalid values
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return the integer value, or 0 if the input value is null or isn't a number
+	 */
+	private static int toInt(String value, String name, ParseDiagnostics diagnostics, int line) {
+		if (value == null) {
+			return 0;
+		}
+		if (!XmlStreams.isInteger(value)) {
+			diagnostics.report(TAG_NAME, "Invalid attribute \"" + name + "\": " + value, line);
+			return 0;
+		}
+		return XmlStreams.parseInt(value, 0);
+	}
 
 	/**
 	 * Returns the xml tag of this element
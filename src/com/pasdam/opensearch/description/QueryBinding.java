@@ -0,0 +1,101 @@
+package com.pasdam.opensearch.description;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of values for the template parameters of a request, used to expand a
+ * {@link Url} without modifying it (see {@link Url#getUrl(QueryBinding)}).<br/>
+ * The values are stored in a fixed array indexed by {@link TemplateParameter#ordinal()};
+ * the <code>with</code> methods return a new binding, so a binding and the urls it is
+ * applied to can be shared freely between threads.
+ * @author Paco
+ * @version 1.0
+ */
+public final class QueryBinding {
+
+	private static final TemplateParameter[] PARAMETERS = TemplateParameter.values();
+
+	/**
+	 * Binding without values
+	 */
+	public static final QueryBinding EMPTY = new QueryBinding(new String[PARAMETERS.length]);
+
+	private final String[] values;
+
+	private QueryBinding(String[] values) {
+		this.values = values;
+	}
+
+	/**
+	 * Creates a binding with the specified search terms
+	 * @param searchTerms - the keywords desired by the search client
+	 * @return a new binding
+	 */
+	public static QueryBinding searchTerms(String searchTerms) {
+		return EMPTY.with(TemplateParameter.SEARCH_TERM, searchTerms);
+	}
+
+	/**
+	 * Returns a copy of this binding with the specified value
+	 * @param parameter - the template parameter
+	 * @param value - the value of the parameter, null to remove it
+	 * @return a new binding
+	 */
+	public QueryBinding with(TemplateParameter parameter, String value) {
+		String[] values = this.values.clone();
+		values[parameter.ordinal()] = value;
+		return new QueryBinding(values);
+	}
+
+	/**
+	 * Returns a copy of this binding with the specified value
+	 * @param parameter - the template parameter
+	 * @param value - the value of the parameter
+	 * @return a new binding
+	 */
+	public QueryBinding with(TemplateParameter parameter, int value) {
+		return with(parameter, Integer.toString(value));
+	}
+
+	/**
+	 * Returns the value of a parameter
+	 * @param parameter - the template parameter
+	 * @return the value of the parameter, or null if it isn't set
+	 */
+	public String get(TemplateParameter parameter) {
+		return this.values[parameter.ordinal()];
+	}
+
+	/**
+	 * Returns the values indexed by {@link TemplateParameter#ordinal()}, the returned array
+	 * must not be modified
+	 * @return the values of this binding
+	 */
+	String[] values() {
+		return this.values;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof QueryBinding && Arrays.equals(this.values, ((QueryBinding) obj).values);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(this.values);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder("{");
+		for (int i = 0; i < this.values.length; i++) {
+			if (this.values[i] != null) {
+				if (string.length() > 1) {
+					string.append(", ");
+				}
+				string.append(PARAMETERS[i]).append('=').append(this.values[i]);
+			}
+		}
+		return string.append('}').toString();
+	}
+}
@@ -48,17 +48,34 @@ public enum SyndicationRight {
 	 * @throws InvalidParameterException - if the input string is unknown
 	 */
 	public static SyndicationRight fromString(String value) throws InvalidParameterException{
-		if (value.equals("open")) {
+		SyndicationRight right = find(value);
+		if (right == null) {
+			throw new InvalidParameterException("Invalid SyndicationRight value: " + value);
+		}
+		return right;
+	}
+	
+	/**
+	 * Returns the type of the input value, without throwing exceptions for unknown values.
+	 * The value is matched ignoring the case and the surrounding white spaces.
+	 * @param value - the String value to convert, it could be null
+	 * @return the type of the input value, or null if the input is null or unknown
+	 */
+	public static SyndicationRight find(String value) {
+		if (value == null) {
+			return null;
+		}
+		value = value.trim();
+		if (value.equalsIgnoreCase("open")) {
 			return OPEN;
-		} else if (value.equals("limited")) {
+		} else if (value.equalsIgnoreCase("limited")) {
 			return LIMITED;
-		} else if (value.equals("private")) {
+		} else if (value.equalsIgnoreCase("private")) {
 			return PRIVATE;
-		} else if (value.equals("closed")) {
+		} else if (value.equalsIgnoreCase("closed")) {
 			return CLOSED;
-		} else {
-			throw new InvalidParameterException("Invalid SyndicationRight value: " + value);
 		}
+		return null;
 	}
 	
 	/**
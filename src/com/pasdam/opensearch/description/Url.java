@@ -1,15 +1,23 @@
 package com.pasdam.opensearch.description;
 
-import java.security.InvalidParameterException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
-import org.w3c.dom.NamedNodeMap;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.pasdam.opensearch.jfr.TemplateExpansionEvent;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
+
 /**
  * Describes an interface by which a client can make requests for an external resource, such as 
  * search results, search suggestions, or additional description documents.
@@ -33,7 +41,6 @@ public class Url {
 	public static final String ATTR_TEMPLATE = "template";
 	
 	private static final Pattern PATTERN_REL_SEPARATOR = Pattern.compile(" ");
-	private static final Pattern PATTERN_QUERY_STRING_SEPARATOR = Pattern.compile("\\?");
 	private static final Pattern PATTERN_QUERY_STRING_PARAMETERS_SEPARATOR = Pattern.compile("&");
 
 	/**
@@ -96,6 +103,17 @@ public class Url {
 	 */
 	public List<Parameter> parameters = new ArrayList<Parameter>();
 	
+	/**
+	 * The short name of the engine that declares this url, set when its description is 
+	 * parsed; it tags the events reported to {@link OpenSearchMetrics}
+	 */
+	public String engineName;
+	
+	/**
+	 * The compiled template, created the first time the url is expanded with a binding
+	 */
+	private volatile CompiledTemplate compiledTemplate;
+	
 	/**
 	 * This method parse an xml Url element to create an object of this class
 	 * @param urlNode - the url element
@@ -103,108 +121,213 @@ public class Url {
 	 * @throws ParseException If element is invalid
 	 */
 	public static Url parse(Node urlNode) throws ParseException{
-		Url url = new Url();
-		NamedNodeMap attributes = urlNode.getAttributes();
-		
-		try {
-			String[] templateParts = PATTERN_QUERY_STRING_SEPARATOR.split(attributes.getNamedItem(ATTR_TEMPLATE).getNodeValue().trim());
-			url.template = templateParts[0];
-			if (templateParts.length > 1) {
-				url.parameters = parseQueryString(templateParts[1]);
+		return parse(urlNode, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * This method parse an xml Url element to create an object of this class
+	 * @param urlNode - the url element
+	 * @param diagnostics - the object that collects the invalid optional attributes and 
+	 * the skipped parameters
+	 * @return an object of this class, with parsed attributes
+	 * @throws ParseException If element is invalid
+	 */
+	public static Url parse(Node urlNode, ParseDiagnostics diagnostics) throws ParseException{
+		List<Parameter> parameters = new ArrayList<Parameter>();
+		NodeList children = urlNode.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (children.item(i).getNodeName().equals(Parameter.TAG_NAME)) {
+				try {
+					parameters.add(Parameter.parse(children.item(i), diagnostics));
+				} catch (ParseException e) {
+					diagnostics.report(Parameter.TAG_NAME, "Parameter skipped: " + e.getMessage());
+				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw new ParseException("Invalid attribute \"" + ATTR_TEMPLATE + "\"!", 0);
 		}
+		return create(DomNodes.attribute(urlNode, ATTR_TEMPLATE), 
+				DomNodes.attribute(urlNode, ATTR_TYPE), 
+				DomNodes.attribute(urlNode, ATTR_REL), 
+				DomNodes.attribute(urlNode, ATTR_INDEX_OFFSET), 
+				DomNodes.attribute(urlNode, ATTR_PAGE_OFFSET), 
+				DomNodes.attribute(urlNode, ATTR_PARAMETERS_METHOD), 
+				DomNodes.attribute(urlNode, ATTR_PARAMETERS_ENCTYPE), 
+				parameters, diagnostics, -1);
+	}
+	
+	/**
+	 * This method parses the Url element the reader is positioned on, including its 
+	 * parameters. When this method returns, the reader is positioned on the end of the 
+	 * element, even if the element is invalid.
+	 * @param reader - a reader positioned on the start of the url element
+	 * @return an object of this class, with parsed attributes
+	 * @throws ParseException If element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Url parse(XMLStreamReader reader) throws ParseException, XMLStreamException {
+		return parse(reader, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * This method parses the Url element the reader is positioned on, including its 
+	 * parameters. When this method returns, the reader is positioned on the end of the 
+	 * element, even if the element is invalid.
+	 * @param reader - a reader positioned on the start of the url element
+	 * @param diagnostics - the object that collects the invalid optional attributes and 
+	 * the skipped parameters
+	 * @return an object of this class, with parsed attributes
+	 * @throws ParseException If element is invalid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static Url parse(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		int line = reader.getLocation().getLineNumber();
+		String template = XmlStreams.attribute(reader, ATTR_TEMPLATE);
+		String type = XmlStreams.attribute(reader, ATTR_TYPE);
+		String rel = XmlStreams.attribute(reader, ATTR_REL);
+		String indexOffset = XmlStreams.attribute(reader, ATTR_INDEX_OFFSET);
+		String pageOffset = XmlStreams.attribute(reader, ATTR_PAGE_OFFSET);
+		String method = XmlStreams.attribute(reader, ATTR_PARAMETERS_METHOD);
+		String enctype = XmlStreams.attribute(reader, ATTR_PARAMETERS_ENCTYPE);
 		
-		try {
-			url.type = attributes.getNamedItem(ATTR_TYPE).getNodeValue().trim();
-		} catch (Exception e) {}
-		if (url.type != null && !url.type.matches("^[-\\w]+/[-\\w\\+]+$")) {
-			throw new ParseException("Invalid attribute \"" + ATTR_TYPE + "\"!", 0);
-		}
-			
-		Node attribute = attributes.getNamedItem(ATTR_REL);
-		url.rel = new ArrayList<UrlRole>();
-		if (attribute != null) {
-			
-			String relText = attribute.getNodeValue();
-			if (relText != null) {
-				
-				relText = relText.trim();
-				if (relText.length() > 0) {
-			
-					String[] relValues = PATTERN_REL_SEPARATOR.split(relText);
-					for (String relValue : relValues) {
-						try {
-							url.rel.add(UrlRole.fromString(relValue));
-						} catch (InvalidParameterException e) {
-							e.printStackTrace();
-						}
+		// the children are read before validating the attributes, so that the reader
+		// is always left at the end of this element
+		List<Parameter> parameters = new ArrayList<Parameter>();
+		int event;
+		while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (XmlStreams.qualifiedName(reader).equals(Parameter.TAG_NAME)) {
+					try {
+						parameters.add(Parameter.parse(reader, diagnostics));
+					} catch (ParseException e) {
+						diagnostics.report(Parameter.TAG_NAME, "Parameter skipped: " + e.getMessage(), reader.getLocation());
 					}
+				} else {
+					XmlStreams.skipElement(reader);
 				}
+			} else if (event == XMLStreamConstants.END_DOCUMENT) {
+				throw new XMLStreamException("Unexpected end of document", reader.getLocation());
 			}
 		}
-		
-		if (url.rel.size() == 0) {
-			url.rel.add(UrlRole.RESULTS); // default value
+		return create(template, type, rel, indexOffset, pageOffset, method, enctype, parameters, diagnostics, line);
+	}
+	
+	/**
+	 * Creates an url from the values read by the parsers
+	 * @param template - the value of the template attribute, or null
+	 * @param type - the value of the type attribute, or null
+	 * @param rel - the value of the rel attribute, or null
+	 * @param indexOffset - the value of the indexOffset attribute, or null
+	 * @param pageOffset - the value of the pageOffset attribute, or null
+	 * @param method - the value of the method attribute, or null
+	 * @param enctype - the value of the enctype attribute, or null
+	 * @param parameters - the parameters declared by the children of the element
+	 * @param diagnostics - the object that collects the invalid optional attributes
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return an object of this class, with parsed attributes
+	 * @throws ParseException If element is invalid
+	 */
+	private static Url create(String template, String type, String rel, String indexOffset, String pageOffset, 
+			String method, String enctype, List<Parameter> parameters, ParseDiagnostics diagnostics, int line) throws ParseException {
+		Url url = new Url();
+		if (template == null || template.trim().length() == 0) {
+			throw new ParseException("Invalid attribute \"" + ATTR_TEMPLATE + "\"!", 0);
 		}
-		
-		attribute = attributes.getNamedItem(ATTR_INDEX_OFFSET);
-		if (attribute != null) {
+		template = template.trim();
+		int queryStringStart = queryStringStart(template);
+		if (queryStringStart >= 0) {
+			url.template = template.substring(0, queryStringStart);
 			try {
-				url.indexOffset = Integer.parseInt(attribute.getNodeValue().trim());
-			} catch (Exception e) {
-				e.printStackTrace();
-				url.indexOffset = 1;
+				url.parameters = parseQueryString(template.substring(queryStringStart + 1));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Invalid attribute \"" + ATTR_TEMPLATE + "\"!", 0);
 			}
 		} else {
-			url.indexOffset = 1;
+			url.template = template;
 		}
+		url.parameters.addAll(parameters);
 		
-		attribute = attributes.getNamedItem(ATTR_PAGE_OFFSET);
-		if (attribute != null) {
-			try {
-				url.pageOffset = Integer.parseInt(attribute.getNodeValue().trim());
-				
-			} catch (Exception e) {
-				url.pageOffset = 1;
-				e.printStackTrace();
+		if (type != null) {
+			url.type = type.trim();
+			if (!url.type.matches("^[-\\w]+/[-\\w\\+]+$")) {
+				throw new ParseException("Invalid attribute \"" + ATTR_TYPE + "\"!", 0);
 			}
-			
-		} else {
-			url.pageOffset = 1;
 		}
-			
-		try {
-			url.method = attributes.getNamedItem(ATTR_PARAMETERS_METHOD).getNodeValue().trim();
-			if (!url.method.equalsIgnoreCase("get") || !url.method.equalsIgnoreCase("post")) {
-				url.method = "get";
+		
+		url.rel = new ArrayList<UrlRole>();
+		if (rel != null && rel.trim().length() > 0) {
+			UrlRole role;
+			for (String relValue : PATTERN_REL_SEPARATOR.split(rel.trim())) {
+				role = UrlRole.find(relValue);
+				if (role != null) {
+					url.rel.add(role);
+				} else {
+					diagnostics.report(TAG_NAME, "Unknown role ignored: " + relValue, line);
+				}
+			}
+		}
+		if (url.rel.size() == 0) {
+			url.rel.add(UrlRole.RESULTS); // default value
+		}
+		
+		url.indexOffset = toInt(indexOffset, ATTR_INDEX_OFFSET, url.indexOffset, diagnostics, line);
+		url.pageOffset = toInt(pageOffset, ATTR_PAGE_OFFSET, url.pageOffset, diagnostics, line);
+		
+		if (method != null) {
+			method = method.trim();
+			if (method.equalsIgnoreCase("get") || method.equalsIgnoreCase("post")) {
+				url.method = method;
+			} else {
+				diagnostics.report(TAG_NAME, "Invalid attribute \"" + ATTR_PARAMETERS_METHOD + "\": " + method, line);
 			}
-		} catch (Exception e) {
-			url.method = "get";
 		}
 		
-		try {
-			url.enctype = attributes.getNamedItem(ATTR_PARAMETERS_ENCTYPE).getNodeValue().trim();
-		} catch (Exception e) {
-			url.enctype = "application/x-www-form-urlencoded";
+		if (enctype != null) {
+			url.enctype = enctype.trim();
 		}
 		if (!url.enctype.matches("^[-\\w]+/[-\\w\\+]+$")) {
 			throw new ParseException("Invalid attribute \"" + ATTR_PARAMETERS_ENCTYPE + "\"!", 0);
 		}
-		
-		NodeList parameters = urlNode.getChildNodes();
-		for (int i = 0; i < parameters.getLength(); i++) {
-			try {
-				if (parameters.item(i).getNodeName().equals(Parameter.TAG_NAME)) {
-					url.parameters.add(Parameter.parse(parameters.item(i)));
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+		return url;
+	}
+	
+	/**
+	 * @param value - the value of the attribute, it could be null
+	 * @param name - the name of the attribute
+	 * @param defaultValue - the value returned if the attribute is missing or invalid
+	 * @param diagnostics - the object that collects the invalid values
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return the integer value of the attribute
+	 */
+	private static int toInt(String value, String name, int defaultValue, ParseDiagnostics diagnostics, int line) {
+		if (value == null) {
+			return defaultValue;
+		}
+		if (!XmlStreams.isInteger(value)) {
+			diagnostics.report(TAG_NAME, "Invalid attribute \"" + name + "\": " + value, line);
+			return defaultValue;
+		}
+		return XmlStreams.parseInt(value, defaultValue);
+	}
+	
+	/**
+	 * Returns the position of the "?" that starts the query string of the template, ignoring 
+	 * the ones that mark optional parameters (i.e. "{startPage?}")
+	 * @param template - the template to check
+	 * @return the position of the query string separator, or -1 if the template hasn't it
+	 */
+	private static int queryStringStart(String template) {
+		int depth = 0;
+		char c;
+		for (int i = 0; i < template.length(); i++) {
+			c = template.charAt(i);
+			if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth = Math.max(depth - 1, 0);
+			} else if (c == '?' && depth == 0) {
+				return i;
 			}
 		}
-		return url;
+		return -1;
 	}
 	
 	/**
@@ -242,6 +365,69 @@ public class Url {
 		return url;
 	}
 	
+	/**
+	 * Compiles the template of this url and its parameters, so that it can be expanded 
+	 * many times without parsing it again. Changes to this object made after the 
+	 * compilation are not reflected in the returned template.
+	 * @return the compiled template
+	 */
+	public CompiledTemplate compile() {
+		return CompiledTemplate.compile(this);
+	}
+	
+	/**
+	 * Expands the template with the values of the binding. Unlike {@link #getUrl()}, this 
+	 * method doesn't use nor modify the values stored in the parameters, so the same url 
+	 * can be expanded concurrently by many threads.<br/>
+	 * The template is compiled the first time this method is called, changes to the 
+	 * template or to the parameters made after that are not reflected in the expanded url.
+	 * @param binding - values of the template parameters
+	 * @return a string representing the url, with all parameters
+	 */
+	public String getUrl(QueryBinding binding) {
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		TemplateExpansionEvent event = new TemplateExpansionEvent();
+		event.begin();
+		CompiledTemplate template = getCompiledTemplate();
+		String url = template.expand(binding);
+		event.end();
+		if (event.shouldCommit()) {
+			event.engine = this.engineName;
+			event.role = getRole().toString();
+			event.template = template.toString();
+			event.length = url.length();
+			event.commit();
+		}
+		if (metrics.isEnabled()) {
+			metrics.expanded(this.engineName, getRole(), System.nanoTime() - start);
+		}
+		return url;
+	}
+	
+	/**
+	 * @return the first role of this url, {@link UrlRole#RESULTS} if it hasn't roles
+	 */
+	public UrlRole getRole() {
+		List<UrlRole> rel = this.rel;
+		return rel != null && !rel.isEmpty() ? rel.get(0) : UrlRole.RESULTS;
+	}
+	
+	/**
+	 * Returns the compiled template of this url, compiling it the first time this 
+	 * method is called
+	 * @return the compiled template
+	 */
+	public CompiledTemplate getCompiledTemplate() {
+		CompiledTemplate template = this.compiledTemplate;
+		if (template == null) {
+			// concurrent callers could compile it more than once, they get equivalent templates
+			template = compile();
+			this.compiledTemplate = template;
+		}
+		return template;
+	}
+	
 	/**
 	 * Clear all parameters values
 	 */
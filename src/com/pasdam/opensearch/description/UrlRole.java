@@ -49,7 +49,22 @@ public enum UrlRole {
 	 * @throws InvalidParameterException - if role is an unknown value
 	 */
 	public static UrlRole fromString(String role) throws InvalidParameterException {
-		if(role.equalsIgnoreCase(ROLE_RESULTS)) {
+		UrlRole value = find(role);
+		if (value == null) {
+			throw new InvalidParameterException("Invalid Url role: " + role);
+		}
+		return value;
+	}
+	
+	/**
+	 * Returns the role represented by a string, without throwing exceptions for unknown values
+	 * @param role - the input role, it could be null
+	 * @return the role, or null if the input is null or an unknown value
+	 */
+	public static UrlRole find(String role) {
+		if (role == null) {
+			return null;
+		} else if(role.equalsIgnoreCase(ROLE_RESULTS)) {
 			return RESULTS;
 		} else if(role.equalsIgnoreCase(ROLE_SUGGESTIONS)) {
 			return SUGGESTIONS;
@@ -57,8 +72,7 @@ public enum UrlRole {
 			return SELF;
 		} else if(role.equalsIgnoreCase(ROLE_COLLECTION)) {
 			return COLLECTION;
-		} else {
-			throw new InvalidParameterException("Invalid Url role: " + role);
 		}
+		return null;
 	}
 }
@@ -0,0 +1,39 @@
+package com.pasdam.opensearch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of the parse of a description document.<br/>
+ * The event is committed also when the parse fails; in that case the engine is null and
+ * the error is set.
+ * @author Paco
+ * @version 1.0
+ */
+@Name("com.pasdam.opensearch.DescriptionParse")
+@Label("Description Parse")
+@Category("OpenSearch")
+@Description("Parse of an OpenSearch description document")
+public final class DescriptionParseEvent extends Event {
+
+	@Label("Engine")
+	@Description("Short name of the engine")
+	public String engine;
+
+	@Label("Bytes")
+	@Description("Size of the document, 0 if it is read from a stream")
+	@DataAmount
+	public long bytes;
+
+	@Label("Urls")
+	@Description("Number of url templates declared by the description")
+	public int urls;
+
+	@Label("Error")
+	@Description("The error that prevented the parse, null if it succeeded")
+	public String error;
+}
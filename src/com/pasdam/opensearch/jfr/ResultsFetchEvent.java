@@ -0,0 +1,43 @@
+package com.pasdam.opensearch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of the download of a page of search results, from the request to
+ * the last byte of the body; the parse is a separate {@link ResultsParseEvent}.<br/>
+ * The event is committed by the thread that completes the request.
+ * @author Paco
+ * @version 1.0
+ */
+@Name("com.pasdam.opensearch.ResultsFetch")
+@Label("Results Fetch")
+@Category("OpenSearch")
+@Description("Download of a page of search results")
+public final class ResultsFetchEvent extends Event {
+
+	@Label("Engine")
+	@Description("Short name of the engine")
+	public String engine;
+
+	@Label("Url")
+	@Description("The requested url")
+	public String url;
+
+	@Label("Status")
+	@Description("HTTP status of the response, 0 if there is no response")
+	public int status;
+
+	@Label("Bytes")
+	@Description("Size of the body")
+	@DataAmount
+	public long bytes;
+
+	@Label("Error")
+	@Description("The error of the request, null if it succeeded")
+	public String error;
+}
@@ -0,0 +1,38 @@
+package com.pasdam.opensearch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of the parse of a page of search results (RSS or Atom). When the
+ * page is parsed while it is read from the network, the duration includes the download.
+ * @author Paco
+ * @version 1.0
+ */
+@Name("com.pasdam.opensearch.ResultsParse")
+@Label("Results Parse")
+@Category("OpenSearch")
+@Description("Parse of a page of search results")
+public final class ResultsParseEvent extends Event {
+
+	@Label("Engine")
+	@Description("Short name of the engine, null if it isn't known")
+	public String engine;
+
+	@Label("Bytes")
+	@Description("Size of the document, 0 if it is read from a stream")
+	@DataAmount
+	public long bytes;
+
+	@Label("Results")
+	@Description("Number of valid results")
+	public int items;
+
+	@Label("Error")
+	@Description("The error that prevented the parse, null if it succeeded")
+	public String error;
+}
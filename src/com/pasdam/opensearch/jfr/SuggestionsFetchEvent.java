@@ -0,0 +1,47 @@
+package com.pasdam.opensearch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a suggestions request, from the request to the parsed
+ * suggestions. The suggestions are small, so the parse isn't a separate event.<br/>
+ * The event of an asynchronous request is committed by the thread that completes it.
+ * @author Paco
+ * @version 1.0
+ */
+@Name("com.pasdam.opensearch.SuggestionsFetch")
+@Label("Suggestions Fetch")
+@Category("OpenSearch")
+@Description("Request and parse of the suggestions for a query")
+public final class SuggestionsFetchEvent extends Event {
+
+	@Label("Engine")
+	@Description("Short name of the engine")
+	public String engine;
+
+	@Label("Url")
+	@Description("The requested url")
+	public String url;
+
+	@Label("Status")
+	@Description("HTTP status of the response, 0 if it isn't known")
+	public int status;
+
+	@Label("Bytes")
+	@Description("Size of the response, 0 if it is read from a stream")
+	@DataAmount
+	public long bytes;
+
+	@Label("Suggestions")
+	@Description("Number of completions")
+	public int items;
+
+	@Label("Error")
+	@Description("The error of the request, null if it succeeded")
+	public String error;
+}
@@ -0,0 +1,38 @@
+package com.pasdam.opensearch.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the expansion of an url template. Expansions are frequent and
+ * fast, so the event is recorded without stack trace.
+ * @author Paco
+ * @version 1.0
+ */
+@Name("com.pasdam.opensearch.TemplateExpansion")
+@Label("Template Expansion")
+@Category("OpenSearch")
+@Description("Expansion of an url template with the values of a query")
+@StackTrace(false)
+public final class TemplateExpansionEvent extends Event {
+
+	@Label("Engine")
+	@Description("Short name of the engine")
+	public String engine;
+
+	@Label("Role")
+	@Description("Role of the url")
+	public String role;
+
+	@Label("Template")
+	@Description("The url template, without the values")
+	public String template;
+
+	@Label("Length")
+	@Description("Length of the expanded url")
+	public int length;
+}
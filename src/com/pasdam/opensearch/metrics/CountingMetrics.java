@@ -0,0 +1,285 @@
+package com.pasdam.opensearch.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.pasdam.opensearch.description.UrlRole;
+
+/**
+ * Metrics that keep counters by engine and url role, i.e. to find the engines that are
+ * slow, that fail or whose documents are expensive to parse:
+ * <pre>
+ * CountingMetrics metrics = new CountingMetrics();
+ * OpenSearchMetrics.set(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ * The events don't allocate memory, except the first one of each engine and role.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class CountingMetrics extends OpenSearchMetrics {
+
+	/**
+	 * Key of the events without engine
+	 */
+	private static final String UNKNOWN_ENGINE = "";
+
+	private static final int ROLES = UrlRole.values().length;
+
+	private final ConcurrentMap<String, Counters[]> engines = new ConcurrentHashMap<String, Counters[]>();
+
+	@Override
+	public void fetched(String engine, UrlRole role, long nanos, long bytes) {
+		Counters counters = counters(engine, role);
+		counters.record(Stage.FETCH, nanos);
+		counters.bytes.add(bytes);
+	}
+
+	@Override
+	public void parsed(String engine, UrlRole role, long nanos, int items) {
+		Counters counters = counters(engine, role);
+		counters.record(Stage.PARSE, nanos);
+		counters.items.add(items);
+	}
+
+	@Override
+	public void expanded(String engine, UrlRole role, long nanos) {
+		counters(engine, role).record(Stage.EXPAND, nanos);
+	}
+
+	@Override
+	public void failed(String engine, UrlRole role, Stage stage, FailureCause cause, Throwable error) {
+		counters(engine, role).failures[cause.ordinal()].increment();
+	}
+
+	@Override
+	public void cacheAccessed(String engine, UrlRole role, boolean hit) {
+		Counters counters = counters(engine, role);
+		(hit ? counters.cacheHits : counters.cacheMisses).increment();
+	}
+
+	/**
+	 * Returns the counters of an engine and role, creating them the first time
+	 * @param engine - the short name of the engine, null for the events without engine
+	 * @param role - the role of the url
+	 * @return the counters
+	 */
+	public Counters getCounters(String engine, UrlRole role) {
+		return counters(engine, role);
+	}
+
+	/**
+	 * @return the counters of all the engines and roles that received events
+	 */
+	public List<Counters> getAll() {
+		List<Counters> all = new ArrayList<Counters>();
+		for (Counters[] roles : this.engines.values()) {
+			for (Counters counters : roles) {
+				if (counters != null) {
+					all.add(counters);
+				}
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Removes all the counters
+	 */
+	public void clear() {
+		this.engines.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder table = new StringBuilder(String.format(Locale.ROOT, "%-20s %-12s %10s %10s %10s %10s %12s %10s %10s %10s %10s",
+				"Engine", "Role", "fetches", "fetch (ms)", "parses", "parse (ms)", "bytes", "items", "expansions", "failures", "cache hits"));
+		for (Counters counters : getAll()) {
+			table.append('\n').append(counters);
+		}
+		return table.toString();
+	}
+
+	/**
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url, if null {@link UrlRole#RESULTS}
+	 * @return the counters of the engine and role
+	 */
+	private Counters counters(String engine, UrlRole role) {
+		String key = engine != null ? engine : UNKNOWN_ENGINE;
+		if (role == null) {
+			role = UrlRole.RESULTS;
+		}
+		Counters[] roles = this.engines.get(key);
+		if (roles == null) {
+			roles = new Counters[ROLES];
+			Counters[] previous = this.engines.putIfAbsent(key, roles);
+			if (previous != null) {
+				roles = previous;
+			}
+		}
+		Counters counters = roles[role.ordinal()];
+		if (counters == null) {
+			synchronized (roles) {
+				counters = roles[role.ordinal()];
+				if (counters == null) {
+					counters = new Counters(engine, role);
+					roles[role.ordinal()] = counters;
+				}
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * The counters of an engine and role
+	 */
+	public static class Counters {
+
+		private final String engine;
+
+		private final UrlRole role;
+
+		private final LongAdder[] counts = newAdders(Stage.values().length);
+
+		private final LongAdder[] nanos = newAdders(Stage.values().length);
+
+		private final LongAdder[] failures = newAdders(FailureCause.values().length);
+
+		private final LongAdder bytes = new LongAdder();
+
+		private final LongAdder items = new LongAdder();
+
+		private final LongAdder cacheHits = new LongAdder();
+
+		private final LongAdder cacheMisses = new LongAdder();
+
+		Counters(String engine, UrlRole role) {
+			this.engine = engine;
+			this.role = role;
+		}
+
+		/**
+		 * @return the short name of the engine, or null for the events without engine
+		 */
+		public String getEngine() {
+			return this.engine;
+		}
+
+		/**
+		 * @return the role of the url
+		 */
+		public UrlRole getRole() {
+			return this.role;
+		}
+
+		/**
+		 * @param stage - the stage
+		 * @return the number of successful executions of the stage
+		 */
+		public long getCount(Stage stage) {
+			return this.counts[stage.ordinal()].sum();
+		}
+
+		/**
+		 * @param stage - the stage
+		 * @return the total time spent in the successful executions of the stage, in nanoseconds
+		 */
+		public long getTotalNanos(Stage stage) {
+			return this.nanos[stage.ordinal()].sum();
+		}
+
+		/**
+		 * @param stage - the stage
+		 * @return the mean time of an execution of the stage, in nanoseconds, 0 if there are none
+		 */
+		public double getMeanNanos(Stage stage) {
+			long count = getCount(stage);
+			return count > 0 ? (double) getTotalNanos(stage) / count : 0;
+		}
+
+		/**
+		 * @return the number of bytes downloaded
+		 */
+		public long getBytes() {
+			return this.bytes.sum();
+		}
+
+		/**
+		 * @return the number of items parsed
+		 */
+		public long getItems() {
+			return this.items.sum();
+		}
+
+		/**
+		 * @param cause - the cause
+		 * @return the number of failures with the cause
+		 */
+		public long getFailures(FailureCause cause) {
+			return this.failures[cause.ordinal()].sum();
+		}
+
+		/**
+		 * @return the number of failures
+		 */
+		public long getFailures() {
+			long failures = 0;
+			for (LongAdder adder : this.failures) {
+				failures += adder.sum();
+			}
+			return failures;
+		}
+
+		/**
+		 * @return the number of documents found in a cache
+		 */
+		public long getCacheHits() {
+			return this.cacheHits.sum();
+		}
+
+		/**
+		 * @return the number of documents not found in a cache
+		 */
+		public long getCacheMisses() {
+			return this.cacheMisses.sum();
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-20s %-12s %10d %10.3f %10d %10.3f %12d %10d %10d %10d %10s",
+					this.engine != null ? this.engine : "-", this.role,
+					getCount(Stage.FETCH), getMeanNanos(Stage.FETCH) / 1e6,
+					getCount(Stage.PARSE), getMeanNanos(Stage.PARSE) / 1e6,
+					getBytes(), getItems(), getCount(Stage.EXPAND), getFailures(),
+					getCacheHits() + "/" + (getCacheHits() + getCacheMisses()));
+		}
+
+		/**
+		 * @param stage - the stage
+		 * @param nanos - the time spent
+		 */
+		void record(Stage stage, long nanos) {
+			this.counts[stage.ordinal()].increment();
+			this.nanos[stage.ordinal()].add(nanos);
+		}
+
+		/**
+		 * @param size - the number of adders
+		 * @return a new array of adders
+		 */
+		private static LongAdder[] newAdders(int size) {
+			LongAdder[] adders = new LongAdder[size];
+			for (int i = 0; i < size; i++) {
+				adders[i] = new LongAdder();
+			}
+			return adders;
+		}
+	}
+}
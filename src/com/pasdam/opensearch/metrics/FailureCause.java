@@ -0,0 +1,90 @@
+package com.pasdam.opensearch.metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.http.HttpTimeoutException;
+import java.text.ParseException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * The causes of the failures reported to {@link OpenSearchMetrics}
+ * @author Paco
+ * @version 1.0
+ */
+public enum FailureCause {
+
+	/**
+	 * The request or the connection timed out
+	 */
+	TIMEOUT,
+
+	/**
+	 * The server responded with an unexpected HTTP status
+	 */
+	HTTP_STATUS,
+
+	/**
+	 * The document cannot be read: connection or file errors
+	 */
+	IO,
+
+	/**
+	 * The xml document isn't well formed
+	 */
+	MALFORMED,
+
+	/**
+	 * The document isn't a valid description, search response or suggestions array
+	 */
+	INVALID,
+
+	/**
+	 * The request has been cancelled
+	 */
+	CANCELLED,
+
+	/**
+	 * Any other error
+	 */
+	OTHER;
+
+	/**
+	 * Classifies an error; the wrappers of the futures are skipped
+	 * @param error - the error, it could be null
+	 * @return the cause of the error, {@link #OTHER} if it is unknown or null
+	 */
+	public static FailureCause of(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		if (error instanceof HttpTimeoutException || error instanceof InterruptedIOException) {
+			// SocketTimeoutException is an InterruptedIOException
+			return TIMEOUT;
+		}
+		if (error instanceof HttpStatusError) {
+			return HTTP_STATUS;
+		}
+		if (error instanceof XMLStreamException) {
+			// the parser wraps the errors of the stream it reads
+			return ((XMLStreamException) error).getNestedException() instanceof IOException ? IO : MALFORMED;
+		}
+		if (error instanceof MalformedURLException) {
+			return INVALID;
+		}
+		if (error instanceof IOException) {
+			return IO;
+		}
+		if (error instanceof ParseException || error instanceof IllegalArgumentException) {
+			return INVALID;
+		}
+		if (error instanceof CancellationException) {
+			return CANCELLED;
+		}
+		return OTHER;
+	}
+}
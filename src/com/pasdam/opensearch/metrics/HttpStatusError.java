@@ -0,0 +1,16 @@
+package com.pasdam.opensearch.metrics;
+
+/**
+ * Implemented by the exceptions thrown when a server responds with an unexpected HTTP 
+ * status, so that {@link FailureCause#of(Throwable)} classifies them as 
+ * {@link FailureCause#HTTP_STATUS} without depending on the packages that throw them.
+ * @author Paco
+ * @version 1.0
+ */
+public interface HttpStatusError {
+
+	/**
+	 * @return the status of the response
+	 */
+	int getStatusCode();
+}
@@ -0,0 +1,109 @@
+package com.pasdam.opensearch.metrics;
+
+import com.pasdam.opensearch.description.UrlRole;
+
+/**
+ * Listener of the work done by the library: the time spent downloading, parsing and
+ * expanding, the bytes read, the items parsed, the failures and the cache accesses. The
+ * events are tagged by the short name of the engine and by the role of the url; the
+ * engine is null when it isn't known, i.e. for a document parsed from a stream.<br/>
+ * The library reports to the instance set by {@link #set(OpenSearchMetrics)}; by default
+ * it is {@link #NOOP}, that is disabled (see {@link #isEnabled()}): in that case the
+ * instrumented code doesn't read the clock and doesn't allocate anything.<br/>
+ * Implementations override only the methods of the events they need. The methods are
+ * called on the threads doing the work, including the threads of the HttpClient, so they
+ * must be thread safe and fast, and they must not throw exceptions.
+ * @author Paco
+ * @version 1.0
+ * @see CountingMetrics
+ */
+public abstract class OpenSearchMetrics {
+
+	/**
+	 * The default instance, that ignores all the events
+	 */
+	public static final OpenSearchMetrics NOOP = new OpenSearchMetrics() {
+
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+	};
+
+	private static volatile OpenSearchMetrics current = NOOP;
+
+	/**
+	 * @return the instance that receives the events of the library
+	 */
+	public static OpenSearchMetrics get() {
+		return current;
+	}
+
+	/**
+	 * Sets the instance that receives the events of the library
+	 * @param metrics - the instance, null to disable the metrics
+	 */
+	public static void set(OpenSearchMetrics metrics) {
+		current = metrics != null ? metrics : NOOP;
+	}
+
+	/**
+	 * @return true if this object records the events; if false the library doesn't
+	 * measure them and doesn't call the other methods
+	 */
+	public boolean isEnabled() {
+		return true;
+	}
+
+	/**
+	 * Called when a document has been downloaded
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url of the document
+	 * @param nanos - the time spent, from the request to the last byte of the body
+	 * @param bytes - the size of the body
+	 */
+	public void fetched(String engine, UrlRole role, long nanos, long bytes) {
+	}
+
+	/**
+	 * Called when a document has been parsed
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url of the document
+	 * @param nanos - the time spent; when the document is parsed while it is read from
+	 * the network, it includes the download of the body
+	 * @param items - the number of results, suggestions or urls (for a description)
+	 */
+	public void parsed(String engine, UrlRole role, long nanos, int items) {
+	}
+
+	/**
+	 * Called when an url template has been expanded
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url
+	 * @param nanos - the time spent, including the compilation of the template the first
+	 * time it is expanded
+	 */
+	public void expanded(String engine, UrlRole role, long nanos) {
+	}
+
+	/**
+	 * Called when a download or a parse fails
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url of the document
+	 * @param stage - the stage that failed
+	 * @param cause - the cause of the failure
+	 * @param error - the error, it could be null
+	 */
+	public void failed(String engine, UrlRole role, Stage stage, FailureCause cause, Throwable error) {
+	}
+
+	/**
+	 * Called when a cache is asked for a document
+	 * @param engine - the short name of the engine, or null
+	 * @param role - the role of the url of the document
+	 * @param hit - true if the document has been found in the cache (or it is being
+	 * fetched by another caller), false if it must be downloaded
+	 */
+	public void cacheAccessed(String engine, UrlRole role, boolean hit) {
+	}
+}
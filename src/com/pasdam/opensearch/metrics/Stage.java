@@ -0,0 +1,25 @@
+package com.pasdam.opensearch.metrics;
+
+/**
+ * The stages of the work measured by {@link OpenSearchMetrics}
+ * @author Paco
+ * @version 1.0
+ */
+public enum Stage {
+
+	/**
+	 * Download of a document (description, results or suggestions), from the request to
+	 * the last byte of the body
+	 */
+	FETCH,
+
+	/**
+	 * Parse of a downloaded document
+	 */
+	PARSE,
+
+	/**
+	 * Expansion of an url template with the values of a query
+	 */
+	EXPAND
+}
@@ -0,0 +1,376 @@
+package com.pasdam.opensearch.registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.jfr.DescriptionParseEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.xml.XmlStreams;
+
+/**
+ * Loads all the description documents of a directory tree, parsing the files in parallel.<br/>
+ * The files are parsed by the tasks of an executor: by default the common fork/join pool,
+ * whose parallelism follows the number of cores, but any executor can be used, i.e. one
+ * that starts a virtual thread per task (it needs JDK 21, while the library targets Java 11,
+ * so it must be passed by the caller). Unlike {@link OpenSearchDescription#parse(java.io.File)},
+ * errors are not printed: the loader collects them, with the file and the kind of error,
+ * and reports them with the descriptions and the throughput of the load.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class DescriptionLoader {
+
+	/**
+	 * Extension of the files loaded by default
+	 */
+	public static final String DEFAULT_EXTENSION = ".xml";
+
+	private final Executor executor;
+
+	private final String extension;
+
+	/**
+	 * Creates a loader that parses the ".xml" files in the common fork/join pool
+	 */
+	public DescriptionLoader() {
+		this(ForkJoinPool.commonPool(), DEFAULT_EXTENSION);
+	}
+
+	/**
+	 * Constructor
+	 * @param executor - the executor of the parse tasks
+	 * @param extension - the extension of the files to load, compared ignoring case
+	 */
+	public DescriptionLoader(Executor executor, String extension) {
+		if (executor == null || extension == null) {
+			throw new IllegalArgumentException("Executor and extension cannot be null");
+		}
+		this.executor = executor;
+		this.extension = extension.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Loads the descriptions of a directory and of its subdirectories
+	 * @param directory - the root of the tree
+	 * @return the outcome of the load
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public Result load(Path directory) throws IOException {
+		List<Path> files;
+		try (Stream<Path> tree = Files.walk(directory)) {
+			files = tree.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(this.extension))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		return load(files);
+	}
+
+	/**
+	 * Loads the descriptions stored in the files
+	 * @param files - the files to load
+	 * @return the outcome of the load
+	 */
+	public Result load(List<Path> files) {
+		long start = System.nanoTime();
+		List<CompletableFuture<Outcome>> tasks = new ArrayList<CompletableFuture<Outcome>>(files.size());
+		for (final Path file : files) {
+			tasks.add(CompletableFuture.supplyAsync(() -> parse(file), this.executor));
+		}
+		List<OpenSearchDescription> descriptions = new ArrayList<OpenSearchDescription>(files.size());
+		List<Path> paths = new ArrayList<Path>(files.size());
+		List<LoadError> errors = new ArrayList<LoadError>();
+		long bytes = 0;
+		Outcome outcome;
+		for (CompletableFuture<Outcome> task : tasks) {
+			try {
+				outcome = task.join();
+			} catch (CompletionException e) {
+				// parse() doesn't throw, the executor rejected the task
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+			bytes += outcome.bytes;
+			if (outcome.error != null) {
+				errors.add(outcome.error);
+			} else {
+				descriptions.add(outcome.description);
+				paths.add(outcome.file);
+			}
+		}
+		return new Result(descriptions, paths, errors, files.size(), bytes, System.nanoTime() - start);
+	}
+
+	/**
+	 * Parses a file
+	 * @param file - the file to parse
+	 * @return the description, or the error
+	 */
+	private static Outcome parse(Path file) {
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		byte[] content;
+		try {
+			content = Files.readAllBytes(file);
+		} catch (IOException e) {
+			failed(metrics, Stage.FETCH, FailureCause.IO, e);
+			return new Outcome(file, null, new LoadError(file, ErrorKind.IO, e), 0);
+		}
+		if (metrics.isEnabled()) {
+			long now = System.nanoTime();
+			metrics.fetched(null, UrlRole.SELF, now - start, content.length);
+			start = now;
+		}
+		DescriptionParseEvent event = new DescriptionParseEvent();
+		event.begin();
+		XMLStreamReader reader = null;
+		try {
+			reader = XmlStreams.createReader(new ByteArrayInputStream(content));
+			OpenSearchDescription description = OpenSearchDescription.parse(reader);
+			event.end();
+			if (event.shouldCommit()) {
+				event.engine = description.shortName;
+				event.bytes = content.length;
+				event.urls = description.urls.size();
+				event.commit();
+			}
+			if (metrics.isEnabled()) {
+				metrics.parsed(description.shortName, UrlRole.SELF, System.nanoTime() - start, description.urls.size());
+			}
+			return new Outcome(file, description, null, content.length);
+		} catch (XMLStreamException e) {
+			parseFailed(metrics, event, FailureCause.MALFORMED, e, content.length);
+			return new Outcome(file, null, new LoadError(file, ErrorKind.MALFORMED, e), content.length);
+		} catch (ParseException e) {
+			parseFailed(metrics, event, FailureCause.INVALID, e, content.length);
+			return new Outcome(file, null, new LoadError(file, ErrorKind.INVALID, e), content.length);
+		} catch (RuntimeException e) {
+			parseFailed(metrics, event, FailureCause.INVALID, e, content.length);
+			return new Outcome(file, null, new LoadError(file, ErrorKind.INVALID, e), content.length);
+		} finally {
+			XmlStreams.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Reports a failed load, if the metrics are enabled
+	 * @param metrics - the metrics
+	 * @param stage - the stage that failed: FETCH if the file cannot be read
+	 * @param cause - the cause of the failure
+	 * @param error - the error
+	 */
+	private static void failed(OpenSearchMetrics metrics, Stage stage, FailureCause cause, Exception error) {
+		if (metrics.isEnabled()) {
+			metrics.failed(null, UrlRole.SELF, stage, cause, error);
+		}
+	}
+
+	/**
+	 * Reports a failed parse to the metrics and to the recording, if they are enabled
+	 * @param metrics - the metrics
+	 * @param event - the event of the parse
+	 * @param cause - the cause of the failure
+	 * @param error - the error
+	 * @param bytes - the size of the file
+	 */
+	private static void parseFailed(OpenSearchMetrics metrics, DescriptionParseEvent event, FailureCause cause, Exception error, long bytes) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.bytes = bytes;
+			event.error = error.toString();
+			event.commit();
+		}
+		failed(metrics, Stage.PARSE, cause, error);
+	}
+
+	/**
+	 * Outcome of the parse of a single file
+	 */
+	private static class Outcome {
+
+		final Path file;
+		final OpenSearchDescription description;
+		final LoadError error;
+		final long bytes;
+
+		Outcome(Path file, OpenSearchDescription description, LoadError error, long bytes) {
+			this.file = file;
+			this.description = description;
+			this.error = error;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Kind of error that prevented the load of a file
+	 */
+	public enum ErrorKind {
+
+		/**
+		 * The file cannot be read
+		 */
+		IO,
+
+		/**
+		 * The file isn't a well formed xml document
+		 */
+		MALFORMED,
+
+		/**
+		 * The document isn't a valid description
+		 */
+		INVALID
+	}
+
+	/**
+	 * Error that prevented the load of a file
+	 */
+	public static class LoadError {
+
+		private final Path file;
+
+		private final ErrorKind kind;
+
+		private final Exception cause;
+
+		LoadError(Path file, ErrorKind kind, Exception cause) {
+			this.file = file;
+			this.kind = kind;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return the file that couldn't be loaded
+		 */
+		public Path getFile() {
+			return this.file;
+		}
+
+		/**
+		 * @return the kind of error
+		 */
+		public ErrorKind getKind() {
+			return this.kind;
+		}
+
+		/**
+		 * @return the exception that describes the error
+		 */
+		public Exception getCause() {
+			return this.cause;
+		}
+
+		@Override
+		public String toString() {
+			return this.file + ": " + this.kind + " (" + this.cause.getMessage() + ")";
+		}
+	}
+
+	/**
+	 * Outcome of a load
+	 */
+	public static class Result {
+
+		private final List<OpenSearchDescription> descriptions;
+
+		private final List<Path> files;
+
+		private final List<LoadError> errors;
+
+		private final int fileCount;
+
+		private final long byteCount;
+
+		private final long elapsedNanos;
+
+		Result(List<OpenSearchDescription> descriptions, List<Path> files, List<LoadError> errors, int fileCount, long byteCount, long elapsedNanos) {
+			this.descriptions = Collections.unmodifiableList(descriptions);
+			this.files = Collections.unmodifiableList(files);
+			this.errors = Collections.unmodifiableList(errors);
+			this.fileCount = fileCount;
+			this.byteCount = byteCount;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return the loaded descriptions, in the order of their files
+		 */
+		public List<OpenSearchDescription> getDescriptions() {
+			return this.descriptions;
+		}
+
+		/**
+		 * @return the files of the loaded descriptions, in the same order of {@link #getDescriptions()}
+		 */
+		public List<Path> getFiles() {
+			return this.files;
+		}
+
+		/**
+		 * @return the errors, in the order of their files
+		 */
+		public List<LoadError> getErrors() {
+			return this.errors;
+		}
+
+		/**
+		 * @return the number of files processed, loaded or not
+		 */
+		public int getFileCount() {
+			return this.fileCount;
+		}
+
+		/**
+		 * @return the number of bytes read
+		 */
+		public long getByteCount() {
+			return this.byteCount;
+		}
+
+		/**
+		 * @return the duration of the load, in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return this.elapsedNanos;
+		}
+
+		/**
+		 * @return the number of files processed per second
+		 */
+		public double getFilesPerSecond() {
+			return this.elapsedNanos > 0 ? this.fileCount * 1e9 / this.elapsedNanos : 0;
+		}
+
+		/**
+		 * @return the number of bytes read per second
+		 */
+		public double getBytesPerSecond() {
+			return this.elapsedNanos > 0 ? this.byteCount * 1e9 / this.elapsedNanos : 0;
+		}
+
+		@Override
+		public String toString() {
+			return this.descriptions.size() + " descriptions loaded, " + this.errors.size() + " errors, "
+					+ Math.round(getFilesPerSecond()) + " files/s";
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package com.pasdam.opensearch.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import com.pasdam.opensearch.description.OpenSearchDescription;
+import com.pasdam.opensearch.description.SyndicationRight;
+import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+
+/**
+ * In-memory registry of search engines, indexed to select them by their properties.<br/>
+ * Each description is assigned a dense ordinal, its position in the registry, and for each
+ * value of each facet (tag, language, url type, url role, adult content and syndication
+ * right) the registry keeps a bitset of the ordinals of the engines with that value. A
+ * {@link Selection} is answered by combining the bitsets a word at a time: OR among the
+ * values of the same facet, AND among facets.<br/>
+ * The index is immutable: updates build a new one and publish it atomically (copy on
+ * write), so reads never block and always see a consistent index. Updates cost a
+ * rebuild of the index, so many descriptions should be added with a single call to
+ * {@link #addAll(Collection)}.<br/>
+ * Tags, languages and url types are compared ignoring case. The registered descriptions
+ * must not be modified.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class EngineRegistry {
+
+	private final AtomicReference<Index> index = new AtomicReference<Index>(new Index(new OpenSearchDescription[0]));
+
+	/**
+	 * Adds a description
+	 * @param description - the description to add
+	 * @return the ordinal assigned to the description, valid until the next removal
+	 */
+	public int add(final OpenSearchDescription description) {
+		if (description == null) {
+			throw new IllegalArgumentException("The description cannot be null");
+		}
+		final int[] ordinal = new int[1];
+		update(engines -> {
+			ordinal[0] = engines.length;
+			OpenSearchDescription[] updated = Arrays.copyOf(engines, engines.length + 1);
+			updated[engines.length] = description;
+			return updated;
+		});
+		return ordinal[0];
+	}
+
+	/**
+	 * Adds many descriptions, rebuilding the index once
+	 * @param descriptions - the descriptions to add
+	 * @return the number of registered descriptions
+	 */
+	public int addAll(final Collection<OpenSearchDescription> descriptions) {
+		return update(engines -> {
+			OpenSearchDescription[] updated = Arrays.copyOf(engines, engines.length + descriptions.size());
+			int i = engines.length;
+			for (OpenSearchDescription description : descriptions) {
+				if (description == null) {
+					throw new IllegalArgumentException("The description cannot be null");
+				}
+				updated[i++] = description;
+			}
+			return updated;
+		}).engines.length;
+	}
+
+	/**
+	 * Removes a description; the following descriptions are renumbered, so the ordinals stay dense
+	 * @param description - the description to remove
+	 * @return true if the description was registered
+	 */
+	public boolean remove(final OpenSearchDescription description) {
+		final boolean[] removed = new boolean[1];
+		update(engines -> {
+			removed[0] = false;
+			for (int i = 0; i < engines.length; i++) {
+				if (engines[i] == description) {
+					removed[0] = true;
+					OpenSearchDescription[] updated = new OpenSearchDescription[engines.length - 1];
+					System.arraycopy(engines, 0, updated, 0, i);
+					System.arraycopy(engines, i + 1, updated, i, engines.length - i - 1);
+					return updated;
+				}
+			}
+			return engines;
+		});
+		return removed[0];
+	}
+
+	/**
+	 * Removes all the descriptions
+	 */
+	public void clear() {
+		this.index.set(new Index(new OpenSearchDescription[0]));
+	}
+
+	/**
+	 * @return the number of registered descriptions
+	 */
+	public int size() {
+		return this.index.get().engines.length;
+	}
+
+	/**
+	 * Returns a description
+	 * @param ordinal - the ordinal of the description
+	 * @return the description
+	 * @throws IndexOutOfBoundsException if the ordinal isn't valid
+	 */
+	public OpenSearchDescription get(int ordinal) {
+		return this.index.get().engines[ordinal];
+	}
+
+	/**
+	 * @return all the registered descriptions, in order of ordinal
+	 */
+	public List<OpenSearchDescription> getAll() {
+		return Collections.unmodifiableList(Arrays.asList(this.index.get().engines));
+	}
+
+	/**
+	 * Starts a selection on the current content of the registry; the selection isn't
+	 * affected by later updates
+	 * @return a selection containing all the engines
+	 */
+	public Selection select() {
+		return new Selection(this.index.get());
+	}
+
+	/**
+	 * Replaces the index with one built from the updated descriptions, retrying if another
+	 * thread updated the registry in the meanwhile
+	 * @param update - the function that computes the updated descriptions; it could be
+	 * called more than once and it must not modify its argument
+	 * @return the new index
+	 */
+	private Index update(UnaryOperator<OpenSearchDescription[]> update) {
+		Index current;
+		Index updated;
+		do {
+			current = this.index.get();
+			OpenSearchDescription[] engines = update.apply(current.engines);
+			if (engines == current.engines) {
+				return current;
+			}
+			updated = new Index(engines);
+		} while (!this.index.compareAndSet(current, updated));
+		return updated;
+	}
+
+	/**
+	 * Immutable index of the engines
+	 */
+	private static class Index {
+
+		final OpenSearchDescription[] engines;
+
+		final int words;
+
+		final Map<String, long[]> tags = new HashMap<String, long[]>();
+		final Map<String, long[]> languages = new HashMap<String, long[]>();
+		final Map<String, long[]> urlTypes = new HashMap<String, long[]>();
+		final Map<String, long[]> roleUrlTypes = new HashMap<String, long[]>();
+		final Map<UrlRole, long[]> roles = new EnumMap<UrlRole, long[]>(UrlRole.class);
+		final Map<SyndicationRight, long[]> syndicationRights = new EnumMap<SyndicationRight, long[]>(SyndicationRight.class);
+		final long[] adultContent;
+
+		Index(OpenSearchDescription[] engines) {
+			this.engines = engines;
+			this.words = (engines.length + 63) >>> 6;
+			this.adultContent = new long[this.words];
+			OpenSearchDescription engine;
+			for (int i = 0; i < engines.length; i++) {
+				engine = engines[i];
+				if (engine.tags != null) {
+					for (String tag : engine.tags) {
+						set(this.tags, normalize(tag), i);
+					}
+				}
+				if (engine.languages != null && engine.languages.length > 0) {
+					for (String language : engine.languages) {
+						set(this.languages, normalize(language), i);
+					}
+				} else {
+					// default value
+					set(this.languages, "*", i);
+				}
+				if (engine.urls != null) {
+					for (Url url : engine.urls) {
+						if (url.type != null) {
+							set(this.urlTypes, normalize(url.type), i);
+						}
+						if (url.rel != null) {
+							for (UrlRole role : url.rel) {
+								set(this.roles, role, i);
+								if (url.type != null) {
+									set(this.roleUrlTypes, roleUrlTypeKey(role, url.type), i);
+								}
+							}
+						}
+					}
+				}
+				if (engine.syndicationRight != null) {
+					set(this.syndicationRights, engine.syndicationRight, i);
+				}
+				if (engine.adultContent) {
+					this.adultContent[i >>> 6] |= 1L << i;
+				}
+			}
+		}
+
+		private <K> void set(Map<K, long[]> facet, K value, int ordinal) {
+			long[] bits = facet.get(value);
+			if (bits == null) {
+				bits = new long[this.words];
+				facet.put(value, bits);
+			}
+			bits[ordinal >>> 6] |= 1L << ordinal;
+		}
+	}
+
+	private static String normalize(String value) {
+		return value.trim().toLowerCase(Locale.ROOT);
+	}
+
+	private static String roleUrlTypeKey(UrlRole role, String type) {
+		return role.ordinal() + " " + normalize(type);
+	}
+
+	/**
+	 * Selection of the engines of a registry, built by restricting the candidates one
+	 * facet at a time. Methods that accept many values select the engines that have at
+	 * least one of them, so:
+	 * <pre>registry.select().tags("news").languages("en", "*").urlType(UrlRole.RESULTS, OpenSearchDescription.TYPE_RSS).list()</pre>
+	 * returns the engines tagged "news", that support English or any language, and that
+	 * return RSS results.<br/>
+	 * A selection must be used by a single thread.
+	 */
+	public static class Selection {
+
+		private final Index index;
+
+		/**
+		 * The candidates, null while all the engines are candidates
+		 */
+		private long[] candidates;
+
+		private Selection(Index index) {
+			this.index = index;
+		}
+
+		/**
+		 * Keeps the engines that have at least one of the tags
+		 * @param tags - the tags
+		 * @return this selection
+		 */
+		public Selection tags(String... tags) {
+			return restrict(this.index.tags, normalize(tags));
+		}
+
+		/**
+		 * Keeps the engines that support at least one of the languages; engines that
+		 * don't declare any language support "*"
+		 * @param languages - the languages, "*" matches the engines that support any language
+		 * @return this selection
+		 */
+		public Selection languages(String... languages) {
+			return restrict(this.index.languages, normalize(languages));
+		}
+
+		/**
+		 * Keeps the engines that have a url of at least one of the types, with any role
+		 * @param types - the MIME types
+		 * @return this selection
+		 */
+		public Selection urlTypes(String... types) {
+			return restrict(this.index.urlTypes, normalize(types));
+		}
+
+		/**
+		 * Keeps the engines that have a url with at least one of the roles
+		 * @param roles - the roles
+		 * @return this selection
+		 */
+		public Selection roles(UrlRole... roles) {
+			return restrict(this.index.roles, Arrays.asList(roles));
+		}
+
+		/**
+		 * Keeps the engines that have a url with the specified role and type
+		 * @param role - the role of the url
+		 * @param type - the MIME type of the url
+		 * @return this selection
+		 */
+		public Selection urlType(UrlRole role, String type) {
+			return restrict(this.index.roleUrlTypes, Collections.singletonList(roleUrlTypeKey(role, type)));
+		}
+
+		/**
+		 * Keeps the engines with at least one of the syndication rights
+		 * @param rights - the syndication rights
+		 * @return this selection
+		 */
+		public Selection syndicationRights(SyndicationRight... rights) {
+			return restrict(this.index.syndicationRights, Arrays.asList(rights));
+		}
+
+		/**
+		 * Keeps the engines whose results may, or may not, contain adult content
+		 * @param adultContent - the value of the AdultContent element
+		 * @return this selection
+		 */
+		public Selection adultContent(boolean adultContent) {
+			long[] candidates = candidates();
+			long[] bits = this.index.adultContent;
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] &= adultContent ? bits[i] : ~bits[i];
+			}
+			return this;
+		}
+
+		/**
+		 * @return the number of selected engines
+		 */
+		public int count() {
+			if (this.candidates == null) {
+				return this.index.engines.length;
+			}
+			int count = 0;
+			for (long word : this.candidates) {
+				count += Long.bitCount(word);
+			}
+			return count;
+		}
+
+		/**
+		 * @return the ordinals of the selected engines, in increasing order
+		 */
+		public int[] ordinals() {
+			int[] ordinals = new int[count()];
+			int count = 0;
+			long[] candidates = candidates();
+			long word;
+			for (int i = 0; i < candidates.length; i++) {
+				word = candidates[i];
+				while (word != 0) {
+					ordinals[count++] = (i << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return ordinals;
+		}
+
+		/**
+		 * @return the selected engines, in order of ordinal
+		 */
+		public List<OpenSearchDescription> list() {
+			int[] ordinals = ordinals();
+			List<OpenSearchDescription> engines = new ArrayList<OpenSearchDescription>(ordinals.length);
+			for (int ordinal : ordinals) {
+				engines.add(this.index.engines[ordinal]);
+			}
+			return engines;
+		}
+
+		private <K> Selection restrict(Map<K, long[]> facet, Collection<K> values) {
+			long[] candidates = candidates();
+			long[] union = new long[candidates.length];
+			long[] bits;
+			for (K value : values) {
+				bits = facet.get(value);
+				if (bits != null) {
+					for (int i = 0; i < union.length; i++) {
+						union[i] |= bits[i];
+					}
+				}
+			}
+			for (int i = 0; i < candidates.length; i++) {
+				candidates[i] &= union[i];
+			}
+			return this;
+		}
+
+		/**
+		 * @return the bitset of the candidates, creating it if needed
+		 */
+		private long[] candidates() {
+			if (this.candidates == null) {
+				int size = this.index.engines.length;
+				this.candidates = new long[this.index.words];
+				Arrays.fill(this.candidates, -1L);
+				if ((size & 63) != 0) {
+					this.candidates[this.candidates.length - 1] = (1L << size) - 1;
+				}
+			}
+			return this.candidates;
+		}
+
+		private static List<String> normalize(String[] values) {
+			List<String> normalized = new ArrayList<String>(values.length);
+			for (String value : values) {
+				normalized.add(EngineRegistry.normalize(value));
+			}
+			return normalized;
+		}
+	}
+}
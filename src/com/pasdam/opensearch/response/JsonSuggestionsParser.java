@@ -0,0 +1,569 @@
+package com.pasdam.opensearch.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pasdam.opensearch.xml.DecodingReader;
+
+/**
+ * Single-pass parser of the JSON suggestions format:
+ * <code>["query", ["completion", ...], ["description", ...], ["url", ...]]</code>.<br/>
+ * The input is read character by character, decoding UTF-8 directly from the bytes when
+ * it is a stream or a buffer, so no intermediate string of the whole response is built:
+ * the only objects allocated are the result strings and arrays. JSON escapes are fully
+ * supported, so suggestions can contain quotes, commas and brackets.<br/>
+ * The first element of the response is the query; the following arrays are returned in
+ * order. Their non-string values (numbers, booleans) are converted to their literal text,
+ * while null values, nested arrays and objects become empty strings, so the completions,
+ * descriptions and urls stay aligned. Elements of the response that are not arrays (i.e.
+ * the metadata object appended by some engines) are ignored.<br/>
+ * Instances of this class are not thread safe, they are meant to parse a single response.
+ * @author Paco
+ * @version 1.0
+ */
+abstract class JsonSuggestionsParser {
+
+	private static final String[] EMPTY = new String[0];
+
+	/**
+	 * Buffer used to build the strings, reused for all the values
+	 */
+	private final StringBuilder buffer = new StringBuilder(64);
+
+	/**
+	 * Low surrogate to return on the next read, or -1
+	 */
+	private int pendingChar = -1;
+
+	/**
+	 * Byte read after a truncated UTF-8 sequence, returned by the next read, or -2
+	 */
+	private int pendingByte = -2;
+
+	/**
+	 * Character read after a literal value, returned by the next read, or -2
+	 */
+	private int pushBack = -2;
+
+	/**
+	 * Characters read so far, used to report the position of the errors
+	 */
+	private int position;
+
+	/**
+	 * Parses a response contained in a string
+	 * @param json - the response
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 */
+	static String[][] parse(final CharSequence json) throws ParseException {
+		return new JsonSuggestionsParser() {
+			private int index;
+
+			@Override
+			int readChar() {
+				return this.index < json.length() ? json.charAt(this.index++) : -1;
+			}
+		}.parse();
+	}
+
+	/**
+	 * Parses a response encoded in UTF-8 contained in a buffer, from its position to its limit.
+	 * When this method returns, the position of the buffer is at the end of the response.
+	 * @param json - the response
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 */
+	static String[][] parse(final ByteBuffer json) throws ParseException {
+		return new JsonSuggestionsParser() {
+			@Override
+			int readByte() {
+				return json.hasRemaining() ? json.get() & 0xFF : -1;
+			}
+		}.parse();
+	}
+
+	/**
+	 * Parses a response encoded in UTF-8 read from a stream. The stream isn't closed.
+	 * @param json - the response
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the stream
+	 */
+	static String[][] parse(final InputStream json) throws ParseException, IOException {
+		final byte[] bytes = new byte[4096];
+		JsonSuggestionsParser parser = new JsonSuggestionsParser() {
+			private int offset;
+			private int length;
+
+			@Override
+			int readByte() throws IOException {
+				if (this.offset == this.length) {
+					this.length = json.read(bytes);
+					this.offset = 0;
+					if (this.length <= 0) {
+						this.length = 0;
+						return -1;
+					}
+				}
+				return bytes[this.offset++] & 0xFF;
+			}
+		};
+		try {
+			return parser.parse();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Parses a response contained in a buffer, from its position to its limit, decoding it
+	 * with the given charset. When this method returns, the position of the buffer is at the
+	 * end of the response.
+	 * @param json - the response
+	 * @param charset - the charset of the response, if null UTF-8
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 */
+	static String[][] parse(ByteBuffer json, Charset charset) throws ParseException {
+		if (charset == null || charset.equals(StandardCharsets.UTF_8)) {
+			return parse(json);
+		}
+		DecodingReader reader = new DecodingReader(json, charset);
+		try {
+			return parse(reader);
+		} catch (IOException e) {
+			ParseException error = new ParseException("Invalid " + charset + " response: " + e, 0);
+			error.initCause(e);
+			throw error;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses a response read from a channel, decoding it with the given charset. The channel
+	 * must be in blocking mode, and it isn't closed.
+	 * @param json - the response
+	 * @param charset - the charset of the response, if null UTF-8
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the channel
+	 */
+	static String[][] parse(ReadableByteChannel json, Charset charset) throws ParseException, IOException {
+		if (charset == null || charset.equals(StandardCharsets.UTF_8)) {
+			return parse(Channels.newInputStream(json));
+		}
+		DecodingReader reader = new DecodingReader(json, charset);
+		try {
+			return parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses a response read from a reader. The reader isn't closed.
+	 * @param json - the response
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the response
+	 */
+	private static String[][] parse(final Reader json) throws ParseException, IOException {
+		final char[] chars = new char[256];
+		JsonSuggestionsParser parser = new JsonSuggestionsParser() {
+			private int offset;
+			private int length;
+
+			@Override
+			int readChar() throws IOException {
+				if (this.offset == this.length) {
+					this.length = json.read(chars);
+					this.offset = 0;
+					if (this.length <= 0) {
+						this.length = 0;
+						return -1;
+					}
+				}
+				return chars[this.offset++];
+			}
+		};
+		try {
+			return parser.parse();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Returns the next byte of the input, used by the default implementation of
+	 * {@link #readChar()} to decode UTF-8
+	 * @return the next byte, or -1 at the end of the input
+	 * @throws IOException if an error occurs reading the input
+	 */
+	int readByte() throws IOException {
+		return -1;
+	}
+
+	/**
+	 * Returns the next UTF-16 character of the input. Invalid UTF-8 sequences (unexpected or
+	 * missing continuation bytes, overlong forms, surrogates and values above U+10FFFF) are
+	 * replaced by U+FFFD, like {@link java.nio.charset.CharsetDecoder} does; the byte that
+	 * interrupts a truncated sequence isn't consumed, so it is decoded on its own.
+	 * @return the next character, or -1 at the end of the input
+	 * @throws IOException if an error occurs reading the input
+	 */
+	int readChar() throws IOException {
+		if (this.pendingChar >= 0) {
+			int c = this.pendingChar;
+			this.pendingChar = -1;
+			return c;
+		}
+		int b = nextByte();
+		if (b < 0x80) {
+			return b;
+		}
+		int codePoint;
+		int continuationBytes;
+		int minimum;
+		if (b >= 0xF5) {
+			return 0xFFFD; // never valid in UTF-8
+		} else if (b >= 0xF0) {
+			codePoint = b & 0x07;
+			continuationBytes = 3;
+			minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+		} else if (b >= 0xE0) {
+			codePoint = b & 0x0F;
+			continuationBytes = 2;
+			minimum = 0x800;
+		} else if (b >= 0xC2) {
+			codePoint = b & 0x1F;
+			continuationBytes = 1;
+			minimum = 0x80;
+		} else {
+			return 0xFFFD; // unexpected continuation byte, or overlong lead byte (C0, C1)
+		}
+		int next;
+		for (int i = 0; i < continuationBytes; i++) {
+			next = nextByte();
+			if (next < 0 || (next & 0xC0) != 0x80) {
+				this.pendingByte = next;
+				return 0xFFFD;
+			}
+			codePoint = (codePoint << 6) | (next & 0x3F);
+		}
+		if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+				|| (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+			return 0xFFFD;
+		}
+		if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+			this.pendingChar = Character.lowSurrogate(codePoint);
+			return Character.highSurrogate(codePoint);
+		}
+		return codePoint;
+	}
+
+	/**
+	 * @return the byte pushed back by {@link #readChar()}, or the next byte of the input
+	 */
+	private int nextByte() throws IOException {
+		if (this.pendingByte != -2) {
+			int b = this.pendingByte;
+			this.pendingByte = -2;
+			return b;
+		}
+		return readByte();
+	}
+
+	private int next() throws ParseException {
+		if (this.pushBack != -2) {
+			int c = this.pushBack;
+			this.pushBack = -2;
+			return c;
+		}
+		try {
+			this.position++;
+			return readChar();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the next character that isn't a white space
+	 */
+	private int nextClean() throws ParseException {
+		int c;
+		do {
+			c = next();
+		} while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+		return c;
+	}
+
+	/**
+	 * Parses the whole response, only white space can follow the closing bracket
+	 * @return the parsed response
+	 * @throws ParseException if the response isn't valid
+	 */
+	String[][] parse() throws ParseException {
+		if (nextClean() != '[') {
+			throw error("Expected '['");
+		}
+		List<String[]> values = new ArrayList<String[]>(4);
+		int c = nextClean();
+		if (c == ']') {
+			throw error("Missing query string");
+		}
+		// the query string
+		String query = readScalar(c);
+		values.add(new String[]{query != null ? query : ""});
+		c = nextClean();
+		while (c == ',') {
+			c = nextClean();
+			if (c == '[') {
+				values.add(readStringArray());
+			} else {
+				skipValue(c);
+			}
+			c = nextClean();
+		}
+		if (c != ']') {
+			throw error("Expected ',' or ']'");
+		}
+		if (nextClean() != -1) {
+			throw error("Unexpected content after the response");
+		}
+		return values.toArray(new String[values.size()][]);
+	}
+
+	/**
+	 * Reads an array, the opening bracket has already been read
+	 * @return the string values of the array
+	 */
+	private String[] readStringArray() throws ParseException {
+		int c = nextClean();
+		if (c == ']') {
+			return EMPTY;
+		}
+		List<String> values = new ArrayList<String>();
+		String value;
+		while (true) {
+			if (c == '[' || c == '{') {
+				skipValue(c);
+				values.add("");
+			} else {
+				value = readScalar(c);
+				values.add(value != null ? value : "");
+			}
+			c = nextClean();
+			if (c == ']') {
+				break;
+			} else if (c != ',') {
+				throw error("Expected ',' or ']'");
+			}
+			c = nextClean();
+		}
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * Reads a string, number, boolean or null value
+	 * @param first - the first character of the value, already read
+	 * @return the value as string, or null for the null literal
+	 */
+	private String readScalar(int first) throws ParseException {
+		if (first == '"') {
+			return readString();
+		}
+		this.buffer.setLength(0);
+		int c = first;
+		if (c >= 'a' && c <= 'z') {
+			while (c >= 'a' && c <= 'z') {
+				this.buffer.append((char) c);
+				c = next();
+			}
+		} else {
+			while ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				this.buffer.append((char) c);
+				c = next();
+			}
+		}
+		if (this.buffer.length() == 0) {
+			throw error("Unexpected character");
+		}
+		// the character after the literal is part of the structure, push it back
+		this.pushBack = c;
+		String literal = this.buffer.toString();
+		if (literal.equals("null")) {
+			return null;
+		}
+		if (!literal.equals("true") && !literal.equals("false") && !isNumber(literal)) {
+			throw error("Invalid literal: " + literal);
+		}
+		return literal;
+	}
+
+	/**
+	 * @param literal - the literal
+	 * @return true if the literal is a valid JSON number
+	 */
+	private static boolean isNumber(String literal) {
+		int length = literal.length();
+		int i = 0;
+		if (literal.charAt(i) == '-') {
+			i++;
+		}
+		int start = i;
+		if (i < length && literal.charAt(i) == '0') {
+			i++;
+		} else {
+			while (i < length && isDigit(literal.charAt(i))) {
+				i++;
+			}
+		}
+		if (i == start) {
+			return false;
+		}
+		if (i < length && literal.charAt(i) == '.') {
+			start = ++i;
+			while (i < length && isDigit(literal.charAt(i))) {
+				i++;
+			}
+			if (i == start) {
+				return false;
+			}
+		}
+		if (i < length && (literal.charAt(i) == 'e' || literal.charAt(i) == 'E')) {
+			i++;
+			if (i < length && (literal.charAt(i) == '+' || literal.charAt(i) == '-')) {
+				i++;
+			}
+			start = i;
+			while (i < length && isDigit(literal.charAt(i))) {
+				i++;
+			}
+			if (i == start) {
+				return false;
+			}
+		}
+		return i == length;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * Reads a string, the opening quote has already been read
+	 * @return the string
+	 */
+	private String readString() throws ParseException {
+		this.buffer.setLength(0);
+		int c;
+		while (true) {
+			c = next();
+			switch (c) {
+			case '"':
+				return this.buffer.toString();
+			case '\\':
+				c = next();
+				switch (c) {
+				case '"':
+				case '\\':
+				case '/':
+					this.buffer.append((char) c);
+					break;
+				case 'b':
+					this.buffer.append('\b');
+					break;
+				case 'f':
+					this.buffer.append('\f');
+					break;
+				case 'n':
+					this.buffer.append('\n');
+					break;
+				case 'r':
+					this.buffer.append('\r');
+					break;
+				case 't':
+					this.buffer.append('\t');
+					break;
+				case 'u':
+					int code = 0;
+					int digit;
+					for (int i = 0; i < 4; i++) {
+						digit = Character.digit(next(), 16);
+						if (digit < 0) {
+							throw error("Invalid unicode escape");
+						}
+						code = (code << 4) | digit;
+					}
+					this.buffer.append((char) code);
+					break;
+				default:
+					throw error("Invalid escape");
+				}
+				break;
+			case -1:
+				throw error("Unterminated string");
+			default:
+				this.buffer.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * Skips a value of any type
+	 * @param first - the first character of the value, already read
+	 */
+	private void skipValue(int first) throws ParseException {
+		if (first == '"') {
+			skipString();
+		} else if (first == '[' || first == '{') {
+			int depth = 1;
+			int c;
+			while (depth > 0) {
+				c = next();
+				if (c == '[' || c == '{') {
+					depth++;
+				} else if (c == ']' || c == '}') {
+					depth--;
+				} else if (c == '"') {
+					skipString();
+				} else if (c == -1) {
+					throw error("Unexpected end of input");
+				}
+			}
+		} else {
+			readScalar(first);
+		}
+	}
+
+	/**
+	 * Skips a string, the opening quote has already been read
+	 */
+	private void skipString() throws ParseException {
+		int c;
+		while ((c = next()) != '"') {
+			if (c == '\\') {
+				next();
+			} else if (c == -1) {
+				throw error("Unterminated string");
+			}
+		}
+	}
+
+	private ParseException error(String message) {
+		return new ParseException(message + " at position " + this.position, this.position);
+	}
+}
@@ -0,0 +1,62 @@
+package com.pasdam.opensearch.response;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The fields of a search result that can be requested to the parser, see
+ * {@link SearchResponse#parse(javax.xml.stream.XMLStreamReader, SearchResultHandler, Set, com.pasdam.opensearch.xml.ParseDiagnostics)},
+ * {@link SearchResponse#parse(java.net.URL, SearchResultHandler, Set)} and
+ * {@link com.pasdam.opensearch.client.AsyncSearchClient#AsyncSearchClient(Set)}.<br/>
+ * The elements of the fields that aren't requested are skipped without reading their
+ * text, and the corresponding values of the results are null. A result is valid if it
+ * contains all the requested fields among {@link #TITLE}, {@link #LINK} and
+ * {@link #DESCRIPTION}; the other fields are optional.
+ * @author Paco
+ * @version 1.0
+ */
+public enum ResultField {
+
+	/**
+	 * The title element
+	 */
+	TITLE,
+
+	/**
+	 * The link element; for Atom entries, the href attribute of the link with relation
+	 * "alternate" (or without relation)
+	 */
+	LINK,
+
+	/**
+	 * The description (RSS) or content (Atom) element
+	 */
+	DESCRIPTION,
+
+	/**
+	 * The pubDate (RSS) or published/updated (Atom) element
+	 */
+	PUB_DATE,
+
+	/**
+	 * The author element; for Atom entries, the name of the author
+	 */
+	AUTHOR,
+
+	/**
+	 * The url of the enclosure element (RSS), or the href attribute of the link with
+	 * relation "enclosure" (Atom)
+	 */
+	ENCLOSURE;
+
+	/**
+	 * The fields read by default: title, link and description
+	 */
+	public static final Set<ResultField> DEFAULT = Collections.unmodifiableSet(EnumSet.of(TITLE, LINK, DESCRIPTION));
+
+	/**
+	 * All the fields
+	 */
+	public static final Set<ResultField> ALL = Collections.unmodifiableSet(EnumSet.allOf(ResultField.class));
+}
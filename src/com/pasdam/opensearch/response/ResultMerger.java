@@ -0,0 +1,332 @@
+package com.pasdam.opensearch.response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the results of many search engines in a single ranking, using weighted
+ * reciprocal rank fusion: each occurrence of a result adds
+ * <code>weight / (RRF_K + rank)</code> to its score, where rank is the position (starting
+ * from 1) of the result in the list of its engine.<br/>
+ * Results are consumed incrementally, as they are parsed (see {@link #handlerFor(int)}),
+ * and deduplicated on their link: links are normalized (case of scheme and host, "www."
+ * prefix, default ports, fragment and trailing slash are ignored) and reduced to 64-bit
+ * fingerprints, so the same result returned by different engines accumulates a single
+ * score.<br/>
+ * Only the best K results are kept, in a heap, so the memory used depends on K and not
+ * on the number of results consumed. As a consequence the ranking is approximate: a
+ * result evicted from the heap is forgotten, so if the same link is offered again it
+ * starts from the score of the new occurrence.<br/>
+ * This class is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public class ResultMerger {
+
+	/**
+	 * Constant of the reciprocal rank fusion, it reduces the weight of the first positions
+	 */
+	public static final int RRF_K = 60;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int maxResults;
+
+	private double[] engineWeights = new double[0];
+
+	/**
+	 * Min-heap of the best results, ordered by score
+	 */
+	private final Entry[] heap;
+
+	private int heapSize;
+
+	/**
+	 * Entries of the heap, by fingerprint of the link
+	 */
+	private final Map<Long, Entry> entries;
+
+	private long sequence;
+
+	/**
+	 * Constructor
+	 * @param maxResults - the number of results to keep (K)
+	 */
+	public ResultMerger(int maxResults) {
+		if (maxResults <= 0) {
+			throw new IllegalArgumentException("maxResults must be positive");
+		}
+		this.maxResults = maxResults;
+		this.heap = new Entry[maxResults];
+		this.entries = new HashMap<Long, Entry>(maxResults * 2);
+	}
+
+	/**
+	 * Registers an engine
+	 * @param weight - the weight of the engine, the scores of its results are multiplied by it
+	 * @return the index of the engine, to be used when offering its results
+	 */
+	public synchronized int addEngine(double weight) {
+		int engine = this.engineWeights.length;
+		this.engineWeights = Arrays.copyOf(this.engineWeights, engine + 1);
+		this.engineWeights[engine] = weight;
+		return engine;
+	}
+
+	/**
+	 * Adds a result of an engine
+	 * @param engine - the index of the engine, see {@link #addEngine(double)}
+	 * @param rank - the position of the result in the list of the engine, starting from 1
+	 * @param result - the result, see {@link SearchResponse#resultsList}
+	 */
+	public synchronized void offer(int engine, int rank, HashMap<String, String> result) {
+		String link = result.get(SearchResponse.RESULT_LINK);
+		if (link == null) {
+			return;
+		}
+		double score = this.engineWeights[engine] / (RRF_K + Math.max(rank, 1));
+		long fingerprint = fingerprint(link);
+		Entry entry = this.entries.get(Long.valueOf(fingerprint));
+		if (entry != null) {
+			entry.score += score;
+			entry.engines++;
+			siftDown(entry.heapIndex);
+		} else if (this.heapSize < this.maxResults) {
+			entry = new Entry(fingerprint, result, score, this.sequence++);
+			this.entries.put(Long.valueOf(fingerprint), entry);
+			entry.heapIndex = this.heapSize;
+			this.heap[this.heapSize++] = entry;
+			siftUp(entry.heapIndex);
+		} else if (score > this.heap[0].score) {
+			// replace the worst result
+			this.entries.remove(Long.valueOf(this.heap[0].fingerprint));
+			entry = new Entry(fingerprint, result, score, this.sequence++);
+			this.entries.put(Long.valueOf(fingerprint), entry);
+			entry.heapIndex = 0;
+			this.heap[0] = entry;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Adds all the results of a response
+	 * @param engine - the index of the engine, see {@link #addEngine(double)}
+	 * @param response - the response of the engine
+	 */
+	public void offer(int engine, SearchResponse response) {
+		if (response != null && response.resultsList != null) {
+			int rank = 1;
+			for (HashMap<String, String> result : response.resultsList) {
+				offer(engine, rank++, result);
+			}
+		}
+	}
+
+	/**
+	 * Returns a handler that adds the results of an engine as they are parsed, assigning
+	 * them increasing ranks
+	 * @param engine - the index of the engine, see {@link #addEngine(double)}
+	 * @return a handler to pass to {@link SearchResponse#parse(java.io.InputStream, SearchResultHandler)}
+	 */
+	public SearchResultHandler handlerFor(final int engine) {
+		return new SearchResultHandler() {
+			private int rank = 1;
+
+			@Override
+			public void onResult(HashMap<String, String> result) {
+				offer(engine, this.rank++, result);
+			}
+		};
+	}
+
+	/**
+	 * Returns the merged ranking
+	 * @return the best results, by decreasing score
+	 */
+	public synchronized List<MergedResult> getResults() {
+		List<MergedResult> results = new ArrayList<MergedResult>(this.heapSize);
+		for (int i = 0; i < this.heapSize; i++) {
+			results.add(new MergedResult(this.heap[i]));
+		}
+		Collections.sort(results, new Comparator<MergedResult>() {
+			@Override
+			public int compare(MergedResult r1, MergedResult r2) {
+				int comparison = Double.compare(r2.score, r1.score);
+				return comparison != 0 ? comparison : Long.compare(r1.sequence, r2.sequence);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * Computes the 64-bit FNV-1a fingerprint of the normalized link, without creating the
+	 * normalized string
+	 * @param link - the link
+	 * @return the fingerprint of the normalized link
+	 */
+	public static long fingerprint(String link) {
+		int start = 0;
+		int end = link.length();
+		// ignore white spaces and fragment
+		while (start < end && link.charAt(start) <= ' ') {
+			start++;
+		}
+		int fragment = link.indexOf('#', start);
+		if (fragment >= 0) {
+			end = fragment;
+		}
+		while (end > start && link.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		// ignore the scheme, so http and https links match
+		int schemeEnd = link.indexOf("://", start);
+		if (schemeEnd >= 0 && schemeEnd < end) {
+			start = schemeEnd + 3;
+		}
+		int hostEnd = start;
+		while (hostEnd < end && link.charAt(hostEnd) != '/' && link.charAt(hostEnd) != '?') {
+			hostEnd++;
+		}
+		if (link.regionMatches(true, start, "www.", 0, 4) && start + 4 < hostEnd) {
+			start += 4;
+		}
+		// ignore default ports
+		int hostLength = hostEnd;
+		if (link.regionMatches(hostEnd - 3, ":80", 0, 3)) {
+			hostLength = hostEnd - 3;
+		} else if (link.regionMatches(hostEnd - 4, ":443", 0, 4)) {
+			hostLength = hostEnd - 4;
+		}
+		// ignore trailing slashes
+		while (end > hostEnd && link.charAt(end - 1) == '/') {
+			end--;
+		}
+		long hash = FNV_OFFSET_BASIS;
+		char c;
+		for (int i = start; i < end; i++) {
+			if (i >= hostLength && i < hostEnd) {
+				continue;
+			}
+			c = link.charAt(i);
+			if (i < hostEnd) {
+				c = Character.toLowerCase(c);
+			}
+			hash ^= c & 0xFF;
+			hash *= FNV_PRIME;
+			hash ^= c >>> 8;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	private void siftUp(int index) {
+		Entry entry = this.heap[index];
+		int parent;
+		while (index > 0) {
+			parent = (index - 1) >>> 1;
+			if (!less(entry, this.heap[parent])) {
+				break;
+			}
+			this.heap[index] = this.heap[parent];
+			this.heap[index].heapIndex = index;
+			index = parent;
+		}
+		this.heap[index] = entry;
+		entry.heapIndex = index;
+	}
+
+	private void siftDown(int index) {
+		Entry entry = this.heap[index];
+		int child;
+		while ((child = 2 * index + 1) < this.heapSize) {
+			if (child + 1 < this.heapSize && less(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!less(this.heap[child], entry)) {
+				break;
+			}
+			this.heap[index] = this.heap[child];
+			this.heap[index].heapIndex = index;
+			index = child;
+		}
+		this.heap[index] = entry;
+		entry.heapIndex = index;
+	}
+
+	/**
+	 * @return true if e1 ranks worse than e2 (lower score, or same score and received later)
+	 */
+	private static boolean less(Entry e1, Entry e2) {
+		return e1.score < e2.score || (e1.score == e2.score && e1.sequence > e2.sequence);
+	}
+
+	/**
+	 * A result in the heap
+	 */
+	private static class Entry {
+
+		final long fingerprint;
+		final HashMap<String, String> result;
+		final long sequence;
+		double score;
+		int engines = 1;
+		int heapIndex;
+
+		Entry(long fingerprint, HashMap<String, String> result, double score, long sequence) {
+			this.fingerprint = fingerprint;
+			this.result = result;
+			this.score = score;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * A result of the merged ranking
+	 */
+	public static class MergedResult {
+
+		private final HashMap<String, String> result;
+		private final double score;
+		private final int engines;
+		private final long sequence;
+
+		MergedResult(Entry entry) {
+			this.result = entry.result;
+			this.score = entry.score;
+			this.engines = entry.engines;
+			this.sequence = entry.sequence;
+		}
+
+		/**
+		 * @return the result, as received from the first engine that returned it
+		 */
+		public HashMap<String, String> getResult() {
+			return this.result;
+		}
+
+		/**
+		 * @return the fused score of the result
+		 */
+		public double getScore() {
+			return this.score;
+		}
+
+		/**
+		 * @return the number of occurrences of the result that contributed to its score
+		 */
+		public int getEngines() {
+			return this.engines;
+		}
+
+		@Override
+		public String toString() {
+			return this.score + " " + this.result;
+		}
+	}
+}
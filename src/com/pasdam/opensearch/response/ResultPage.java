@@ -0,0 +1,272 @@
+package com.pasdam.opensearch.response;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The results of a search response, stored by column: each field is kept in an array
+ * indexed by the position of the result, so a page costs a few arrays instead of an
+ * object (or a map) per result. The columns of the optional fields are allocated only
+ * when the first result declaring them is added.<br/>
+ * Fields are read by position, see {@link #getTitle(int)}; {@link #get(int)} and the
+ * iterator create a {@link SearchResult} for each call, so they should be avoided on
+ * large pages when only some fields are needed.<br/>
+ * This class isn't thread safe; a page filled by the parser can be shared with other
+ * threads if it isn't modified anymore.
+ * @author Paco
+ * @version 1.0
+ */
+public class ResultPage implements Iterable<SearchResult> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int size;
+
+	private String[] titles;
+
+	private String[] links;
+
+	private String[] descriptions;
+
+	private String[] pubDates;
+
+	private String[] authors;
+
+	private String[] enclosures;
+
+	/**
+	 * Creates an empty page
+	 */
+	public ResultPage() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty page
+	 * @param capacity - the number of results the page can contain before growing
+	 */
+	public ResultPage(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.titles = new String[capacity];
+		this.links = new String[capacity];
+		this.descriptions = new String[capacity];
+	}
+
+	/**
+	 * Adds a result to the end of the page
+	 * @param result - the result to add
+	 */
+	public void add(SearchResult result) {
+		add(result.getTitle(), result.getLink(), result.getDescription(), result.getPubDate(), result.getAuthor(), result.getEnclosure());
+	}
+
+	/**
+	 * Adds a result to the end of the page
+	 * @param title - the title of the result
+	 * @param link - the link of the result
+	 * @param description - the description of the result
+	 * @param pubDate - the publication date, or null
+	 * @param author - the author, or null
+	 * @param enclosure - the url of the attached media object, or null
+	 */
+	public void add(String title, String link, String description, String pubDate, String author, String enclosure) {
+		if (this.size == this.titles.length) {
+			grow();
+		}
+		this.titles[this.size] = title;
+		this.links[this.size] = link;
+		this.descriptions[this.size] = description;
+		if (pubDate != null) {
+			this.pubDates = column(this.pubDates);
+			this.pubDates[this.size] = pubDate;
+		}
+		if (author != null) {
+			this.authors = column(this.authors);
+			this.authors[this.size] = author;
+		}
+		if (enclosure != null) {
+			this.enclosures = column(this.enclosures);
+			this.enclosures[this.size] = enclosure;
+		}
+		this.size++;
+	}
+
+	/**
+	 * @return the number of results
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return true if the page has no results
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the title of the result
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getTitle(int index) {
+		return this.titles[checkIndex(index)];
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the link of the result
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getLink(int index) {
+		return this.links[checkIndex(index)];
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the description of the result
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getDescription(int index) {
+		return this.descriptions[checkIndex(index)];
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the publication date of the result, or null if it hasn't it
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getPubDate(int index) {
+		return value(this.pubDates, checkIndex(index));
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the author of the result, or null if it hasn't it
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getAuthor(int index) {
+		return value(this.authors, checkIndex(index));
+	}
+
+	/**
+	 * @param index - the position of the result
+	 * @return the url of the media object attached to the result, or null if it hasn't it
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public String getEnclosure(int index) {
+		return value(this.enclosures, checkIndex(index));
+	}
+
+	/**
+	 * Creates an object containing the fields of a result
+	 * @param index - the position of the result
+	 * @return a new object containing the fields of the result
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	public SearchResult get(int index) {
+		checkIndex(index);
+		return new SearchResult(this.titles[index], this.links[index], this.descriptions[index],
+				value(this.pubDates, index), value(this.authors, index), value(this.enclosures, index));
+	}
+
+	/**
+	 * Reduces the capacity of the columns to the number of results
+	 */
+	public void trimToSize() {
+		int capacity = Math.max(this.size, 1);
+		if (capacity < this.titles.length) {
+			this.titles = Arrays.copyOf(this.titles, capacity);
+			this.links = Arrays.copyOf(this.links, capacity);
+			this.descriptions = Arrays.copyOf(this.descriptions, capacity);
+			this.pubDates = trim(this.pubDates, capacity);
+			this.authors = trim(this.authors, capacity);
+			this.enclosures = trim(this.enclosures, capacity);
+		}
+	}
+
+	@Override
+	public Iterator<SearchResult> iterator() {
+		return new Iterator<SearchResult>() {
+
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return this.next < ResultPage.this.size;
+			}
+
+			@Override
+			public SearchResult next() {
+				if (this.next >= ResultPage.this.size) {
+					throw new NoSuchElementException();
+				}
+				return get(this.next++);
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return this.size + " results";
+	}
+
+	/**
+	 * Doubles the capacity of the columns
+	 */
+	private void grow() {
+		int capacity = this.titles.length * 2;
+		this.titles = Arrays.copyOf(this.titles, capacity);
+		this.links = Arrays.copyOf(this.links, capacity);
+		this.descriptions = Arrays.copyOf(this.descriptions, capacity);
+		if (this.pubDates != null) {
+			this.pubDates = Arrays.copyOf(this.pubDates, capacity);
+		}
+		if (this.authors != null) {
+			this.authors = Arrays.copyOf(this.authors, capacity);
+		}
+		if (this.enclosures != null) {
+			this.enclosures = Arrays.copyOf(this.enclosures, capacity);
+		}
+	}
+
+	/**
+	 * @param column - an optional column, it could be null
+	 * @return the column, allocated with the capacity of the required ones if it is null
+	 */
+	private String[] column(String[] column) {
+		return column != null ? column : new String[this.titles.length];
+	}
+
+	/**
+	 * @param column - an optional column, it could be null
+	 * @param capacity - the new capacity
+	 * @return the trimmed column, or null if the column is null
+	 */
+	private static String[] trim(String[] column, int capacity) {
+		return column != null ? Arrays.copyOf(column, capacity) : null;
+	}
+
+	/**
+	 * @param column - an optional column, it could be null
+	 * @param index - the position of the result
+	 * @return the value of the result, or null if the column is null
+	 */
+	private static String value(String[] column, int index) {
+		return column != null ? column[index] : null;
+	}
+
+	/**
+	 * @param index - the index to check
+	 * @return the index
+	 * @throws IndexOutOfBoundsException if index is out of range
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+		}
+		return index;
+	}
+}
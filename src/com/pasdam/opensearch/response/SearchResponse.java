@@ -1,23 +1,41 @@
 package com.pasdam.opensearch.response;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 import com.pasdam.opensearch.description.Query;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.jfr.ResultsParseEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.xml.ByteBufferInputStream;
+import com.pasdam.opensearch.xml.DecodingReader;
+import com.pasdam.opensearch.xml.DomNodes;
+import com.pasdam.opensearch.xml.ParseDiagnostics;
+import com.pasdam.opensearch.xml.XmlStreams;
 
 /**
  * The OpenSearch response elements can be used by search engines to augment existing XML 
@@ -42,6 +60,12 @@ public class SearchResponse {
 	public static final String RESULT_LINK = RSS_CHILD_ITEM_LINK;
 
 	public static final String RESULT_DESCRIPTION = "desc";
+
+	public static final String RESULT_PUB_DATE = "pubDate";
+
+	public static final String RESULT_AUTHOR = "author";
+
+	public static final String RESULT_ENCLOSURE = "enclosure";
 	
 	public static final String ATOM_CHILD_ENTRY = "entry";
 
@@ -51,6 +75,38 @@ public class SearchResponse {
 
 	public static final String ATOM_CHILD_ENTRY_CONTENT = "content";
 
+	public static final String RSS_CHILD_ITEM_PUB_DATE = "pubDate";
+
+	public static final String RSS_CHILD_ITEM_AUTHOR = "author";
+
+	public static final String RSS_CHILD_ITEM_ENCLOSURE = "enclosure";
+
+	public static final String RSS_ATTR_ENCLOSURE_URL = "url";
+
+	public static final String ATOM_CHILD_ENTRY_PUBLISHED = "published";
+
+	public static final String ATOM_CHILD_ENTRY_UPDATED = "updated";
+
+	public static final String ATOM_CHILD_ENTRY_AUTHOR = "author";
+
+	public static final String ATOM_CHILD_AUTHOR_NAME = "name";
+
+	public static final String ATOM_ATTR_LINK_HREF = "href";
+
+	public static final String ATOM_ATTR_LINK_REL = "rel";
+
+	public static final String ATOM_REL_ALTERNATE = "alternate";
+
+	public static final String ATOM_REL_ENCLOSURE = "enclosure";
+
+	public static final String CHILD_TOTAL_RESULTS = "opensearch:totalResults";
+
+	public static final String CHILD_START_INDEX = "opensearch:startIndex";
+
+	public static final String CHILD_ITEMS_PER_PAGE = "opensearch:itemsPerPage";
+
+	public static final String CHILD_QUERY = "opensearch:Query";
+
 	/**
 	 * The number of search results available for the current search. If the totalResults 
 	 * element does not appear on the page then the search client should consider the 
@@ -92,19 +148,89 @@ public class SearchResponse {
 	
 	public List<HashMap<String, String>> resultsList;
 	
+	/**
+	 * The results in columnar form, including the optional fields (see {@link SearchResult}). 
+	 * It is set only by the parseResultPage methods (i.e. 
+	 * {@link #parseResultPage(XMLStreamReader, ParseDiagnostics)}) and by 
+	 * {@link com.pasdam.opensearch.client.AsyncSearchClient#searchResultPage(com.pasdam.opensearch.description.Url, com.pasdam.opensearch.description.QueryBinding)}, 
+	 * in that case {@link #resultsList} is empty; it is null otherwise.
+	 */
+	public ResultPage resultPage;
+	
+	/**
+	 * The number of valid results read by the parser, reported to the metrics
+	 */
+	private int parsedResults;
+	
 	/**
 	 * Parse the content of the given URL as an XML document and return a new SearchResponse object.
 	 * @param documentUrl - The location of the content to be parsed
 	 * @return a new SearchResponse object or null in case of errors
 	 */
 	public static SearchResponse parse(URL documentUrl){
+		return parse(documentUrl, null);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document, passing each result to the 
+	 * handler as soon as it is read.
+	 * @param documentUrl - The location of the content to be parsed
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(URL documentUrl, SearchResultHandler handler){
+		return parse(documentUrl, handler, ResultField.DEFAULT);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document, reading only the requested 
+	 * fields of the results, see {@link #parse(XMLStreamReader, SearchResultHandler, Set, ParseDiagnostics)}.
+	 * @param documentUrl - The location of the content to be parsed
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(URL documentUrl, SearchResultHandler handler, Set<ResultField> fields){
+		return parse(documentUrl, handler, fields, null);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document, reading only the requested 
+	 * fields of the results, and tagging the metrics and the recorded events with the name 
+	 * of the engine (see {@link com.pasdam.opensearch.metrics.OpenSearchMetrics}).
+	 * @param documentUrl - The location of the content to be parsed
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(URL documentUrl, SearchResultHandler handler, Set<ResultField> fields, String engine){
+		return parse(documentUrl, handler, fields, false, engine);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document
+	 * @param documentUrl - The location of the content to be parsed
+	 * @param handler - the handler that receives the results, or null
+	 * @param fields - the fields to read
+	 * @param page - true to store the results in {@link #resultPage}
+	 * @param engine - the short name of the engine, or null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	private static SearchResponse parse(URL documentUrl, SearchResultHandler handler, Set<ResultField> fields, boolean page, String engine){
+		InputStream inputStream = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(documentUrl.toString()));
-		} catch (Exception e) {
+			inputStream = documentUrl.openStream();
+			return parse(inputStream, null, handler, fields, page, engine);
+		} catch (IOException e) {
+			failed(OpenSearchMetrics.get(), engine, Stage.FETCH, e);
 			return null;
+		} finally {
+			closeQuietly(inputStream);
 		}
 	}
 	
@@ -114,13 +240,39 @@ public class SearchResponse {
 	 * @return a new SearchResponse object or null in case of errors
 	 */
 	public static SearchResponse parse(String xml){
+		return parse(null, new StringReader(xml), null, ResultField.DEFAULT, false, null);
+	}
+	
+	/**
+	 * Parse a document as an XML document, reporting the parse to the metrics and to the 
+	 * recording. Only the errors of the document are caught, the exceptions thrown by the 
+	 * handler are propagated.
+	 * @param bytes - the stream of the document, it isn't closed; it is ignored if the 
+	 * characters aren't null
+	 * @param characters - the reader of the document, it isn't closed, or null
+	 * @param handler - the handler that receives the results, or null
+	 * @param fields - the fields to read
+	 * @param page - true to store the results in {@link #resultPage}
+	 * @param engine - the short name of the engine, or null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	private static SearchResponse parse(InputStream bytes, Reader characters, SearchResultHandler handler, Set<ResultField> fields, boolean page, String engine){
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		long start = metrics.isEnabled() ? System.nanoTime() : 0;
+		ResultsParseEvent event = new ResultsParseEvent();
+		event.begin();
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(new InputSource(new StringReader(xml))));
-		} catch (Exception e) {
+			reader = characters != null ? XmlStreams.createReader(characters) : XmlStreams.createReader(bytes);
+			SearchResponse response = page 
+					? parseResultPage(reader, fields, ParseDiagnostics.DISCARD) 
+					: parse(reader, handler, fields, ParseDiagnostics.DISCARD);
+			return parsed(metrics, start, event, engine, response);
+		} catch (XMLStreamException | ParseException e) {
+			parseFailed(metrics, event, engine, e);
 			return null;
+		} finally {
+			XmlStreams.closeQuietly(reader);
 		}
 	}
 	
@@ -130,13 +282,15 @@ public class SearchResponse {
 	 * @return a new SearchResponse object or null in case of errors
 	 */
 	public static SearchResponse parse(File file){
+		InputStream inputStream = null;
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(file));
-		} catch (Exception e) {
+			inputStream = new FileInputStream(file);
+			return parse(inputStream, null);
+		} catch (IOException e) {
+			failed(OpenSearchMetrics.get(), null, Stage.FETCH, e);
 			return null;
+		} finally {
+			closeQuietly(inputStream);
 		}
 	}
 	
@@ -146,98 +300,826 @@ public class SearchResponse {
 	 * @return a new SearchResponse object or null in case of errors
 	 */
 	public static SearchResponse parse(InputStream inputStream){
+		return parse(inputStream, null);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, passing each result to the 
+	 * handler as soon as it is read.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(InputStream inputStream, SearchResultHandler handler){
+		return parse(inputStream, handler, ResultField.DEFAULT);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, reading only the requested 
+	 * fields of the results, see {@link #parse(XMLStreamReader, SearchResultHandler, Set, ParseDiagnostics)}.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(InputStream inputStream, SearchResultHandler handler, Set<ResultField> fields){
+		return parse(inputStream, handler, fields, null);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, reading only the requested 
+	 * fields of the results, and tagging the metrics and the recorded events with the name 
+	 * of the engine.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(InputStream inputStream, SearchResultHandler handler, Set<ResultField> fields, String engine){
+		return parse(inputStream, null, handler, fields, false, engine);
+	}
+	
+	/**
+	 * Parse the content of the given buffer, from its position to its limit, as an XML 
+	 * document. The buffer isn't copied, so the body of a response can be parsed directly 
+	 * from a direct buffer; the encoding is the one declared by the document (byte order 
+	 * mark or XML declaration), UTF-8 by default.
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ByteBuffer buffer){
+		return parse(buffer, null, null);
+	}
+	
+	/**
+	 * Parse the content of the given buffer, from its position to its limit, as an XML 
+	 * document, decoding it with the given charset: i.e. the value of the "outputEncoding" 
+	 * parameter of the request, or the encoding declared by the engine (see 
+	 * {@link com.pasdam.opensearch.description.OpenSearchDescription#getOutputCharset()}). 
+	 * The charset overrides the encoding declared by the document. The bytes are decoded 
+	 * directly from the buffer, with a decoder reused by the parses of the same thread.
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ByteBuffer buffer, Charset charset, SearchResultHandler handler){
+		return parse(buffer, charset, handler, ResultField.DEFAULT, null);
+	}
+	
+	/**
+	 * Parse the content of the given buffer, from its position to its limit, as an XML 
+	 * document, see {@link #parse(ByteBuffer, Charset, SearchResultHandler)}, reading only 
+	 * the requested fields of the results and tagging the metrics and the recorded events 
+	 * with the name of the engine.
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ByteBuffer buffer, Charset charset, SearchResultHandler handler, Set<ResultField> fields, String engine){
+		return parse(buffer, charset, handler, fields, false, engine);
+	}
+	
+	/**
+	 * Parse the content of the given buffer as an XML document
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @param charset - the charset of the content, or null
+	 * @param handler - the handler that receives the results, or null
+	 * @param fields - the fields to read
+	 * @param page - true to store the results in {@link #resultPage}
+	 * @param engine - the short name of the engine, or null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	private static SearchResponse parse(ByteBuffer buffer, Charset charset, SearchResultHandler handler, Set<ResultField> fields, boolean page, String engine){
+		if (charset == null) {
+			return parse(new ByteBufferInputStream(buffer), null, handler, fields, page, engine);
+		}
+		DecodingReader characters = new DecodingReader(buffer, charset);
 		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			// parsing input document
-			return parse(db.parse(inputStream));
-		} catch (Exception e) {
-			return null;
+			return parse(null, characters, handler, fields, page, engine);
+		} finally {
+			characters.close();
 		}
 	}
 	
 	/**
-	 * Parse the content of the given URL as an XML document and return a new SearchResponse object.
-	 * @param document - The document containing xml elements
+	 * Parse the content read from the given channel as an XML document, see 
+	 * {@link #parse(ByteBuffer)}. The channel must be in blocking mode, and it isn't closed.
+	 * @param channel - the channel containing the content to be parsed
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ReadableByteChannel channel){
+		return parse(channel, null, null);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document, decoding it with the 
+	 * given charset, see {@link #parse(ByteBuffer, Charset, SearchResultHandler)}. The channel 
+	 * must be in blocking mode, and it isn't closed.
+	 * @param channel - the channel containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ReadableByteChannel channel, Charset charset, SearchResultHandler handler){
+		return parse(channel, charset, handler, ResultField.DEFAULT, null);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document, see 
+	 * {@link #parse(ByteBuffer, Charset, SearchResultHandler, Set, String)}. The channel 
+	 * must be in blocking mode, and it isn't closed.
+	 * @param channel - the channel containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object or null in case of errors
+	 */
+	public static SearchResponse parse(ReadableByteChannel channel, Charset charset, SearchResultHandler handler, Set<ResultField> fields, String engine){
+		return parse(channel, charset, handler, fields, false, engine);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document
+	 * @param channel - the channel containing the content to be parsed
+	 * @param charset - the charset of the content, or null
+	 * @param handler - the handler that receives the results, or null
+	 * @param fields - the fields to read
+	 * @param page - true to store the results in {@link #resultPage}
+	 * @param engine - the short name of the engine, or null
 	 * @return a new SearchResponse object or null in case of errors
+	 */
+	private static SearchResponse parse(ReadableByteChannel channel, Charset charset, SearchResultHandler handler, Set<ResultField> fields, boolean page, String engine){
+		if (charset == null) {
+			return parse(Channels.newInputStream(channel), null, handler, fields, page, engine);
+		}
+		DecodingReader characters = new DecodingReader(channel, charset);
+		try {
+			return parse(null, characters, handler, fields, page, engine);
+		} finally {
+			characters.close();
+		}
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass. Each result is passed 
+	 * to the handler as soon as its item (RSS) or entry (Atom) element closes, so the memory 
+	 * used doesn't depend on the number of results in the document.<br/>
+	 * The reader must be positioned at the beginning of the document.
+	 * @param reader - the reader of the document
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @return a new SearchResponse object; if the handler isn't null its resultsList is empty
 	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
 	 */
-	public static SearchResponse parse(Document document) throws ParseException {
+	public static SearchResponse parse(XMLStreamReader reader, SearchResultHandler handler) throws ParseException, XMLStreamException {
+		return parse(reader, handler, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass, see 
+	 * {@link #parse(XMLStreamReader, SearchResultHandler)}.
+	 * @param reader - the reader of the document
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object; if the handler isn't null its resultsList is empty
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static SearchResponse parse(XMLStreamReader reader, SearchResultHandler handler, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		return parse(reader, handler, null, ResultField.DEFAULT, diagnostics);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass, reading only the 
+	 * requested fields of the results: the elements of the other fields are skipped without 
+	 * reading their text. The maps contain a key (i.e. {@link #RESULT_LINK}) for each 
+	 * requested field found in the item, see {@link ResultField}.
+	 * @param reader - the reader of the document
+	 * @param handler - the handler that receives the results, if null the results are 
+	 * collected in {@link #resultsList}
+	 * @param fields - the fields to read, i.e. only {@link ResultField#LINK} for a crawler
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object; if the handler isn't null its resultsList is empty
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 * @see #parse(XMLStreamReader, SearchResultHandler)
+	 */
+	public static SearchResponse parse(XMLStreamReader reader, SearchResultHandler handler, Set<ResultField> fields, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		return parse(reader, handler, null, fields, diagnostics);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, storing the results in a 
+	 * {@link ResultPage} instead of maps.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(InputStream inputStream){
+		return parseResultPage(inputStream, ResultField.ALL);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, storing the requested 
+	 * fields of the results in a {@link ResultPage}.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param fields - the fields to read
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(InputStream inputStream, Set<ResultField> fields){
+		return parseResultPage(inputStream, fields, null);
+	}
+	
+	/**
+	 * Parse the content of the given stream as an XML document, storing the requested 
+	 * fields of the results in a {@link ResultPage}, and tagging the metrics and the 
+	 * recorded events with the name of the engine.
+	 * @param inputStream - InputStream containing the content to be parsed. 
+	 * @param fields - the fields to read
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(InputStream inputStream, Set<ResultField> fields, String engine){
+		return parse(inputStream, null, null, fields, true, engine);
+	}
+	
+	/**
+	 * Parse the content of the given URL as an XML document, storing the requested fields 
+	 * of the results in a {@link ResultPage}.
+	 * @param documentUrl - The location of the content to be parsed
+	 * @param fields - the fields to read
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(URL documentUrl, Set<ResultField> fields, String engine){
+		return parse(documentUrl, null, fields, true, engine);
+	}
+	
+	/**
+	 * Parse the content of the given buffer, from its position to its limit, as an XML 
+	 * document, storing the requested fields of the results in a {@link ResultPage}, see 
+	 * {@link #parse(ByteBuffer, Charset, SearchResultHandler)}.
+	 * @param buffer - the buffer containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param fields - the fields to read
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(ByteBuffer buffer, Charset charset, Set<ResultField> fields, String engine){
+		return parse(buffer, charset, null, fields, true, engine);
+	}
+	
+	/**
+	 * Parse the content read from the given channel as an XML document, storing the 
+	 * requested fields of the results in a {@link ResultPage}. The channel must be in 
+	 * blocking mode, and it isn't closed.
+	 * @param channel - the channel containing the content to be parsed
+	 * @param charset - the charset of the content, if null the encoding declared by the 
+	 * document is used
+	 * @param fields - the fields to read
+	 * @param engine - the short name of the engine (see 
+	 * {@link com.pasdam.opensearch.description.Url#engineName}), it could be null
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}, or null 
+	 * in case of errors
+	 */
+	public static SearchResponse parseResultPage(ReadableByteChannel channel, Charset charset, Set<ResultField> fields, String engine){
+		return parse(channel, charset, null, fields, true, engine);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass, storing the results 
+	 * in a {@link ResultPage} instead of maps. The results include the optional fields 
+	 * (publication date, author and enclosure), and cost a fraction of the memory of 
+	 * {@link #resultsList}.<br/>
+	 * The reader must be positioned at the beginning of the document.
+	 * @param reader - the reader of the document
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}; its 
+	 * resultsList is empty
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static SearchResponse parseResultPage(XMLStreamReader reader, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		return parseResultPage(reader, ResultField.ALL, diagnostics);
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass, storing the 
+	 * requested fields of the results in a {@link ResultPage}. The elements of the other 
+	 * fields are skipped without reading their text, and their values are null.
+	 * @param reader - the reader of the document
+	 * @param fields - the fields to read
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object, with the results in {@link #resultPage}; its 
+	 * resultsList is empty
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 * @see #parseResultPage(XMLStreamReader, ParseDiagnostics)
+	 */
+	public static SearchResponse parseResultPage(XMLStreamReader reader, Set<ResultField> fields, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
+		ResultPage page = new ResultPage();
+		SearchResponse response = parse(reader, null, page, fields, diagnostics);
+		page.trimToSize();
+		response.resultPage = page;
+		return response;
+	}
+	
+	/**
+	 * Parse the xml document read by the given reader in a single pass
+	 * @param reader - the reader of the document
+	 * @param handler - the handler that receives the results as maps, or null
+	 * @param page - the page that receives the results, or null; if both the handler and 
+	 * the page are null the results are collected in {@link #resultsList}
+	 * @param fields - the fields to read
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object
+	 * @throws ParseException if input document isn't valid
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	private static SearchResponse parse(XMLStreamReader reader, SearchResultHandler handler, ResultPage page, Set<ResultField> fields, ParseDiagnostics diagnostics) throws ParseException, XMLStreamException {
 		SearchResponse response = new SearchResponse();
-		String rootNode = document.getFirstChild().getNodeName();
+		response.resultsList = new ArrayList<HashMap<String,String>>();
+		response.queries = new ArrayList<Query>();
+		
+		while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+			if (reader.next() == XMLStreamConstants.END_DOCUMENT) {
+				throw new ParseException("Root element not found", 0);
+			}
+		}
+		String rootNode = XmlStreams.qualifiedName(reader);
+		String itemName;
+		boolean atom;
 		if (rootNode.equalsIgnoreCase("rss")) {
-			// Parse RSS results
-			response.resultsList = new ArrayList<HashMap<String,String>>();
-			NodeList items = document.getElementsByTagName(RSS_CHILD_ITEM);
-			HashMap<String, String> currentItem = null;
-			NodeList currentNodeList = null;
-			Node currentElement = null;
-			String currentElementName = null;
-			for (int i = 0; i < items.getLength(); i++) {
-				currentNodeList = items.item(i).getChildNodes();
-				currentItem = new HashMap<String, String>();
-				for (int j = 0; j < currentNodeList.getLength(); j++) {
-					currentElement = currentNodeList.item(j);
-					currentElementName = currentElement.getNodeName();
-					if (currentElementName.equals(RSS_CHILD_ITEM_TITLE)) {
-						currentItem.put(RESULT_TITLE, currentElement.getFirstChild().getNodeValue());
-					} else if (currentElementName.equals(RSS_CHILD_ITEM_LINK)) {
-						currentItem.put(RESULT_LINK, currentElement.getFirstChild().getNodeValue());
-					} else if (currentElementName.equals(RSS_CHILD_ITEM_DESCRIPTION)) {
-						currentItem.put(RESULT_DESCRIPTION, currentElement.getFirstChild().getNodeValue());
+			itemName = RSS_CHILD_ITEM;
+			atom = false;
+		} else if (rootNode.equalsIgnoreCase("feed")) {
+			itemName = ATOM_CHILD_ENTRY;
+			atom = true;
+		} else {
+			throw new ParseException("Invalid root element: " + rootNode, 0);
+		}
+		
+		ItemReader item = new ItemReader(atom, fields);
+		int resultsCount = 0;
+		boolean totalResultsFound = false;
+		HashMap<String, String> currentItem;
+		String elementName, text;
+		int event = reader.next();
+		while (event != XMLStreamConstants.END_DOCUMENT) {
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				elementName = XmlStreams.qualifiedName(reader);
+				if (elementName.equals(itemName)) {
+					if (item.read(reader)) {
+						resultsCount++;
+						if (page != null) {
+							page.add(item.title, item.link, item.description, item.pubDate, item.author, item.enclosure);
+						} else {
+							currentItem = item.toMap();
+							if (handler != null) {
+								handler.onResult(currentItem);
+							} else {
+								response.resultsList.add(currentItem);
+							}
+						}
+					}
+				} else if (elementName.equals(CHILD_TOTAL_RESULTS)) {
+					text = XmlStreams.elementText(reader);
+					if (XmlStreams.isInteger(text)) {
+						response.totalResults = XmlStreams.parseInt(text, 0);
+						totalResultsFound = true;
+					} else {
+						diagnostics.report(CHILD_TOTAL_RESULTS, "Invalid value: " + text, reader.getLocation());
+					}
+				} else if (elementName.equals(CHILD_START_INDEX)) {
+					response.startIndex = toInt(CHILD_START_INDEX, XmlStreams.elementText(reader), response.startIndex, diagnostics, reader.getLocation().getLineNumber());
+				} else if (elementName.equals(CHILD_ITEMS_PER_PAGE)) {
+					response.itemsPerPage = toInt(CHILD_ITEMS_PER_PAGE, XmlStreams.elementText(reader), response.itemsPerPage, diagnostics, reader.getLocation().getLineNumber());
+				} else if (elementName.equals(CHILD_QUERY)) {
+					try {
+						response.queries.add(Query.parse(reader, diagnostics));
+					} catch (ParseException e) {
+						diagnostics.report(CHILD_QUERY, "Query skipped: " + e.getMessage(), reader.getLocation());
 					}
 				}
-				if (currentItem.containsKey(RESULT_TITLE) && currentItem.containsKey(RESULT_LINK) && currentItem.containsKey(RESULT_DESCRIPTION)) {
-					response.resultsList.add(currentItem);
+			}
+			event = reader.next();
+		}
+		if (!totalResultsFound) {
+			response.totalResults = resultsCount;
+		}
+		response.parsedResults = resultsCount;
+		return response;
+	}
+	
+	/**
+	 * @return the number of results held by this response, in {@link #resultPage} if it 
+	 * is set, otherwise in {@link #resultsList}
+	 */
+	public int getResultCount() {
+		if (this.resultPage != null) {
+			return this.resultPage.size();
+		}
+		return this.resultsList != null ? this.resultsList.size() : 0;
+	}
+	
+	/**
+	 * @return the number of valid results read by the parser, including the ones passed 
+	 * to a handler
+	 */
+	public int getParsedResults() {
+		return this.parsedResults;
+	}
+	
+	/**
+	 * Reports a parsed response to the metrics and to the recording, if they are enabled
+	 * @param metrics - the metrics
+	 * @param start - the time the parse started, see {@link System#nanoTime()}
+	 * @param event - the event of the parse
+	 * @param engine - the short name of the engine, or null
+	 * @param response - the parsed response
+	 * @return the response
+	 */
+	private static SearchResponse parsed(OpenSearchMetrics metrics, long start, ResultsParseEvent event, String engine, SearchResponse response) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.engine = engine;
+			event.items = response.parsedResults;
+			event.commit();
+		}
+		if (metrics.isEnabled()) {
+			metrics.parsed(engine, UrlRole.RESULTS, System.nanoTime() - start, response.parsedResults);
+		}
+		return response;
+	}
+	
+	/**
+	 * Reports a failed parse to the metrics and to the recording, if they are enabled
+	 * @param metrics - the metrics
+	 * @param event - the event of the parse
+	 * @param engine - the short name of the engine, or null
+	 * @param error - the error
+	 */
+	private static void parseFailed(OpenSearchMetrics metrics, ResultsParseEvent event, String engine, Exception error) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.engine = engine;
+			event.error = error.toString();
+			event.commit();
+		}
+		failed(metrics, engine, Stage.PARSE, error);
+	}
+	
+	/**
+	 * Reports a failure, if the metrics are enabled
+	 * @param metrics - the metrics
+	 * @param engine - the short name of the engine, or null
+	 * @param stage - the stage that failed
+	 * @param error - the error
+	 */
+	private static void failed(OpenSearchMetrics metrics, String engine, Stage stage, Exception error) {
+		if (metrics.isEnabled()) {
+			metrics.failed(engine, UrlRole.RESULTS, stage, FailureCause.of(error), error);
+		}
+	}
+	
+	/**
+	 * Reads the item (RSS) or entry (Atom) elements. The same object is reused for all the 
+	 * items of a document, the fields contain the values of the last item read.
+	 */
+	private static final class ItemReader {
+		
+		private final String titleName, linkName, descriptionName;
+		
+		private final boolean atom;
+		
+		private final boolean readTitle, readLink, readDescription, readPubDate, readAuthor, readEnclosure;
+		
+		String title, link, description, pubDate, author, enclosure;
+		
+		/**
+		 * Constructor
+		 * @param atom - true to read Atom entries, false to read RSS items
+		 * @param fields - the fields to read
+		 */
+		ItemReader(boolean atom, Set<ResultField> fields) {
+			this.atom = atom;
+			if (atom) {
+				this.titleName = ATOM_CHILD_ENTRY_TITLE;
+				this.linkName = ATOM_CHILD_ENTRY_LINK;
+				this.descriptionName = ATOM_CHILD_ENTRY_CONTENT;
+			} else {
+				this.titleName = RSS_CHILD_ITEM_TITLE;
+				this.linkName = RSS_CHILD_ITEM_LINK;
+				this.descriptionName = RSS_CHILD_ITEM_DESCRIPTION;
+			}
+			// the mask is copied in fields, to avoid a lookup for each element
+			this.readTitle = fields.contains(ResultField.TITLE);
+			this.readLink = fields.contains(ResultField.LINK);
+			this.readDescription = fields.contains(ResultField.DESCRIPTION);
+			this.readPubDate = fields.contains(ResultField.PUB_DATE);
+			this.readAuthor = fields.contains(ResultField.AUTHOR);
+			this.readEnclosure = fields.contains(ResultField.ENCLOSURE);
+		}
+		
+		/**
+		 * Reads an item (RSS) or entry (Atom) element.
+		 * @param reader - a reader positioned on the start of the item
+		 * @return true if the item is valid, false if one of the requested required fields 
+		 * is missing
+		 * @throws XMLStreamException if the document isn't well formed
+		 */
+		boolean read(XMLStreamReader reader) throws XMLStreamException {
+			this.title = this.link = this.description = this.pubDate = this.author = this.enclosure = null;
+			String elementName;
+			int event;
+			while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					elementName = XmlStreams.qualifiedName(reader);
+					if (elementName.equals(this.titleName)) {
+						if (this.readTitle) {
+							this.title = XmlStreams.elementText(reader);
+						} else {
+							XmlStreams.skipElement(reader);
+						}
+					} else if (elementName.equals(this.linkName)) {
+						if (this.atom) {
+							readAtomLink(reader);
+						} else if (this.readLink) {
+							this.link = XmlStreams.elementText(reader);
+						} else {
+							XmlStreams.skipElement(reader);
+						}
+					} else if (elementName.equals(this.descriptionName)) {
+						if (this.readDescription) {
+							this.description = XmlStreams.elementText(reader);
+						} else {
+							XmlStreams.skipElement(reader);
+						}
+					} else {
+						readOptional(reader, elementName);
+					}
+				} else if (event == XMLStreamConstants.END_DOCUMENT) {
+					throw new XMLStreamException("Unexpected end of document", reader.getLocation());
 				}
 			}
-		} else if (rootNode.equalsIgnoreCase("feed")) {
-			// Parse Atom results
-			response.resultsList = new ArrayList<HashMap<String,String>>();
-			NodeList items = document.getElementsByTagName(ATOM_CHILD_ENTRY);
-			HashMap<String, String> currentItem = null;
-			NodeList currentNodeList = null;
-			Node currentElement = null;
-			String currentElementName = null;
-			for (int i = 0; i < items.getLength(); i++) {
-				currentNodeList = items.item(i).getChildNodes();
-				currentItem = new HashMap<String, String>();
-				for (int j = 0; j < currentNodeList.getLength(); j++) {
-					currentElement = currentNodeList.item(j);
-					currentElementName = currentElement.getNodeName();
-					if (currentElementName.equals(ATOM_CHILD_ENTRY_TITLE)) {
-						currentItem.put(RESULT_TITLE, currentElement.getFirstChild().getNodeValue());
-					} else if (currentElementName.equals(ATOM_CHILD_ENTRY_LINK)) {
-						currentItem.put(RESULT_LINK, currentElement.getFirstChild().getNodeValue());
-					} else if (currentElementName.equals(ATOM_CHILD_ENTRY_CONTENT)) {
-						currentItem.put(RESULT_DESCRIPTION, currentElement.getFirstChild().getNodeValue());
+			return (!this.readTitle || this.title != null) 
+					&& (!this.readLink || this.link != null) 
+					&& (!this.readDescription || this.description != null);
+		}
+		
+		/**
+		 * Reads an Atom link: the href of the first link with relation "alternate" (or 
+		 * without relation) is the link of the result, the one of the first link with 
+		 * relation "enclosure" is its enclosure. Links without href are read from their text.
+		 * @param reader - a reader positioned on the start of the link
+		 * @throws XMLStreamException if the document isn't well formed
+		 */
+		private void readAtomLink(XMLStreamReader reader) throws XMLStreamException {
+			String rel = XmlStreams.attribute(reader, ATOM_ATTR_LINK_REL);
+			if (rel == null || rel.equals(ATOM_REL_ALTERNATE)) {
+				if (this.readLink && this.link == null) {
+					String href = XmlStreams.attribute(reader, ATOM_ATTR_LINK_HREF);
+					if (href != null) {
+						this.link = href.trim();
+						XmlStreams.skipElement(reader);
+					} else {
+						this.link = XmlStreams.elementText(reader);
 					}
+					return;
 				}
-				if (currentItem.containsKey(RESULT_TITLE) && currentItem.containsKey(RESULT_LINK) && currentItem.containsKey(RESULT_DESCRIPTION)) {
-					response.resultsList.add(currentItem);
+			} else if (rel.equals(ATOM_REL_ENCLOSURE)) {
+				if (this.readEnclosure && this.enclosure == null) {
+					String href = XmlStreams.attribute(reader, ATOM_ATTR_LINK_HREF);
+					this.enclosure = href != null ? href.trim() : null;
 				}
 			}
+			XmlStreams.skipElement(reader);
+		}
+		
+		/**
+		 * Reads an optional child of the item, or skips it if it isn't recognized or requested
+		 * @param reader - a reader positioned on the start of the child
+		 * @param elementName - the qualified name of the child
+		 * @throws XMLStreamException if the document isn't well formed
+		 */
+		private void readOptional(XMLStreamReader reader, String elementName) throws XMLStreamException {
+			if (this.atom) {
+				if (this.readPubDate && elementName.equals(ATOM_CHILD_ENTRY_PUBLISHED)) {
+					// published has precedence over updated
+					this.pubDate = XmlStreams.elementText(reader).trim();
+				} else if (this.readPubDate && elementName.equals(ATOM_CHILD_ENTRY_UPDATED) && this.pubDate == null) {
+					this.pubDate = XmlStreams.elementText(reader).trim();
+				} else if (this.readAuthor && elementName.equals(ATOM_CHILD_ENTRY_AUTHOR) && this.author == null) {
+					this.author = childText(reader, ATOM_CHILD_AUTHOR_NAME);
+				} else {
+					XmlStreams.skipElement(reader);
+				}
+			} else {
+				if (this.readPubDate && elementName.equals(RSS_CHILD_ITEM_PUB_DATE)) {
+					this.pubDate = XmlStreams.elementText(reader).trim();
+				} else if (this.readAuthor && elementName.equals(RSS_CHILD_ITEM_AUTHOR)) {
+					this.author = XmlStreams.elementText(reader).trim();
+				} else if (this.readEnclosure && elementName.equals(RSS_CHILD_ITEM_ENCLOSURE) && this.enclosure == null) {
+					String url = XmlStreams.attribute(reader, RSS_ATTR_ENCLOSURE_URL);
+					this.enclosure = url != null ? url.trim() : null;
+					XmlStreams.skipElement(reader);
+				} else {
+					XmlStreams.skipElement(reader);
+				}
+			}
+		}
+		
+		/**
+		 * @return a new map containing the fields of the last item read that aren't null
+		 */
+		HashMap<String, String> toMap() {
+			HashMap<String, String> item = new HashMap<String, String>(4);
+			putIfNotNull(item, RESULT_TITLE, this.title);
+			putIfNotNull(item, RESULT_LINK, this.link);
+			putIfNotNull(item, RESULT_DESCRIPTION, this.description);
+			putIfNotNull(item, RESULT_PUB_DATE, this.pubDate);
+			putIfNotNull(item, RESULT_AUTHOR, this.author);
+			putIfNotNull(item, RESULT_ENCLOSURE, this.enclosure);
+			return item;
+		}
+		
+		private static void putIfNotNull(HashMap<String, String> item, String key, String value) {
+			if (value != null) {
+				item.put(key, value);
+			}
+		}
+		
+		/**
+		 * Reads the text of the first child with the specified name of the current element. 
+		 * When this method returns, the reader is positioned on the end of the current element.
+		 * @param reader - a reader positioned on the start of the element
+		 * @param childName - the qualified name of the child
+		 * @return the trimmed text of the child, or null if the element hasn't it
+		 * @throws XMLStreamException if the document isn't well formed
+		 */
+		private static String childText(XMLStreamReader reader, String childName) throws XMLStreamException {
+			String text = null;
+			int event;
+			while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (text == null && XmlStreams.qualifiedName(reader).equals(childName)) {
+						text = XmlStreams.elementText(reader).trim();
+					} else {
+						XmlStreams.skipElement(reader);
+					}
+				} else if (event == XMLStreamConstants.END_DOCUMENT) {
+					throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+				}
+			}
+			return text;
+		}
+	}
+	
+	/**
+	 * @param element - the name of the element
+	 * @param value - the text of the element, it could be null
+	 * @param defaultValue - the value returned if the text is missing or isn't a number
+	 * @param diagnostics - the object that collects the invalid values
+	 * @param line - the line of the element, -1 if it isn't known
+	 * @return the integer value of the element
+	 */
+	private static int toInt(String element, String value, int defaultValue, ParseDiagnostics diagnostics, int line) {
+		if (value == null) {
+			return defaultValue;
+		}
+		if (!XmlStreams.isInteger(value)) {
+			diagnostics.report(element, "Invalid value: " + value, line);
+			return defaultValue;
+		}
+		return XmlStreams.parseInt(value, defaultValue);
+	}
+	
+	/**
+	 * Closes the stream, ignoring errors
+	 * @param inputStream - the stream to close, it could be null
+	 */
+	private static void closeQuietly(InputStream inputStream) {
+		if (inputStream != null) {
+			try {
+				inputStream.close();
+			} catch (IOException e) {}
+		}
+	}
+	
+	/**
+	 * Parse the given DOM document and return a new SearchResponse object.<br/>
+	 * The other parse methods use the streaming parser, this method can be used as 
+	 * fallback by clients that already have the DOM of the response.
+	 * @param document - The document containing xml elements
+	 * @return a new SearchResponse object or null in case of errors
+	 * @throws ParseException if input document isn't valid
+	 */
+	public static SearchResponse parse(Document document) throws ParseException {
+		return parse(document, ParseDiagnostics.DISCARD);
+	}
+	
+	/**
+	 * Parse the given DOM document and return a new SearchResponse object.
+	 * @param document - The document containing xml elements
+	 * @param diagnostics - the object that collects the skipped queries and the invalid 
+	 * numeric values
+	 * @return a new SearchResponse object
+	 * @throws ParseException if input document isn't valid
+	 * @see #parse(Document)
+	 */
+	public static SearchResponse parse(Document document, ParseDiagnostics diagnostics) throws ParseException {
+		SearchResponse response = new SearchResponse();
+		String rootNode = document.getDocumentElement() != null ? document.getDocumentElement().getNodeName() : "";
+		String itemName, titleName, linkName, descriptionName;
+		if (rootNode.equalsIgnoreCase("rss")) {
+			itemName = RSS_CHILD_ITEM;
+			titleName = RSS_CHILD_ITEM_TITLE;
+			linkName = RSS_CHILD_ITEM_LINK;
+			descriptionName = RSS_CHILD_ITEM_DESCRIPTION;
+		} else if (rootNode.equalsIgnoreCase("feed")) {
+			itemName = ATOM_CHILD_ENTRY;
+			titleName = ATOM_CHILD_ENTRY_TITLE;
+			linkName = ATOM_CHILD_ENTRY_LINK;
+			descriptionName = ATOM_CHILD_ENTRY_CONTENT;
 		} else {
 			throw new ParseException("Invalid root element: " + rootNode, 0);
 		}
-		// parsing other elements
-		try {
-			response.totalResults = Integer.parseInt(document.getElementsByTagName("opensearch:totalResults").item(0).getFirstChild().getNodeValue().trim());
-		} catch (Exception e) {
-			response.totalResults = response.resultsList.size();
+		response.resultsList = new ArrayList<HashMap<String,String>>();
+		NodeList items = document.getElementsByTagName(itemName);
+		HashMap<String, String> currentItem = null;
+		NodeList currentNodeList = null;
+		Node currentElement = null;
+		String currentElementName = null;
+		String title, link, description;
+		for (int i = 0; i < items.getLength(); i++) {
+			currentNodeList = items.item(i).getChildNodes();
+			title = link = description = null;
+			for (int j = 0; j < currentNodeList.getLength(); j++) {
+				currentElement = currentNodeList.item(j);
+				currentElementName = currentElement.getNodeName();
+				if (currentElementName.equals(titleName)) {
+					title = DomNodes.text(currentElement);
+				} else if (currentElementName.equals(linkName)) {
+					link = DomNodes.text(currentElement);
+				} else if (currentElementName.equals(descriptionName)) {
+					description = DomNodes.text(currentElement);
+				}
+			}
+			if (title != null && link != null && description != null) {
+				currentItem = new HashMap<String, String>(4);
+				currentItem.put(RESULT_TITLE, title);
+				currentItem.put(RESULT_LINK, link);
+				currentItem.put(RESULT_DESCRIPTION, description);
+				response.resultsList.add(currentItem);
+			}
 		}
-		try {
-			response.startIndex = Integer.parseInt(document.getElementsByTagName("opensearch:startIndex").item(0).getFirstChild().getNodeValue().trim());
-		} catch (Exception e) {}
-		try {
-			response.itemsPerPage = Integer.parseInt(document.getElementsByTagName("opensearch:itemsPerPage").item(0).getFirstChild().getNodeValue().trim());
-		} catch (Exception e) {}
-		NodeList queryElements = document.getElementsByTagName("opensearch:Query");
+		// parsing other elements
+		response.totalResults = toInt(CHILD_TOTAL_RESULTS, DomNodes.firstText(document, CHILD_TOTAL_RESULTS), response.resultsList.size(), diagnostics, -1);
+		response.startIndex = toInt(CHILD_START_INDEX, DomNodes.firstText(document, CHILD_START_INDEX), 0, diagnostics, -1);
+		response.itemsPerPage = toInt(CHILD_ITEMS_PER_PAGE, DomNodes.firstText(document, CHILD_ITEMS_PER_PAGE), 0, diagnostics, -1);
+		NodeList queryElements = document.getElementsByTagName(CHILD_QUERY);
 		response.queries = new ArrayList<Query>();
 		for (int i = 0; i < queryElements.getLength(); i++) {
 			try {
-				response.queries.add(Query.parse(queryElements.item(i)));
-			} catch (Exception e) {}
+				response.queries.add(Query.parse(queryElements.item(i), diagnostics));
+			} catch (ParseException e) {
+				diagnostics.report(CHILD_QUERY, "Query skipped: " + e.getMessage());
+			}
 		}
 		return response;
 	}
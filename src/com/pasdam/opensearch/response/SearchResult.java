@@ -0,0 +1,136 @@
+package com.pasdam.opensearch.response;
+
+import java.util.HashMap;
+
+/**
+ * A result of a search response, read from an item (RSS) or entry (Atom) element.<br/>
+ * Unlike the maps of {@link SearchResponse#resultsList}, the fields are plain references,
+ * so a result costs a small object header plus its strings, and reading a field doesn't
+ * need hashing. The optional fields are null when the element doesn't declare them; when
+ * the response has been parsed with a field mask (see {@link ResultField}) the fields that
+ * haven't been requested are null too.<br/>
+ * This class is immutable, so it is thread safe.
+ * @author Paco
+ * @version 1.0
+ */
+public final class SearchResult {
+
+	private final String title;
+
+	private final String link;
+
+	private final String description;
+
+	private final String pubDate;
+
+	private final String author;
+
+	private final String enclosure;
+
+	/**
+	 * Creates a result without optional fields
+	 * @param title - the title of the result
+	 * @param link - the link of the result
+	 * @param description - the description of the result
+	 */
+	public SearchResult(String title, String link, String description) {
+		this(title, link, description, null, null, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param title - the title of the result
+	 * @param link - the link of the result
+	 * @param description - the description of the result
+	 * @param pubDate - the publication date, as written in the document, or null
+	 * @param author - the author, or null
+	 * @param enclosure - the url of the attached media object, or null
+	 */
+	public SearchResult(String title, String link, String description, String pubDate, String author, String enclosure) {
+		this.title = title;
+		this.link = link;
+		this.description = description;
+		this.pubDate = pubDate;
+		this.author = author;
+		this.enclosure = enclosure;
+	}
+
+	/**
+	 * @return the title of the result
+	 */
+	public String getTitle() {
+		return this.title;
+	}
+
+	/**
+	 * @return the link of the result
+	 */
+	public String getLink() {
+		return this.link;
+	}
+
+	/**
+	 * @return the description (RSS) or content (Atom) of the result
+	 */
+	public String getDescription() {
+		return this.description;
+	}
+
+	/**
+	 * @return the publication date (RSS pubDate, Atom published or updated), as written in
+	 * the document, or null if the result hasn't it
+	 */
+	public String getPubDate() {
+		return this.pubDate;
+	}
+
+	/**
+	 * @return the author (RSS author, name of the Atom author), or null if the result hasn't it
+	 */
+	public String getAuthor() {
+		return this.author;
+	}
+
+	/**
+	 * @return the url of the media object attached to the result (RSS enclosure, Atom link
+	 * with relation "enclosure"), or null if the result hasn't it
+	 */
+	public String getEnclosure() {
+		return this.enclosure;
+	}
+
+	/**
+	 * Converts this result in the format of {@link SearchResponse#resultsList}, for the
+	 * code that still uses maps
+	 * @return a new map with the keys {@link SearchResponse#RESULT_TITLE},
+	 * {@link SearchResponse#RESULT_LINK} and {@link SearchResponse#RESULT_DESCRIPTION}, plus
+	 * the keys of the optional fields; only the fields that aren't null are included
+	 */
+	public HashMap<String, String> toMap() {
+		HashMap<String, String> item = new HashMap<String, String>(4);
+		if (this.title != null) {
+			item.put(SearchResponse.RESULT_TITLE, this.title);
+		}
+		if (this.link != null) {
+			item.put(SearchResponse.RESULT_LINK, this.link);
+		}
+		if (this.description != null) {
+			item.put(SearchResponse.RESULT_DESCRIPTION, this.description);
+		}
+		if (this.pubDate != null) {
+			item.put(SearchResponse.RESULT_PUB_DATE, this.pubDate);
+		}
+		if (this.author != null) {
+			item.put(SearchResponse.RESULT_AUTHOR, this.author);
+		}
+		if (this.enclosure != null) {
+			item.put(SearchResponse.RESULT_ENCLOSURE, this.enclosure);
+		}
+		return item;
+	}
+
+	@Override
+	public String toString() {
+		return this.title + " <" + this.link + ">";
+	}
+}
@@ -0,0 +1,23 @@
+package com.pasdam.opensearch.response;
+
+import java.util.HashMap;
+
+/**
+ * Receives the results of a search response while it is being parsed, see 
+ * {@link SearchResponse#parse(javax.xml.stream.XMLStreamReader, SearchResultHandler)}.<br/>
+ * Each result is passed to the handler as soon as its item (RSS) or entry (Atom) element 
+ * has been read, so the parser never holds more than one result in memory.
+ * An exception thrown by the handler isn't caught by the parser: it stops the parse and it 
+ * is thrown to the caller, so it cannot be confused with an invalid document.
+ * @author Paco
+ * @version 1.0
+ */
+public interface SearchResultHandler {
+
+	/**
+	 * Called for each valid result of the response, in document order.
+	 * @param result - the parsed result; it contains the keys {@link SearchResponse#RESULT_TITLE}, 
+	 * {@link SearchResponse#RESULT_LINK} and {@link SearchResponse#RESULT_DESCRIPTION}
+	 */
+	void onResult(HashMap<String, String> result);
+}
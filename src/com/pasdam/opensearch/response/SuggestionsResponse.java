@@ -1,14 +1,27 @@
 package com.pasdam.opensearch.response;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.regex.Pattern;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Locale;
 
+import com.pasdam.opensearch.description.QueryBinding;
 import com.pasdam.opensearch.description.TemplateParameter;
 import com.pasdam.opensearch.description.Url;
+import com.pasdam.opensearch.description.UrlRole;
+import com.pasdam.opensearch.jfr.SuggestionsFetchEvent;
+import com.pasdam.opensearch.metrics.FailureCause;
+import com.pasdam.opensearch.metrics.OpenSearchMetrics;
+import com.pasdam.opensearch.metrics.Stage;
+import com.pasdam.opensearch.xml.DecodingReader;
 
 /**
  * The response body should be returned in JavaScript Object Notation as a JavaScript array of arrays. 
@@ -23,65 +36,221 @@ import com.pasdam.opensearch.description.Url;
  */
 public class SuggestionsResponse {
 	
-	private static final Pattern PATTERN_QUERY_RESULTS_SEPARATOR = Pattern.compile(",\\[");
-	private static final Pattern PATTERN_RESULTS_SEPARATOR = Pattern.compile("\",\"");
-	
-	private Url url;
+	private final Url url;
 
+	/**
+	 * Constructor
+	 * @param url - the suggestions url, it isn't modified by this object so it can be 
+	 * shared with other threads
+	 */
 	public SuggestionsResponse(Url url) {
 		this.url = url;
 	}
 	
+	/**
+	 * Requests the suggestions for a query. This method can be called concurrently by 
+	 * many threads. The response is decoded with the charset of its Content-Type, see 
+	 * {@link #responseCharset(String, String)}.
+	 * @param query - the prefix to complete
+	 * @param maxResults - the maximum number of suggestions desired
+	 * @return the parsed suggestions (see {@link #parseJsonResponse(String)}), or null in case of errors
+	 */
 	public String[][] getSuggestions(String query, int maxResults) {
-		url.setParameterValue(TemplateParameter.SEARCH_TERM, query);
-		url.setParameterValue(TemplateParameter.COUNT, "" + maxResults);
+		QueryBinding binding = QueryBinding.searchTerms(query).with(TemplateParameter.COUNT, maxResults);
 		
+		OpenSearchMetrics metrics = OpenSearchMetrics.get();
+		SuggestionsFetchEvent event = new SuggestionsFetchEvent();
+		InputStream inputStream = null;
+		Stage stage = Stage.FETCH;
 		try {
-			URL suggestionsUrl = new URL(url.getUrl());
-			BufferedReader reader = new BufferedReader(new InputStreamReader(suggestionsUrl.openStream()));
-			
-			// read response
-			String line;
-			StringBuilder builder = new StringBuilder();
-			while ((line = reader.readLine()) != null) {
-				builder.append(line);
+			URL suggestionsUrl = new URL(url.getUrl(binding));
+			event.begin();
+			URLConnection connection = suggestionsUrl.openConnection();
+			inputStream = connection.getInputStream();
+			Charset charset = responseCharset(connection.getContentType(), binding.get(TemplateParameter.OUTPUT_ENCODING));
+			stage = Stage.PARSE;
+			// the response is parsed while it is read, so the time includes the download of the body
+			long start = metrics.isEnabled() ? System.nanoTime() : 0;
+			String[][] suggestions = parseJsonResponse(inputStream, charset);
+			int items = suggestions.length > 1 ? suggestions[1].length : 0;
+			event.end();
+			if (event.shouldCommit()) {
+				event.engine = this.url.engineName;
+				event.url = suggestionsUrl.toString();
+				event.items = items;
+				event.commit();
 			}
-			
-			url.clearParametersValues();
-			
-			return parseJsonResponse(builder.toString());
+			if (metrics.isEnabled()) {
+				metrics.parsed(this.url.engineName, UrlRole.SUGGESTIONS, System.nanoTime() - start, items);
+			}
+			return suggestions;
 			
 		} catch (MalformedURLException e) {
-			e.printStackTrace();
-		} catch (IllegalStateException e) {
-			e.printStackTrace();
+			failed(metrics, Stage.EXPAND, e);
+		} catch (ParseException e) {
+			failed(metrics, event, stage, e);
 		} catch (IOException e) {
-			e.printStackTrace();
+			failed(metrics, event, stage, e);
+		} finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (IOException e) {}
+			}
 		}
 		
-		url.clearParametersValues();
 		return null;
 	}
 	
+	/**
+	 * @return the suggestions url
+	 */
+	public Url getUrl() {
+		return this.url;
+	}
+	
+	/**
+	 * Returns the charset of a suggestions response: the charset declared by its Content-Type 
+	 * header, or the one requested with the "outputEncoding" parameter, or UTF-8. The charsets 
+	 * that aren't supported are ignored.
+	 * @param contentType - the value of the Content-Type header of the response, or null
+	 * @param outputEncoding - the value of the "outputEncoding" parameter of the request 
+	 * (see {@link TemplateParameter#OUTPUT_ENCODING}), or null
+	 * @return the charset to use to decode the response
+	 */
+	public static Charset responseCharset(String contentType, String outputEncoding) {
+		Charset charset = null;
+		if (contentType != null) {
+			int parameter = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+			if (parameter >= 0) {
+				String name = contentType.substring(parameter + 8);
+				int end = name.indexOf(';');
+				if (end >= 0) {
+					name = name.substring(0, end);
+				}
+				name = name.trim();
+				if (name.length() > 1 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+					name = name.substring(1, name.length() - 1);
+				}
+				charset = DecodingReader.charset(name);
+			}
+		}
+		if (charset == null) {
+			charset = DecodingReader.charset(outputEncoding);
+		}
+		return charset != null ? charset : StandardCharsets.UTF_8;
+	}
+	
+	/**
+	 * Reports a failed request to the metrics and to the recording, if they are enabled
+	 * @param metrics - the metrics
+	 * @param event - the event of the request
+	 * @param stage - the stage that failed
+	 * @param error - the error
+	 */
+	private void failed(OpenSearchMetrics metrics, SuggestionsFetchEvent event, Stage stage, Exception error) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.engine = this.url.engineName;
+			event.error = error.toString();
+			event.commit();
+		}
+		failed(metrics, stage, error);
+	}
+	
+	/**
+	 * Reports a failed request, if the metrics are enabled
+	 * @param metrics - the metrics
+	 * @param stage - the stage that failed
+	 * @param error - the error
+	 */
+	private void failed(OpenSearchMetrics metrics, Stage stage, Exception error) {
+		if (metrics.isEnabled()) {
+			metrics.failed(this.url.engineName, UrlRole.SUGGESTIONS, stage, FailureCause.of(error), error);
+		}
+	}
+	
 	/**
 	 * This allow to parse a JSON response
 	 * @param jsonResponse
 	 * @return an array of array containing the suggestions. The first array contains only one element, 
 	 * the suggestion prefix. The second array contains the completions. Other arrays depend on the
 	 * specific search engine.
+	 * @throws IllegalArgumentException if the response isn't valid
 	 */
 	public static String[][] parseJsonResponse(String jsonResponse){
-		// delete the outer square brackets  
-		String response = jsonResponse.substring(1, jsonResponse.length()-1);
-		// splits the content
-		String[] tokens = PATTERN_QUERY_RESULTS_SEPARATOR.split(response);
-		String[][] parsedValues = new String[tokens.length][];
-		// retrieve the suggestion prefix (query string)
-		parsedValues[0] = new String[]{tokens[0].substring(1, tokens[0].length()-1)};
-		// retrieve other contents
-		for (int i = 1; i < tokens.length; i++) {
-			parsedValues[i]= PATTERN_RESULTS_SEPARATOR.split(tokens[i].substring(1, tokens[i].length()-2));
+		try {
+			return JsonSuggestionsParser.parse(jsonResponse);
+		} catch (ParseException e) {
+			throw new IllegalArgumentException("Invalid suggestions response: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * This allow to parse a JSON response encoded in UTF-8, reading it directly from the 
+	 * stream, in a single pass. The stream isn't closed.
+	 * @param jsonResponse - the stream containing the response
+	 * @return an array of array containing the suggestions, see {@link #parseJsonResponse(String)}
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the stream
+	 */
+	public static String[][] parseJsonResponse(InputStream jsonResponse) throws ParseException, IOException {
+		return JsonSuggestionsParser.parse(jsonResponse);
+	}
+	
+	/**
+	 * This allow to parse a JSON response encoded with the given charset, reading it 
+	 * directly from the stream, in a single pass. The stream isn't closed.
+	 * @param jsonResponse - the stream containing the response
+	 * @param charset - the charset of the response, if null UTF-8
+	 * @return an array of array containing the suggestions, see {@link #parseJsonResponse(String)}
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the stream
+	 */
+	public static String[][] parseJsonResponse(InputStream jsonResponse, Charset charset) throws ParseException, IOException {
+		if (charset == null || charset.equals(StandardCharsets.UTF_8)) {
+			return JsonSuggestionsParser.parse(jsonResponse);
 		}
-		return parsedValues;
+		return JsonSuggestionsParser.parse(Channels.newChannel(jsonResponse), charset);
+	}
+	
+	/**
+	 * This allow to parse a JSON response encoded in UTF-8, reading it directly from the 
+	 * buffer (from its position to its limit), in a single pass.
+	 * @param jsonResponse - the buffer containing the response
+	 * @return an array of array containing the suggestions, see {@link #parseJsonResponse(String)}
+	 * @throws ParseException if the response isn't valid
+	 */
+	public static String[][] parseJsonResponse(ByteBuffer jsonResponse) throws ParseException {
+		return JsonSuggestionsParser.parse(jsonResponse);
+	}
+	
+	/**
+	 * This allow to parse a JSON response encoded with the given charset, i.e. the value of 
+	 * the "outputEncoding" parameter of the request, reading it directly from the buffer 
+	 * (from its position to its limit), in a single pass. Charsets other than UTF-8 are 
+	 * decoded with a decoder reused by the parses of the same thread.
+	 * @param jsonResponse - the buffer containing the response
+	 * @param charset - the charset of the response, if null UTF-8
+	 * @return an array of array containing the suggestions, see {@link #parseJsonResponse(String)}
+	 * @throws ParseException if the response isn't valid
+	 */
+	public static String[][] parseJsonResponse(ByteBuffer jsonResponse, Charset charset) throws ParseException {
+		return JsonSuggestionsParser.parse(jsonResponse, charset);
+	}
+	
+	/**
+	 * This allow to parse a JSON response encoded with the given charset, reading it 
+	 * directly from the channel, in a single pass, see 
+	 * {@link #parseJsonResponse(ByteBuffer, Charset)}. The channel must be in blocking mode, 
+	 * and it isn't closed.
+	 * @param jsonResponse - the channel containing the response
+	 * @param charset - the charset of the response, if null UTF-8
+	 * @return an array of array containing the suggestions, see {@link #parseJsonResponse(String)}
+	 * @throws ParseException if the response isn't valid
+	 * @throws IOException if an error occurs reading the channel
+	 */
+	public static String[][] parseJsonResponse(ReadableByteChannel jsonResponse, Charset charset) throws ParseException, IOException {
+		return JsonSuggestionsParser.parse(jsonResponse, charset);
 	}
 }
@@ -0,0 +1,66 @@
+package com.pasdam.opensearch.xml;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream that reads the bytes of a buffer, from its position to its limit, advancing its
+ * position. The buffer isn't copied, so a document held in a direct buffer (i.e. the body
+ * of a response read from a channel) can be parsed without moving it to the heap first:
+ * the parser copies only the chunks it is decoding in its own buffer.<br/>
+ * Instances of this class are not thread safe, they are meant to be read by a single parser.
+ * @author Paco
+ * @version 1.0
+ */
+public final class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	/**
+	 * Constructor
+	 * @param buffer - the buffer to read, it must not be modified by other objects while
+	 * this stream is read
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("The buffer cannot be null");
+		}
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		int remaining = this.buffer.remaining();
+		if (remaining == 0) {
+			return -1;
+		}
+		if (length > remaining) {
+			length = remaining;
+		}
+		this.buffer.get(bytes, offset, length);
+		return length;
+	}
+
+	@Override
+	public long skip(long count) {
+		if (count <= 0) {
+			return 0;
+		}
+		int skipped = (int) Math.min(count, this.buffer.remaining());
+		this.buffer.position(this.buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return this.buffer.remaining();
+	}
+}
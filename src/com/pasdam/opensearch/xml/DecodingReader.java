@@ -0,0 +1,239 @@
+package com.pasdam.opensearch.xml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Reader that decodes the bytes of a buffer or of a channel with a known charset, i.e. the
+ * OutputEncoding of a search engine. The characters are decoded directly in the array of the
+ * caller, so the document is never copied in an intermediate byte array or string.<br/>
+ * The decoders are reused: each thread keeps the decoders of the last charsets it used,
+ * the reader takes one when it is created and gives it back when it is closed, so a reader
+ * must always be closed. Malformed and unmappable bytes are replaced, like
+ * {@link java.io.InputStreamReader} does.<br/>
+ * Instances of this class are not thread safe, they are meant to be read by a single parser.
+ * @author Paco
+ * @version 1.0
+ */
+public final class DecodingReader extends Reader {
+
+	/**
+	 * Number of decoders kept by each thread
+	 */
+	private static final int CACHED_DECODERS = 4;
+
+	private static final ThreadLocal<CharsetDecoder[]> DECODERS = new ThreadLocal<CharsetDecoder[]>() {
+		@Override
+		protected CharsetDecoder[] initialValue() {
+			return new CharsetDecoder[CACHED_DECODERS];
+		}
+	};
+
+	/**
+	 * Size of the buffer used to read from a channel
+	 */
+	private static final int CHANNEL_BUFFER_SIZE = 8192;
+
+	private final ByteBuffer bytes;
+
+	/**
+	 * Channel from which the bytes are read, null if they are all in the buffer
+	 */
+	private final ReadableByteChannel channel;
+
+	private CharsetDecoder decoder;
+
+	/**
+	 * Indicates whether the last bytes of the input are in the buffer
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * Indicates whether the decoder must be flushed, because all the bytes are decoded
+	 */
+	private boolean flushing;
+
+	/**
+	 * Indicates whether all the characters have been read
+	 */
+	private boolean finished;
+
+	/**
+	 * Buffer used when the caller has room for one char only and the next character is a
+	 * surrogate pair
+	 */
+	private final CharBuffer pair = CharBuffer.allocate(2);
+
+	/**
+	 * Low surrogate decoded but not returned yet, 0 if there is none
+	 */
+	private char pendingLow;
+
+	/**
+	 * Creates a reader that decodes the bytes of a buffer, from its position to its limit,
+	 * advancing its position
+	 * @param buffer - the buffer to read, it must not be modified by other objects while
+	 * this reader is read
+	 * @param charset - the charset of the bytes
+	 */
+	public DecodingReader(ByteBuffer buffer, Charset charset) {
+		this(buffer, null, charset);
+		this.endOfInput = true;
+	}
+
+	/**
+	 * Creates a reader that decodes the bytes read from a channel. The channel must be in
+	 * blocking mode, and it isn't closed by this reader.
+	 * @param channel - the channel to read
+	 * @param charset - the charset of the bytes
+	 */
+	public DecodingReader(ReadableByteChannel channel, Charset charset) {
+		this(ByteBuffer.allocate(CHANNEL_BUFFER_SIZE).flip(), channel, charset);
+		if (channel == null) {
+			throw new IllegalArgumentException("The channel cannot be null");
+		}
+	}
+
+	private DecodingReader(ByteBuffer bytes, ReadableByteChannel channel, Charset charset) {
+		if (bytes == null || charset == null) {
+			throw new IllegalArgumentException("The buffer and the charset cannot be null");
+		}
+		this.bytes = bytes;
+		this.channel = channel;
+		this.decoder = acquire(charset);
+	}
+
+	@Override
+	public int read(char[] chars, int offset, int length) throws IOException {
+		if (this.decoder == null) {
+			throw new IOException("Reader closed");
+		}
+		if (length == 0) {
+			return 0;
+		}
+		if (this.pendingLow != 0) {
+			chars[offset] = this.pendingLow;
+			this.pendingLow = 0;
+			return 1;
+		}
+		if (this.finished) {
+			return -1;
+		}
+		CharBuffer out = CharBuffer.wrap(chars, offset, length);
+		CharBuffer target = out;
+		CoderResult result;
+		while (out.position() == offset && !this.finished) {
+			if (this.flushing) {
+				result = this.decoder.flush(target);
+				this.finished = result.isUnderflow();
+			} else {
+				result = this.decoder.decode(this.bytes, target, this.endOfInput);
+				if (result.isUnderflow()) {
+					if (this.endOfInput) {
+						this.flushing = true;
+					} else {
+						this.bytes.compact();
+						this.endOfInput = this.channel.read(this.bytes) < 0;
+						this.bytes.flip();
+					}
+				} else if (result.isError()) {
+					result.throwException();
+				}
+			}
+			if (target == this.pair) {
+				// returns the high surrogate, the low one is returned by the next read
+				this.pair.flip();
+				if (this.pair.hasRemaining()) {
+					out.put(this.pair.get());
+					if (this.pair.hasRemaining()) {
+						this.pendingLow = this.pair.get();
+					}
+				}
+				this.pair.clear();
+			} else if (result.isOverflow()) {
+				// nothing was decoded: the next character doesn't fit in the array
+				target = this.pair;
+			}
+		}
+		int read = out.position() - offset;
+		return read > 0 ? read : -1;
+	}
+
+	/**
+	 * Releases the decoder; the channel, if any, isn't closed
+	 */
+	@Override
+	public void close() {
+		if (this.decoder != null) {
+			release(this.decoder);
+			this.decoder = null;
+		}
+	}
+
+	/**
+	 * Returns the charset with the given name, without throwing exceptions, so that the
+	 * encodings declared by a description can be used directly
+	 * @param encoding - the name of the charset, it could be null
+	 * @return the charset, or null if the name is null, isn't valid or isn't supported
+	 */
+	public static Charset charset(String encoding) {
+		if (encoding == null) {
+			return null;
+		}
+		try {
+			return Charset.forName(encoding.trim());
+		} catch (IllegalCharsetNameException e) {
+			return null;
+		} catch (UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Takes a decoder of the charset from the cache of the current thread, or creates a new
+	 * one. The decoder is removed from the cache, so a reader created while another one of
+	 * the same thread is read (i.e. by a result handler) doesn't share its decoder.
+	 * @param charset - the charset
+	 * @return a decoder ready to decode a new input
+	 */
+	private static CharsetDecoder acquire(Charset charset) {
+		CharsetDecoder[] decoders = DECODERS.get();
+		for (int i = 0; i < decoders.length; i++) {
+			if (decoders[i] != null && decoders[i].charset().equals(charset)) {
+				CharsetDecoder decoder = decoders[i];
+				decoders[i] = null;
+				return decoder.reset();
+			}
+		}
+		return charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Gives back a decoder to the cache of the current thread, replacing the oldest one if
+	 * the cache is full
+	 * @param decoder - the decoder
+	 */
+	private static void release(CharsetDecoder decoder) {
+		CharsetDecoder[] decoders = DECODERS.get();
+		int free = decoders.length - 1;
+		for (int i = 0; i < decoders.length; i++) {
+			if (decoders[i] == null) {
+				free = i;
+				break;
+			}
+		}
+		System.arraycopy(decoders, 0, decoders, 1, free);
+		decoders[0] = decoder;
+	}
+}
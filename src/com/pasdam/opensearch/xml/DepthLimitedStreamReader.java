@@ -0,0 +1,57 @@
+package com.pasdam.opensearch.xml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Stream reader that fails when the document is deeper than a maximum depth.
+ * @author Paco
+ * @version 1.0
+ */
+class DepthLimitedStreamReader extends StreamReaderDelegate {
+
+	private final int maxDepth;
+
+	private int depth;
+
+	/**
+	 * Constructor
+	 * @param reader - the reader to wrap
+	 * @param maxDepth - maximum depth of the elements
+	 */
+	DepthLimitedStreamReader(XMLStreamReader reader, int maxDepth) {
+		super(reader);
+		this.maxDepth = maxDepth;
+	}
+
+	@Override
+	public int next() throws XMLStreamException {
+		return track(super.next());
+	}
+
+	@Override
+	public int nextTag() throws XMLStreamException {
+		return track(super.nextTag());
+	}
+
+	@Override
+	public String getElementText() throws XMLStreamException {
+		String text = super.getElementText();
+		// the wrapped reader has consumed the end of the element
+		this.depth--;
+		return text;
+	}
+
+	private int track(int event) throws XMLStreamException {
+		if (event == XMLStreamConstants.START_ELEMENT) {
+			if (++this.depth > this.maxDepth) {
+				throw new XMLStreamException("Maximum element depth exceeded: " + this.maxDepth, getLocation());
+			}
+		} else if (event == XMLStreamConstants.END_ELEMENT) {
+			this.depth--;
+		}
+		return event;
+	}
+}
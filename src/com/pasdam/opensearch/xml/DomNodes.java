@@ -0,0 +1,90 @@
+package com.pasdam.opensearch.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Helper methods used by the DOM parsers.<br/>
+ * Optional attributes and elements are read without throwing: a missing attribute, element
+ * or text is returned as null, so that the parsers don't need to catch exceptions to
+ * handle them.
+ * @author Paco
+ * @version 1.0
+ */
+public final class DomNodes {
+
+	private DomNodes() {
+	}
+
+	/**
+	 * Returns the value of an attribute of an element
+	 * @param element - the element
+	 * @param name - the qualified name of the attribute (i.e. "parameters:method")
+	 * @return the trimmed value of the attribute, or null if the element hasn't it
+	 */
+	public static String attribute(Node element, String name) {
+		NamedNodeMap attributes = element.getAttributes();
+		if (attributes == null) {
+			return null;
+		}
+		Node attribute = attributes.getNamedItem(name);
+		if (attribute == null) {
+			return null;
+		}
+		String value = attribute.getNodeValue();
+		return value != null ? value.trim() : null;
+	}
+
+	/**
+	 * Returns the text of an element, that is the value of its first child
+	 * @param element - the element, it could be null
+	 * @return the value of the first child of the element, or null if the element is null
+	 * or it has no children
+	 */
+	public static String text(Node element) {
+		if (element == null) {
+			return null;
+		}
+		Node child = element.getFirstChild();
+		return child != null ? child.getNodeValue() : null;
+	}
+
+	/**
+	 * Returns the trimmed text of the first element with the specified name
+	 * @param document - the document
+	 * @param name - the qualified name of the element
+	 * @return the trimmed text of the element, or null if the document hasn't the element
+	 * or it has no text
+	 * @see #text(Node)
+	 */
+	public static String firstText(Document document, String name) {
+		NodeList elements = document.getElementsByTagName(name);
+		String text = text(elements.getLength() > 0 ? elements.item(0) : null);
+		return text != null ? text.trim() : null;
+	}
+
+	/**
+	 * Returns the trimmed text of all the elements with the specified name
+	 * @param document - the document
+	 * @param name - the qualified name of the elements
+	 * @return the trimmed text of the elements, in document order; elements without text
+	 * are ignored
+	 */
+	public static List<String> texts(Document document, String name) {
+		NodeList elements = document.getElementsByTagName(name);
+		List<String> texts = new ArrayList<String>(elements.getLength());
+		String text;
+		for (int i = 0; i < elements.getLength(); i++) {
+			text = text(elements.item(i));
+			if (text != null) {
+				texts.add(text.trim());
+			}
+		}
+		return texts;
+	}
+}
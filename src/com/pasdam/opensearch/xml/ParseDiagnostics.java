@@ -0,0 +1,158 @@
+package com.pasdam.opensearch.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.Location;
+
+/**
+ * Collects the problems found while parsing a document that didn't prevent the parse, i.e.
+ * an invalid optional attribute that has been replaced by its default value, or a child
+ * element that has been skipped because it isn't valid.<br/>
+ * The parse methods that accept a diagnostics object report these problems to it instead
+ * of ignoring them, and never print them: the caller decides whether and how to log them.
+ * The overloads without it use {@link #DISCARD}.<br/>
+ * This class isn't thread safe, a diagnostics object should be used by a single parse.
+ * @author Paco
+ * @version 1.0
+ */
+public class ParseDiagnostics {
+
+	/**
+	 * Diagnostics that ignores all the reports
+	 */
+	public static final ParseDiagnostics DISCARD = new ParseDiagnostics(false);
+
+	private final boolean enabled;
+
+	private List<Diagnostic> diagnostics;
+
+	/**
+	 * Creates an empty diagnostics object
+	 */
+	public ParseDiagnostics() {
+		this(true);
+	}
+
+	private ParseDiagnostics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Reports a problem found in a DOM document, whose position isn't known
+	 * @param element - the qualified name of the element with the problem
+	 * @param message - the description of the problem
+	 */
+	public void report(String element, String message) {
+		report(element, message, -1);
+	}
+
+	/**
+	 * Reports a problem found by a streaming parser
+	 * @param element - the qualified name of the element with the problem
+	 * @param message - the description of the problem
+	 * @param location - the location of the element, it could be null
+	 */
+	public void report(String element, String message, Location location) {
+		report(element, message, location != null ? location.getLineNumber() : -1);
+	}
+
+	/**
+	 * Reports a problem
+	 * @param element - the qualified name of the element with the problem
+	 * @param message - the description of the problem
+	 * @param line - the line of the element, -1 if it isn't known
+	 */
+	public void report(String element, String message, int line) {
+		if (this.enabled) {
+			if (this.diagnostics == null) {
+				this.diagnostics = new ArrayList<Diagnostic>();
+			}
+			this.diagnostics.add(new Diagnostic(element, message, line));
+		}
+	}
+
+	/**
+	 * @return the reported problems, in the order they have been found
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		if (this.diagnostics == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(this.diagnostics);
+	}
+
+	/**
+	 * @return true if no problem has been reported
+	 */
+	public boolean isEmpty() {
+		return this.diagnostics == null || this.diagnostics.isEmpty();
+	}
+
+	/**
+	 * Removes all the reported problems
+	 */
+	public void clear() {
+		this.diagnostics = null;
+	}
+
+	@Override
+	public String toString() {
+		if (isEmpty()) {
+			return "No problems";
+		}
+		StringBuilder buffer = new StringBuilder();
+		for (Diagnostic diagnostic : this.diagnostics) {
+			if (buffer.length() > 0) {
+				buffer.append('\n');
+			}
+			buffer.append(diagnostic);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * A problem found while parsing a document
+	 */
+	public static class Diagnostic {
+
+		private final String element;
+
+		private final String message;
+
+		private final int line;
+
+		Diagnostic(String element, String message, int line) {
+			this.element = element;
+			this.message = message;
+			this.line = line;
+		}
+
+		/**
+		 * @return the qualified name of the element with the problem
+		 */
+		public String getElement() {
+			return this.element;
+		}
+
+		/**
+		 * @return the description of the problem
+		 */
+		public String getMessage() {
+			return this.message;
+		}
+
+		/**
+		 * @return the line of the element, -1 if it isn't known
+		 */
+		public int getLine() {
+			return this.line;
+		}
+
+		@Override
+		public String toString() {
+			return (this.line >= 0 ? "line " + this.line + ", " : "") + this.element + ": " + this.message;
+		}
+	}
+}
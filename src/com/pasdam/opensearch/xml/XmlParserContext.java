@@ -0,0 +1,192 @@
+package com.pasdam.opensearch.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Holds the configured XML factories used by all the parse methods of this library.<br/>
+ * The factories are created once, when the context is created, so parsing a document
+ * doesn't pay the cost of the factory lookup. The streaming readers are created by a
+ * shared factory (it is safe to use it concurrently once configured), while the DOM
+ * parsers are confined to the thread that uses them and are reset and reused by the
+ * following parse operations of the same thread.<br/>
+ * By default DTDs and entity expansion are disabled and the depth of the documents
+ * is limited to {@link #DEFAULT_MAX_DEPTH}.
+ * @author Paco
+ * @version 1.0
+ */
+public final class XmlParserContext {
+
+	/**
+	 * Default maximum depth of the elements
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 64;
+
+	private static final String PROPERTY_MAX_ELEMENT_DEPTH = "http://www.oracle.com/xml/jaxp/properties/maxElementDepth";
+	private static final String FEATURE_DISALLOW_DOCTYPE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+	private static volatile XmlParserContext defaultContext = new XmlParserContext(DEFAULT_MAX_DEPTH, false);
+
+	/**
+	 * Maximum depth of the elements, 0 or less means unlimited
+	 */
+	private final int maxDepth;
+
+	/**
+	 * Indicates whether DTDs and entity expansion are allowed
+	 */
+	private final boolean entityExpansion;
+
+	private final XMLInputFactory inputFactory;
+
+	private final DocumentBuilderFactory documentBuilderFactory;
+
+	private final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
+
+	/**
+	 * Constructor
+	 * @param maxDepth - maximum depth of the elements, 0 or less means unlimited
+	 * @param entityExpansion - true to allow DTDs and the expansion of the entities they define
+	 */
+	public XmlParserContext(int maxDepth, boolean entityExpansion) {
+		this.maxDepth = maxDepth;
+		this.entityExpansion = entityExpansion;
+
+		this.inputFactory = XMLInputFactory.newInstance();
+		this.inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.valueOf(entityExpansion));
+		this.inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.valueOf(entityExpansion));
+		this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+
+		this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		this.documentBuilderFactory.setExpandEntityReferences(entityExpansion);
+		this.documentBuilderFactory.setXIncludeAware(false);
+		try {
+			this.documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			if (!entityExpansion) {
+				this.documentBuilderFactory.setFeature(FEATURE_DISALLOW_DOCTYPE, true);
+			}
+		} catch (ParserConfigurationException e) {
+			// the feature is not supported by the installed parser
+		}
+		if (maxDepth > 0) {
+			try {
+				this.documentBuilderFactory.setAttribute(PROPERTY_MAX_ELEMENT_DEPTH, Integer.toString(maxDepth));
+			} catch (IllegalArgumentException e) {
+				// the attribute is not supported by the installed parser
+			}
+		}
+	}
+
+	/**
+	 * Returns the context used by the parse methods of this library
+	 * @return the default context
+	 */
+	public static XmlParserContext getDefault() {
+		return defaultContext;
+	}
+
+	/**
+	 * Sets the context used by the parse methods of this library
+	 * @param context - the context to use
+	 */
+	public static void setDefault(XmlParserContext context) {
+		if (context == null) {
+			throw new IllegalArgumentException("The context cannot be null");
+		}
+		defaultContext = context;
+	}
+
+	/**
+	 * Creates a stream reader for the input stream
+	 * @param inputStream - the stream containing the xml document
+	 * @return a new stream reader
+	 * @throws XMLStreamException if the reader cannot be created
+	 */
+	public XMLStreamReader createReader(InputStream inputStream) throws XMLStreamException {
+		return limitDepth(this.inputFactory.createXMLStreamReader(inputStream));
+	}
+
+	/**
+	 * Creates a stream reader for the input stream, using the specified encoding
+	 * @param inputStream - the stream containing the xml document
+	 * @param encoding - the encoding of the stream
+	 * @return a new stream reader
+	 * @throws XMLStreamException if the reader cannot be created
+	 */
+	public XMLStreamReader createReader(InputStream inputStream, String encoding) throws XMLStreamException {
+		return limitDepth(this.inputFactory.createXMLStreamReader(inputStream, encoding));
+	}
+
+	/**
+	 * Creates a stream reader for the input reader
+	 * @param reader - the reader containing the xml document
+	 * @return a new stream reader
+	 * @throws XMLStreamException if the reader cannot be created
+	 */
+	public XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+		return limitDepth(this.inputFactory.createXMLStreamReader(reader));
+	}
+
+	/**
+	 * Returns the DOM parser of the current thread, after resetting it. The returned
+	 * parser must not be shared with other threads.
+	 * @return the DOM parser of the current thread
+	 * @throws ParserConfigurationException if the parser cannot be created
+	 */
+	public DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder builder = this.documentBuilders.get();
+		if (builder == null) {
+			builder = this.documentBuilderFactory.newDocumentBuilder();
+			this.documentBuilders.set(builder);
+		} else {
+			builder.reset();
+		}
+		return builder;
+	}
+
+	/**
+	 * Parses the input stream as a DOM document, using the parser of the current thread
+	 * @param inputStream - the stream containing the xml document
+	 * @return the parsed document
+	 * @throws ParserConfigurationException if the parser cannot be created
+	 * @throws SAXException if the document isn't well formed
+	 * @throws IOException if an error occurs reading the stream
+	 */
+	public Document parseDocument(InputStream inputStream) throws ParserConfigurationException, SAXException, IOException {
+		return getDocumentBuilder().parse(inputStream);
+	}
+
+	/**
+	 * @return the maximum depth of the elements, 0 or less means unlimited
+	 */
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	/**
+	 * @return true if DTDs and entity expansion are allowed
+	 */
+	public boolean isEntityExpansion() {
+		return this.entityExpansion;
+	}
+
+	private XMLStreamReader limitDepth(XMLStreamReader reader) {
+		if (this.maxDepth > 0) {
+			return new DepthLimitedStreamReader(reader, this.maxDepth);
+		}
+		return reader;
+	}
+}
@@ -0,0 +1,216 @@
+package com.pasdam.opensearch.xml;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Helper methods used by the streaming (StAX) parsers.<br/>
+ * The element names used by this library are the qualified names as they appear in the
+ * document (i.e. "parameters:Parameter", "opensearch:totalResults"), so these methods
+ * always work on prefixed names, like the DOM parsers do.<br/>
+ * The conversions of the values ({@link #parseInt(String, int)}) are shared with the DOM
+ * parsers, see also {@link DomNodes}.
+ * @author Paco
+ * @version 1.0
+ */
+public final class XmlStreams {
+
+	private XmlStreams() {
+	}
+
+	/**
+	 * Creates a stream reader for the input stream, using the default parser context
+	 * @param inputStream - the stream containing the xml document
+	 * @return a new stream reader
+	 * @throws XMLStreamException if the reader cannot be created
+	 * @see XmlParserContext#getDefault()
+	 */
+	public static XMLStreamReader createReader(InputStream inputStream) throws XMLStreamException {
+		return XmlParserContext.getDefault().createReader(inputStream);
+	}
+
+	/**
+	 * Creates a stream reader for the input reader, using the default parser context
+	 * @param reader - the reader containing the xml document
+	 * @return a new stream reader
+	 * @throws XMLStreamException if the reader cannot be created
+	 * @see XmlParserContext#getDefault()
+	 */
+	public static XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+		return XmlParserContext.getDefault().createReader(reader);
+	}
+
+	/**
+	 * Returns the qualified name (prefix:localName) of the current element
+	 * @param reader - a reader positioned on a START_ELEMENT or END_ELEMENT event
+	 * @return the qualified name of the current element
+	 */
+	public static String qualifiedName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.isEmpty()) {
+			return reader.getLocalName();
+		}
+		return prefix + ":" + reader.getLocalName();
+	}
+
+	/**
+	 * Returns the value of an attribute of the current element
+	 * @param reader - a reader positioned on a START_ELEMENT event
+	 * @param qualifiedName - the qualified name of the attribute (i.e. "parameters:method")
+	 * @return the value of the attribute, or null if the element hasn't it
+	 */
+	public static String attribute(XMLStreamReader reader, String qualifiedName) {
+		int separator = qualifiedName.indexOf(':');
+		String prefix = separator < 0 ? "" : qualifiedName.substring(0, separator);
+		String localName = separator < 0 ? qualifiedName : qualifiedName.substring(separator + 1);
+		String currentPrefix;
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			if (reader.getAttributeLocalName(i).equals(localName)) {
+				currentPrefix = reader.getAttributePrefix(i);
+				if (prefix.equals(currentPrefix == null ? "" : currentPrefix)) {
+					return reader.getAttributeValue(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the text content of the current element, ignoring any nested element. When
+	 * this method returns, the reader is positioned on the END_ELEMENT event of the
+	 * current element.
+	 * @param reader - a reader positioned on a START_ELEMENT event
+	 * @return the text content of the element, it could be empty
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static String elementText(XMLStreamReader reader) throws XMLStreamException {
+		String text = null;
+		StringBuilder buffer = null;
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				if (depth == 1) {
+					if (text == null) {
+						text = reader.getText();
+					} else {
+						if (buffer == null) {
+							buffer = new StringBuilder(text);
+						}
+						buffer.append(reader.getText());
+					}
+				}
+				break;
+			case XMLStreamConstants.END_DOCUMENT:
+				throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+			}
+		}
+		if (buffer != null) {
+			return buffer.toString();
+		}
+		return text != null ? text : "";
+	}
+
+	/**
+	 * Skips the current element and all its children. When this method returns, the
+	 * reader is positioned on the END_ELEMENT event of the current element.
+	 * @param reader - a reader positioned on a START_ELEMENT event
+	 * @throws XMLStreamException if the document isn't well formed
+	 */
+	public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.END_DOCUMENT:
+				throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+			}
+		}
+	}
+
+	/**
+	 * Parses a decimal integer without throwing exceptions, so that invalid optional values
+	 * don't cost the creation of an exception. Leading and trailing whitespaces are ignored.
+	 * @param value - the value to parse, it could be null
+	 * @param defaultValue - the value returned if the string isn't a valid integer
+	 * @return the parsed value, or defaultValue if the string is null, isn't an integer or
+	 * it overflows an int
+	 */
+	public static int parseInt(String value, int defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		boolean negative = false;
+		if (start < end && (value.charAt(start) == '-' || value.charAt(start) == '+')) {
+			negative = value.charAt(start) == '-';
+			start++;
+		}
+		if (start == end || end - start > 10) {
+			return defaultValue;
+		}
+		long result = 0;
+		char c;
+		for (int i = start; i < end; i++) {
+			c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return defaultValue;
+			}
+			result = result * 10 + (c - '0');
+		}
+		if (negative) {
+			result = -result;
+		}
+		if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+			return defaultValue;
+		}
+		return (int) result;
+	}
+
+	/**
+	 * Indicates whether a string is a valid decimal integer, as accepted by
+	 * {@link #parseInt(String, int)}
+	 * @param value - the value to check, it could be null
+	 * @return true if the value can be parsed
+	 */
+	public static boolean isInteger(String value) {
+		return parseInt(value, 0) != 0 || parseInt(value, 1) != 1;
+	}
+
+	/**
+	 * Closes the reader, ignoring errors
+	 * @param reader - the reader to close, it could be null
+	 */
+	public static void closeQuietly(XMLStreamReader reader) {
+		if (reader != null) {
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.pasdam.opensearch.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import com.pasdam.opensearch.response.ResultPage;
+import com.pasdam.opensearch.response.SearchResponse;
+
+/**
+ * Tests of {@link SearchResponseCache}: segmented LRU under the weight budget, time to live,
+ * requests shared by concurrent misses and canonical keys
+ * @author Paco
+ * @version 1.0
+ */
+class SearchResponseCacheTest {
+
+	private static final String URL_A = "http://engine.example/a";
+	private static final String URL_B = "http://engine.example/b";
+	private static final String URL_C = "http://engine.example/c";
+	private static final String URL_D = "http://engine.example/d";
+	private static final String URL_E = "http://engine.example/e";
+
+	/**
+	 * Weight of an empty response cached with one of the keys above
+	 */
+	private static final long WEIGHT = SearchResponseCache.weigh(URL_A, new SearchResponse());
+
+	@Test
+	void evictsTheLeastRecentlyUsedProbationEntry() {
+		CountingSource source = new CountingSource();
+		SearchResponseCache cache = new SearchResponseCache(source, 3 * WEIGHT, 1, TimeUnit.HOURS);
+		cache.get(URL_A);
+		cache.get(URL_B);
+		cache.get(URL_C);
+		assertEquals(3 * WEIGHT, cache.weight());
+
+		// the hit promotes A to the protected segment, so B is the victim
+		cache.get(URL_A);
+		cache.get(URL_D);
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.size());
+		assertEquals(3 * WEIGHT, cache.weight());
+
+		cache.get(URL_A);
+		assertEquals(4, source.calls.get());
+		cache.get(URL_B);
+		assertEquals(5, source.calls.get());
+	}
+
+	@Test
+	void demotesTheLeastRecentlyUsedProtectedEntry() {
+		CountingSource source = new CountingSource();
+		// the protected segment holds two responses
+		SearchResponseCache cache = new SearchResponseCache(source, 3 * WEIGHT, 1, TimeUnit.HOURS);
+		cache.get(URL_A);
+		cache.get(URL_B);
+		cache.get(URL_C);
+		cache.get(URL_A);
+		cache.get(URL_B);
+		// promoting C demotes A, the least recently used protected response
+		cache.get(URL_C);
+		assertEquals(3, source.calls.get());
+
+		// A is now the oldest probation response and the first victim
+		cache.get(URL_D);
+		assertEquals(1, cache.getEvictionCount());
+		cache.get(URL_B);
+		cache.get(URL_C);
+		assertEquals(4, source.calls.get());
+		cache.get(URL_A);
+		assertEquals(5, source.calls.get());
+	}
+
+	@Test
+	void evictsProtectedEntriesWhenProbationIsEmpty() {
+		CountingSource source = new CountingSource();
+		SearchResponseCache cache = new SearchResponseCache(source, 2 * WEIGHT, 1, TimeUnit.HOURS);
+		cache.get(URL_A);
+		cache.get(URL_A);
+		cache.get(URL_B);
+		cache.get(URL_B);
+		cache.get(URL_C);
+		cache.get(URL_D);
+		cache.get(URL_E);
+		assertTrue(cache.weight() <= 2 * WEIGHT);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void doesNotCacheResponsesHeavierThanTheBudget() {
+		CountingSource source = new CountingSource();
+		SearchResponseCache cache = new SearchResponseCache(source, WEIGHT - 1, 1, TimeUnit.HOURS);
+		cache.get(URL_A);
+		cache.get(URL_A);
+		assertEquals(2, source.calls.get());
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.weight());
+	}
+
+	@Test
+	void weighsResultsAndResultPages() {
+		SearchResponse maps = new SearchResponse();
+		maps.resultsList = new ArrayList<HashMap<String, String>>();
+		HashMap<String, String> result = new HashMap<String, String>();
+		result.put("title", "0123456789");
+		maps.resultsList.add(result);
+		assertTrue(SearchResponseCache.weigh(URL_A, maps) > WEIGHT + 20);
+
+		SearchResponse page = new SearchResponse();
+		page.resultPage = new ResultPage();
+		page.resultPage.add("0123456789", null, null, null, null, null);
+		assertTrue(SearchResponseCache.weigh(URL_A, page) > WEIGHT + 20);
+		assertTrue(SearchResponseCache.weigh(URL_A, page) < SearchResponseCache.weigh(URL_A, maps));
+	}
+
+	@Test
+	void ignoresExpiredResponses() throws InterruptedException {
+		CountingSource source = new CountingSource();
+		SearchResponseCache cache = new SearchResponseCache(source, 10 * WEIGHT, 20, TimeUnit.MILLISECONDS);
+		cache.get(URL_A);
+		Thread.sleep(60);
+		cache.get(URL_A);
+		assertEquals(2, source.calls.get());
+		assertEquals(1, cache.size());
+
+		cache = new SearchResponseCache(source, 10 * WEIGHT, 1, TimeUnit.HOURS);
+		cache.get(URL_A);
+		cache.get(URL_A);
+		assertEquals(3, source.calls.get());
+	}
+
+	@Test
+	void doesNotCacheErrors() {
+		AtomicInteger calls = new AtomicInteger();
+		SearchResponseCache cache = new SearchResponseCache(url -> {
+			calls.incrementAndGet();
+			return null;
+		}, 10 * WEIGHT, 1, TimeUnit.HOURS);
+		assertNull(cache.get(URL_A));
+		assertNull(cache.get(URL_A));
+		assertEquals(2, calls.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void concurrentMissesShareOneRequest() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		SearchResponse response = new SearchResponse();
+		SearchResponseCache cache = new SearchResponseCache(url -> {
+			calls.incrementAndGet();
+			await(release);
+			return response;
+		}, 10 * WEIGHT, 1, TimeUnit.HOURS);
+
+		List<Future<SearchResponse>> results = getConcurrently(cache, 8, release);
+		for (Future<SearchResponse> result : results) {
+			assertSame(response, result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(7, cache.getSharedLoadCount());
+	}
+
+	@Test
+	void concurrentMissesShareTheErrorOfTheSource() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		SearchResponseCache cache = new SearchResponseCache(url -> {
+			if (calls.incrementAndGet() == 1) {
+				await(release);
+				throw new IllegalStateException("source failed");
+			}
+			return new SearchResponse();
+		}, 10 * WEIGHT, 1, TimeUnit.HOURS);
+
+		List<Future<SearchResponse>> results = getConcurrently(cache, 8, release);
+		for (Future<SearchResponse> result : results) {
+			Throwable error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS)).getCause();
+			assertTrue(error instanceof IllegalStateException);
+		}
+		assertEquals(1, calls.get());
+
+		// the failed request is not left in progress
+		cache.get(URL_A);
+		assertEquals(2, calls.get());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void equivalentUrlsHaveTheSameKey() {
+		assertEquals("http://engine.example/search?a=1&q=x+y",
+				SearchResponseCache.canonicalKey(" HTTP://Engine.Example:80/search?q=x%20y&&a=1#top "));
+		assertEquals(SearchResponseCache.canonicalKey("https://engine.example:443"),
+				SearchResponseCache.canonicalKey("https://engine.example/"));
+		assertEquals("http://engine.example:8080/", SearchResponseCache.canonicalKey("http://engine.example:8080"));
+		// unreserved characters are decoded, the other escapes use upper case digits
+		assertEquals("http://engine.example/~a%2F?q=%2F-",
+				SearchResponseCache.canonicalKey("http://engine.example/%7ea%2f?q=%2f%2D"));
+		assertEquals("http://engine.example/a%20b", SearchResponseCache.canonicalKey("http://engine.example/a b"));
+		// repeated parameters are kept
+		assertEquals("http://engine.example/?q=1&q=2", SearchResponseCache.canonicalKey("http://engine.example/?q=2&q=1"));
+	}
+
+	@Test
+	void equivalentUrlsShareTheCachedResponse() {
+		CountingSource source = new CountingSource();
+		SearchResponseCache cache = new SearchResponseCache(source, 10 * WEIGHT, 1, TimeUnit.HOURS);
+		SearchResponse response = cache.get("http://engine.example/search?q=x&count=10");
+		assertSame(response, cache.get("HTTP://engine.example/search?count=10&q=x#results"));
+		assertEquals(1, source.calls.get());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	/**
+	 * Requests {@link #URL_A} from many threads, and releases the source when all of them
+	 * are waiting for the same request
+	 */
+	private static List<Future<SearchResponse>> getConcurrently(SearchResponseCache cache, int threads, CountDownLatch release) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<SearchResponse>> results = new ArrayList<Future<SearchResponse>>(threads);
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(() -> cache.get(URL_A)));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (cache.getSharedLoadCount() < threads - 1 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			return results;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Source that returns a new empty response and counts the requests
+	 */
+	private static class CountingSource implements Function<URL, SearchResponse> {
+
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public SearchResponse apply(URL url) {
+			this.calls.incrementAndGet();
+			return new SearchResponse();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.pasdam.opensearch.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.pasdam.opensearch.response.SuggestionsResponse;
+
+/**
+ * Tests of {@link SuggestionsCache}: exact hits, reuse of the responses of the prefixes,
+ * responses capped by the engine, LRU eviction and time to live
+ * @author Paco
+ * @version 1.0
+ */
+class SuggestionsCacheTest {
+
+	private static final String[] WORDS = {"java", "javascript", "jakarta", "jazz", "json", "Jaguar"};
+
+	@Test
+	void answersTheSameQueryFromTheCache() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS);
+		String[][] suggestions = cache.getSuggestions("ja", 10);
+		assertArrayEquals(suggestions, cache.getSuggestions("ja", 10));
+		assertEquals(1, engine.queries.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	void truncatesTheCachedResponse() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS);
+		cache.getSuggestions("ja", 10);
+		String[][] suggestions = cache.getSuggestions("ja", 2);
+		assertArrayEquals(new String[]{"java", "javascript"}, suggestions[1]);
+		assertArrayEquals(new String[]{"d:java", "d:javascript"}, suggestions[2]);
+		assertEquals(1, engine.queries.size());
+	}
+
+	@Test
+	void filtersTheCompleteResponseOfAPrefix() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS);
+		cache.getSuggestions("j", 10);
+		String[][] suggestions = cache.getSuggestions("ja", 10);
+		assertArrayEquals(new String[]{"ja"}, suggestions[0]);
+		assertArrayEquals(new String[]{"java", "javascript", "jakarta", "jazz", "Jaguar"}, suggestions[1]);
+		assertArrayEquals(new String[]{"d:java", "d:javascript", "d:jakarta", "d:jazz", "d:Jaguar"}, suggestions[2]);
+		assertArrayEquals(new String[]{"java", "javascript"}, cache.getSuggestions("jav", 10)[1]);
+		assertEquals(0, cache.getSuggestions("jx", 10)[1].length);
+		assertEquals(1, engine.queries.size());
+		assertEquals(3, cache.getPrefixHitCount());
+	}
+
+	@Test
+	void doesNotReuseAResponseCappedByTheEngine() {
+		// the engine returns 5 completions whatever the requested count
+		FakeEngine engine = new FakeEngine(5);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS, 5);
+		assertEquals(5, cache.getSuggestions("j", 10)[1].length);
+		// "Jaguar" was cut off, so the response of "j" cannot answer "ja"
+		assertEquals(5, cache.getSuggestions("ja", 10)[1].length);
+		assertEquals(2, engine.queries.size());
+		assertEquals(0, cache.getPrefixHitCount());
+
+		// 2 completions are less than the cap: the response is complete
+		cache.getSuggestions("jav", 10);
+		cache.getSuggestions("java", 10);
+		assertEquals(3, engine.queries.size());
+		assertEquals(1, cache.getPrefixHitCount());
+	}
+
+	@Test
+	void takesACappedResponseAsCompleteWithTheWrongLimit() {
+		FakeEngine engine = new FakeEngine(5);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS, 10);
+		cache.getSuggestions("j", 10);
+		// the cache can't know that the engine dropped "Jaguar"
+		assertEquals(4, cache.getSuggestions("ja", 10)[1].length);
+		assertEquals(1, engine.queries.size());
+	}
+
+	@Test
+	void doesNotReuseAResponseTruncatedByTheRequest() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS);
+		cache.getSuggestions("j", 3);
+		cache.getSuggestions("ja", 10);
+		// a larger count can't be answered by the smaller response of the same query
+		cache.getSuggestions("j", 10);
+		assertEquals(3, engine.queries.size());
+		assertEquals(0, cache.getPrefixHitCount());
+	}
+
+	@Test
+	void zeroEngineLimitDisablesThePrefixes() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS, 0);
+		cache.getSuggestions("j", 10);
+		cache.getSuggestions("ja", 10);
+		assertEquals(2, engine.queries.size());
+		assertEquals(0, cache.getPrefixHitCount());
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedResponse() {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 2, 1, TimeUnit.HOURS, 0);
+		cache.getSuggestions("ja", 10);
+		cache.getSuggestions("js", 10);
+		cache.getSuggestions("ja", 10);
+		cache.getSuggestions("jz", 10);
+		assertEquals(2, cache.size());
+		cache.getSuggestions("ja", 10);
+		assertEquals(3, engine.queries.size());
+		cache.getSuggestions("js", 10);
+		assertEquals(4, engine.queries.size());
+	}
+
+	@Test
+	void ignoresExpiredResponses() throws InterruptedException {
+		FakeEngine engine = new FakeEngine(10);
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 20, TimeUnit.MILLISECONDS);
+		cache.getSuggestions("j", 10);
+		Thread.sleep(60);
+		// neither the same query nor a longer one reuses the expired response
+		cache.getSuggestions("ja", 10);
+		cache.getSuggestions("j", 10);
+		assertEquals(3, engine.queries.size());
+		assertEquals(0, cache.getPrefixHitCount());
+	}
+
+	@Test
+	void doesNotCacheErrors() {
+		FakeEngine engine = new FakeEngine(10);
+		engine.failing = true;
+		SuggestionsCache cache = new SuggestionsCache(engine, 10, 1, TimeUnit.HOURS);
+		assertNull(cache.getSuggestions("ja", 10));
+		assertNull(cache.getSuggestions("ja", 10));
+		assertEquals(2, engine.queries.size());
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Engine that completes the queries with {@link #WORDS}, returning at most a fixed number
+	 * of completions
+	 */
+	private static class FakeEngine extends SuggestionsResponse {
+
+		final int limit;
+		final List<String> queries = new ArrayList<String>();
+		boolean failing;
+
+		FakeEngine(int limit) {
+			super(null);
+			this.limit = limit;
+		}
+
+		@Override
+		public String[][] getSuggestions(String query, int maxResults) {
+			this.queries.add(query);
+			if (this.failing) {
+				return null;
+			}
+			List<String> completions = new ArrayList<String>();
+			for (String word : WORDS) {
+				if (completions.size() < Math.min(maxResults, this.limit)
+						&& word.toLowerCase(Locale.ROOT).startsWith(query.toLowerCase(Locale.ROOT))) {
+					completions.add(word);
+				}
+			}
+			String[] descriptions = new String[completions.size()];
+			for (int i = 0; i < descriptions.length; i++) {
+				descriptions[i] = "d:" + completions.get(i);
+			}
+			return new String[][]{{query}, completions.toArray(new String[0]), descriptions};
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.pasdam.opensearch.response;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of {@link JsonSuggestionsParser}: structure, literals, escapes, trailing content and
+ * the decoding of UTF-8 bytes
+ * @author Paco
+ * @version 1.0
+ */
+class JsonSuggestionsParserTest {
+
+	private static final String REPLACEMENT = "\uFFFD";
+
+	@Test
+	void parsesAllTheArrays() throws ParseException {
+		String[][] parsed = JsonSuggestionsParser.parse(" [\"ja\", [\"java\", \"javascript\"], [\"d1\", \"d2\"], [\"u1\", \"u2\"]]\n");
+		assertArrayEquals(new String[]{"ja"}, parsed[0]);
+		assertArrayEquals(new String[]{"java", "javascript"}, parsed[1]);
+		assertArrayEquals(new String[]{"d1", "d2"}, parsed[2]);
+		assertArrayEquals(new String[]{"u1", "u2"}, parsed[3]);
+	}
+
+	@Test
+	void skipsNestedValuesAndObjects() throws ParseException {
+		String[][] parsed = JsonSuggestionsParser.parse("[\"ja\",[\"java\",[1,[2]],{\"a\":[\"b\"]}],{\"x\":1}]");
+		assertEquals(2, parsed.length);
+		assertArrayEquals(new String[]{"java", "", ""}, parsed[1]);
+	}
+
+	@Test
+	void readsLiterals() throws ParseException {
+		String[][] parsed = JsonSuggestionsParser.parse("[\"q\",[true,false,null,0,-1.5,2e10,3E-2]]");
+		assertArrayEquals(new String[]{"true", "false", "", "0", "-1.5", "2e10", "3E-2"}, parsed[1]);
+	}
+
+	@Test
+	void rejectsInvalidLiterals() {
+		assertInvalid("[\"q\",[tru]]");
+		assertInvalid("[\"q\",[nul]]");
+		assertInvalid("[\"q\",[truex]]");
+		assertInvalid("[\"q\",[01]]");
+		assertInvalid("[\"q\",[1e]]");
+		assertInvalid("[\"q\",[-]]");
+		assertInvalid("[\"q\",[1.]]");
+		assertInvalid("[\"q\",[+1]]");
+	}
+
+	@Test
+	void rejectsContentAfterTheResponse() {
+		assertInvalid("[\"ja\",[\"java\"]] garbage");
+		assertInvalid("[\"ja\",[\"java\"]]]]");
+		assertInvalid("[\"ja\",[\"java\"]][]");
+	}
+
+	@Test
+	void rejectsInvalidStructures() {
+		assertInvalid("");
+		assertInvalid("{}");
+		assertInvalid("[]");
+		assertInvalid("[\"ja\"");
+		assertInvalid("[\"ja\",[\"java\"");
+		assertInvalid("[\"ja\",[\"java\" \"js\"]]");
+	}
+
+	@Test
+	void decodesEscapes() throws ParseException {
+		String[][] parsed = JsonSuggestionsParser.parse("[\"q\",[\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\", \"\\u00e9\\u00C9\", \"\\uD83D\\uDE00\"]]");
+		assertArrayEquals(new String[]{"a\"b\\c/d\b\f\n\r\t", "\u00e9\u00c9", "\uD83D\uDE00"}, parsed[1]);
+	}
+
+	@Test
+	void rejectsInvalidEscapes() {
+		assertInvalid("[\"q\",[\"\\x\"]]");
+		assertInvalid("[\"q\",[\"\\u12\"]]");
+		assertInvalid("[\"q\",[\"\\u12G4\"]]");
+		assertInvalid("[\"q\",[\"abc]]");
+	}
+
+	@Test
+	void decodesValidUtf8() throws Exception {
+		String text = "a\u00e9\u20ac\uD83D\uDE00z";
+		byte[] json = ("[\"q\",[\"" + text + "\"]]").getBytes(StandardCharsets.UTF_8);
+		assertEquals(text, JsonSuggestionsParser.parse(ByteBuffer.wrap(json))[1][0]);
+		assertEquals(text, JsonSuggestionsParser.parse(new ByteArrayInputStream(json))[1][0]);
+	}
+
+	@Test
+	void replacesTruncatedSequencesWithoutConsumingTheNextByte() throws Exception {
+		// lead bytes of 2, 3 and 4 byte sequences followed by an ASCII character
+		assertEquals(REPLACEMENT + "x", suggestion(0xC3, 'x'));
+		assertEquals(REPLACEMENT + "x", suggestion(0xE2, 0x82, 'x'));
+		assertEquals(REPLACEMENT + "x", suggestion(0xF0, 0x9F, 0x98, 'x'));
+		// a truncated sequence at the end of the string doesn't consume the closing quote
+		assertEquals(REPLACEMENT, suggestion(0xE2, 0x82));
+		// a lead byte that interrupts a sequence starts a new one
+		assertEquals(REPLACEMENT + "\u00e9", suggestion(0xE2, 0xC3, 0xA9));
+	}
+
+	@Test
+	void replacesInvalidBytes() throws Exception {
+		assertEquals(REPLACEMENT + "x", suggestion(0x80, 'x'));
+		assertEquals(REPLACEMENT + REPLACEMENT, suggestion(0xBF, 0xBF));
+		assertEquals(REPLACEMENT + "x", suggestion(0xF5, 'x'));
+		assertEquals(REPLACEMENT + "x", suggestion(0xFF, 'x'));
+	}
+
+	@Test
+	void replacesOverlongForms() throws Exception {
+		// '/' encoded on 2, 3 and 4 bytes
+		assertEquals(REPLACEMENT + REPLACEMENT, suggestion(0xC0, 0xAF));
+		assertEquals(REPLACEMENT, suggestion(0xE0, 0x80, 0xAF));
+		assertEquals(REPLACEMENT, suggestion(0xF0, 0x80, 0x80, 0xAF));
+	}
+
+	@Test
+	void replacesSurrogatesAndValuesAboveTheLastCodePoint() throws Exception {
+		assertEquals(REPLACEMENT, suggestion(0xED, 0xA0, 0x80));
+		assertEquals(REPLACEMENT, suggestion(0xED, 0xBF, 0xBF));
+		assertEquals(REPLACEMENT, suggestion(0xF4, 0x90, 0x80, 0x80));
+		// the last valid code point
+		assertEquals("\uDBFF\uDFFF", suggestion(0xF4, 0x8F, 0xBF, 0xBF));
+	}
+
+	@Test
+	void decodesOtherCharsets() throws Exception {
+		byte[] json = "[\"caf\u00e9\",[\"caf\u00e9 cr\u00e8me\"]]".getBytes(StandardCharsets.ISO_8859_1);
+		assertEquals("caf\u00e9 cr\u00e8me", JsonSuggestionsParser.parse(ByteBuffer.wrap(json), StandardCharsets.ISO_8859_1)[1][0]);
+		assertEquals("caf\u00e9 cr\u00e8me", JsonSuggestionsParser.parse(Channels.newChannel(new ByteArrayInputStream(json)), StandardCharsets.ISO_8859_1)[1][0]);
+	}
+
+	/**
+	 * Parses a response whose only suggestion contains the given bytes, from a buffer and
+	 * from a stream, and checks that both give the same value
+	 * @param bytes - the bytes of the suggestion
+	 * @return the decoded suggestion
+	 */
+	private static String suggestion(int... bytes) throws Exception {
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		json.write("[\"q\",[\"".getBytes(StandardCharsets.US_ASCII));
+		for (int b : bytes) {
+			json.write(b);
+		}
+		json.write("\"]]".getBytes(StandardCharsets.US_ASCII));
+		String fromBuffer = JsonSuggestionsParser.parse(ByteBuffer.wrap(json.toByteArray()))[1][0];
+		String fromStream = JsonSuggestionsParser.parse(new ByteArrayInputStream(json.toByteArray()))[1][0];
+		assertEquals(fromBuffer, fromStream);
+		return fromBuffer;
+	}
+
+	private static void assertInvalid(String json) {
+		assertThrows(ParseException.class, () -> JsonSuggestionsParser.parse(json), json);
+	}
+}